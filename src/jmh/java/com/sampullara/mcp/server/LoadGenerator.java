@@ -0,0 +1,338 @@
+package com.sampullara.mcp.server;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * End-to-end load test. Starts an {@link McpServer} in-process on a loopback
+ * port, opens the scenario's {@code /sse} sessions with {@link HttpClient},
+ * then drives {@code /message} calls through each phase at a fixed open-loop
+ * rate. Latency is measured from when a call was scheduled to be sent, not
+ * when it was sent, so a stalled server cannot hide its queueing delay
+ * (coordinated omission); the uncorrected service time is reported next to it.
+ *
+ * <pre>mvn -Pjmh test-compile exec:exec -Dbench.main=com.sampullara.mcp.server.LoadGenerator \
+ *     -Dbench.args=src/jmh/scenarios/steady.json</pre>
+ */
+public class LoadGenerator {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+
+    /**
+     * A traffic shape, read from JSON. Each phase offers {@code rate} calls per
+     * second for {@code seconds}, picking methods by the weights in {@code mix}.
+     * {@code transport} selects the server's HTTP implementation so the two
+     * can be compared under the same load.
+     */
+    public record Scenario(
+            McpServerConfig.Transport transport,
+            int sessions,
+            int tools,
+            int argumentBytes,
+            long toolLatencyMillis,
+            int connectConcurrency,
+            List<Phase> phases
+    ) {
+        public Scenario {
+            transport = transport == null ? McpServerConfig.Transport.HTTP_SERVER : transport;
+            sessions = Math.max(1, sessions);
+            tools = Math.max(1, tools);
+            connectConcurrency = connectConcurrency > 0 ? connectConcurrency : 256;
+            phases = phases == null ? List.of() : phases;
+        }
+    }
+
+    public record Phase(String name, int seconds, int rate, Map<String, Integer> mix) {
+        public Phase {
+            mix = mix == null || mix.isEmpty() ? Map.of("tools/list", 1) : new LinkedHashMap<>(mix);
+        }
+    }
+
+    private static final class PhaseStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        final LongAdder completed = new LongAdder();
+        final LongAdder httpErrors = new LongAdder();
+        final LongAdder rpcErrors = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final AtomicLong inFlight = new AtomicLong();
+    }
+
+    /**
+     * Reads an SSE stream line by line without holding a thread, completing
+     * {@link #sessionId} from the {@code connected} event and counting the rest.
+     */
+    private static final class SseSubscriber implements Flow.Subscriber<String> {
+        final CompletableFuture<String> sessionId = new CompletableFuture<>();
+        private final LongAdder events;
+        private String event;
+
+        SseSubscriber(LongAdder events) {
+            this.events = events;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.startsWith("event: ")) {
+                event = line.substring(7);
+            } else if (line.startsWith("data: ") && "connected".equals(event)) {
+                try {
+                    sessionId.complete(MAPPER.readTree(line.substring(6)).path("sessionId").asText());
+                } catch (IOException e) {
+                    sessionId.completeExceptionally(e);
+                }
+            } else if (line.isEmpty()) {
+                events.increment();
+                event = null;
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            sessionId.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            sessionId.completeExceptionally(new IOException("SSE stream closed"));
+        }
+    }
+
+    private final Scenario scenario;
+    private final HttpClient client;
+    private final LongAdder sseEvents = new LongAdder();
+    private final AtomicLong nextId = new AtomicLong();
+    private McpServer server;
+    private URI sseUri;
+    private URI messageUri;
+    private List<String> sessionIds;
+
+    public LoadGenerator(Scenario scenario) {
+        this.scenario = scenario;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("usage: LoadGenerator <scenario.json>");
+            System.exit(2);
+        }
+        Scenario scenario = MAPPER.readValue(Path.of(args[0]).toFile(), Scenario.class);
+        new LoadGenerator(scenario).run();
+        System.exit(0);
+    }
+
+    public void run() throws Exception {
+        McpServerConfig config = new McpServerConfig()
+                .transport(scenario.transport())
+                .maxSessions(Math.max(scenario.sessions(), new McpServerConfig().maxSessions()));
+        server = new McpServer(0, new McpServer.McpCapabilities(true, false, true, false), config);
+        registerTools();
+        server.start();
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        sseUri = URI.create(base + "/sse");
+        messageUri = URI.create(base + "/message");
+        try {
+            connect();
+            for (Phase phase : scenario.phases()) {
+                report(phase, runPhase(phase));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private void registerTools() {
+        ObjectNode schema = MAPPER.createObjectNode();
+        schema.put("type", "object");
+        schema.putObject("properties").putObject("text").put("type", "string");
+        ObjectNode result = MAPPER.createObjectNode();
+        result.putArray("content").addObject().put("type", "text").put("text", "ok");
+        long latencyMillis = scenario.toolLatencyMillis();
+        for (int i = 0; i < scenario.tools(); i++) {
+            server.getMessageHandler().registerTool(new MessageHandler.Tool("tool-" + i, "Load test tool", schema),
+                    _ -> {
+                        if (latencyMillis > 0) {
+                            Thread.sleep(latencyMillis);
+                        }
+                        return result;
+                    });
+        }
+    }
+
+    private void connect() throws InterruptedException {
+        long start = System.nanoTime();
+        Semaphore connecting = new Semaphore(scenario.connectConcurrency());
+        List<CompletableFuture<String>> pending = new ArrayList<>(scenario.sessions());
+        for (int i = 0; i < scenario.sessions(); i++) {
+            connecting.acquire();
+            SseSubscriber subscriber = new SseSubscriber(sseEvents);
+            HttpRequest request = HttpRequest.newBuilder(sseUri).GET().build();
+            client.sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(subscriber));
+            subscriber.sessionId.whenComplete((_, _) -> connecting.release());
+            pending.add(subscriber.sessionId);
+        }
+        sessionIds = new ArrayList<>(pending.size());
+        int failed = 0;
+        for (CompletableFuture<String> future : pending) {
+            try {
+                sessionIds.add(future.get(30, TimeUnit.SECONDS));
+            } catch (Exception e) {
+                failed++;
+            }
+        }
+        System.out.printf("transport %s: connected %d sessions in %d ms (%d failed)%n",
+                scenario.transport(), sessionIds.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failed);
+        if (sessionIds.isEmpty()) {
+            throw new IllegalStateException("No session could be opened");
+        }
+    }
+
+    private PhaseStats runPhase(Phase phase) throws InterruptedException {
+        PhaseStats stats = new PhaseStats();
+        String[] methods = phase.mix().keySet().toArray(String[]::new);
+        int[] cumulativeWeights = new int[methods.length];
+        int totalWeight = 0;
+        for (int i = 0; i < methods.length; i++) {
+            totalWeight += phase.mix().get(methods[i]);
+            cumulativeWeights[i] = totalWeight;
+        }
+
+        long calls = (long) phase.rate() * phase.seconds();
+        long start = System.nanoTime();
+        for (long i = 0; i < calls; i++) {
+            // The schedule is fixed up front; falling behind sends immediately but keeps the intended time
+            long intended = start + i * TimeUnit.SECONDS.toNanos(1) / phase.rate();
+            long delay = intended - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+            int method = 0;
+            while (cumulativeWeights[method] <= pick) {
+                method++;
+            }
+            send(methods[method], intended, stats);
+        }
+
+        // Give stragglers a bounded time to finish; anything still open counts as failed
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (stats.inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        stats.failures.add(stats.inFlight.get());
+        return stats;
+    }
+
+    private void send(String method, long intendedNanos, PhaseStats stats) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String sessionId = sessionIds.get(random.nextInt(sessionIds.size()));
+        HttpRequest request = HttpRequest.newBuilder(messageUri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body(method, sessionId, random)))
+                .build();
+        stats.inFlight.incrementAndGet();
+        long sentNanos = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).whenComplete((response, error) -> {
+            long now = System.nanoTime();
+            stats.inFlight.decrementAndGet();
+            if (error != null) {
+                stats.failures.increment();
+                return;
+            }
+            stats.latency.record(now - intendedNanos);
+            stats.serviceTime.record(now - sentNanos);
+            stats.completed.increment();
+            if (response.statusCode() != 200 && response.statusCode() != 202) {
+                stats.httpErrors.increment();
+            } else if (isRpcError(response.body())) {
+                stats.rpcErrors.increment();
+            }
+        });
+    }
+
+    private byte[] body(String method, String sessionId, ThreadLocalRandom random) {
+        ObjectNode request = MAPPER.createObjectNode();
+        request.put("jsonrpc", "2.0");
+        request.put("id", String.valueOf(nextId.incrementAndGet()));
+        request.put("method", method);
+        request.put("sessionId", sessionId);
+        if (method.equals("tools/call")) {
+            ObjectNode params = request.putObject("params");
+            params.put("name", "tool-" + random.nextInt(scenario.tools()));
+            params.putObject("arguments").put("text", "x".repeat(scenario.argumentBytes()));
+        }
+        try {
+            return MAPPER.writeValueAsBytes(request);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isRpcError(byte[] body) {
+        if (body.length == 0) {
+            return false;
+        }
+        try {
+            JsonNode response = MAPPER.readTree(body);
+            return response.has("error") || response.path("result").path("isError").asBoolean(false);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private void report(Phase phase, PhaseStats stats) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        System.out.printf("%nphase %s: %ds offered at %d calls/s%n", phase.name(), phase.seconds(), phase.rate());
+        System.out.printf("  completed %d (%.1f calls/s)  http errors %d  rpc errors %d  failed %d%n",
+                stats.completed.sum(), stats.completed.sum() / (double) Math.max(1, phase.seconds()),
+                stats.httpErrors.sum(), stats.rpcErrors.sum(), stats.failures.sum());
+        System.out.println("  latency      " + percentiles(stats.latency));
+        System.out.println("  service time " + percentiles(stats.serviceTime));
+        System.out.printf("  heap %d/%d MB  platform threads %d  sessions %d  sse events %d%n",
+                heap.getUsed() >> 20, heap.getMax() >> 20, ManagementFactory.getThreadMXBean().getThreadCount(),
+                server.getSessionManager().getSessionCount(), sseEvents.sum());
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        StringBuilder line = new StringBuilder();
+        for (double percentile : PERCENTILES) {
+            line.append(String.format("p%s %.3f ms  ", percentile == 99.9 ? "999" : String.valueOf((int) percentile),
+                    histogram.percentile(percentile) / 1e6));
+        }
+        return line.toString().trim();
+    }
+}
@@ -0,0 +1,67 @@
+package com.sampullara.mcp.server;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sampullara.mcp.server.McpSessionManager.McpSession;
+
+/**
+ * Session churn and lookups with eight threads contending on one manager
+ * that already holds {@link #LIVE_SESSIONS} sessions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class McpSessionManagerBenchmark {
+    private static final int LIVE_SESSIONS = 10_000;
+
+    @State(Scope.Benchmark)
+    public static class Sessions {
+        McpSessionManager sessionManager;
+        String[] ids;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            sessionManager = new McpSessionManager(new McpServerConfig().maxSessions(LIVE_SESSIONS * 2), null);
+            ids = new String[LIVE_SESSIONS];
+            for (int i = 0; i < LIVE_SESSIONS; i++) {
+                ids[i] = sessionManager.createSession().id();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            sessionManager.closeAllSessions();
+        }
+    }
+
+    @Benchmark
+    public McpSession lookup(Sessions sessions) {
+        return sessions.sessionManager.getSession(sessions.ids[ThreadLocalRandom.current().nextInt(LIVE_SESSIONS)]);
+    }
+
+    @Benchmark
+    public McpSession createLookupRemove(Sessions sessions) {
+        McpSession session = sessions.sessionManager.createSession();
+        McpSession found = sessions.sessionManager.getSession(session.id());
+        sessions.sessionManager.removeSession(session.id());
+        return found;
+    }
+}
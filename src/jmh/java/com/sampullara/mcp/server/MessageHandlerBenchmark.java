@@ -0,0 +1,143 @@
+package com.sampullara.mcp.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * {@link MessageHandler#handle} end to end, minus the socket: decode, session
+ * lookup, dispatch and response encoding.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageHandlerBenchmark {
+
+    /**
+     * Discards the response but, unlike {@link OutputStream#nullOutputStream()},
+     * survives being closed so one instance can serve every invocation.
+     */
+    static final class Sink extends OutputStream {
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Server {
+        final ObjectMapper objectMapper = new ObjectMapper();
+        final BenchmarkExchange exchange = new BenchmarkExchange("POST");
+        final Sink sink = new Sink();
+        ExecutorService executor;
+        McpSessionManager sessionManager;
+        MessageHandler handler;
+        String sessionId;
+
+        void start() {
+            executor = Executors.newVirtualThreadPerTaskExecutor();
+            sessionManager = new McpSessionManager();
+            handler = new MessageHandler(sessionManager, objectMapper, new McpServerConfig(), executor);
+            sessionId = sessionManager.createSession().id();
+        }
+
+        ObjectNode schema() {
+            ObjectNode schema = objectMapper.createObjectNode();
+            schema.put("type", "object");
+            schema.putObject("properties").putObject("text").put("type", "string");
+            return schema;
+        }
+
+        byte[] request(String method, String params) {
+            return ("{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"" + method + "\",\"sessionId\":\"" + sessionId + "\""
+                    + (params == null ? "" : ",\"params\":" + params) + "}").getBytes(StandardCharsets.UTF_8);
+        }
+
+        void handle(byte[] body) throws IOException {
+            handler.handle(exchange.reset(body, sink));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            sessionManager.closeAllSessions();
+            executor.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ToolCall extends Server {
+        @Param({"64", "262144"})
+        int argumentBytes;
+
+        byte[] body;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            start();
+            ObjectNode ok = objectMapper.createObjectNode();
+            ok.putArray("content").addObject().put("type", "text").put("text", "ok");
+            handler.registerTool(new MessageHandler.Tool("echo", "Returns ok", schema()), _ -> ok);
+            String text = "x".repeat(argumentBytes);
+            body = request("tools/call", "{\"name\":\"echo\",\"arguments\":{\"text\":\"" + text + "\"}}");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ToolList extends Server {
+        @Param({"10", "1000", "100000"})
+        int tools;
+
+        byte[] body;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            start();
+            ObjectNode schema = schema();
+            for (int i = 0; i < tools; i++) {
+                handler.registerTool(new MessageHandler.Tool("tool-" + i, "Benchmark tool " + i, schema));
+            }
+            body = request("tools/list", null);
+        }
+    }
+
+    @Benchmark
+    public long toolsCall(ToolCall state) throws IOException {
+        state.handle(state.body);
+        return state.sink.bytes;
+    }
+
+    @Benchmark
+    public long toolsList(ToolList state) throws IOException {
+        state.handle(state.body);
+        return state.sink.bytes;
+    }
+}
@@ -0,0 +1,168 @@
+package com.sampullara.mcp.server;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Checking typical tool arguments against a compiled {@link SchemaValidator},
+ * and against a validator that interprets the schema tree on every call the
+ * way a straightforward implementation would: keywords looked up by name,
+ * patterns compiled each time and enums scanned.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaValidatorBenchmark {
+    private static final String SCHEMA = """
+        {"type": "object", "required": ["query", "limit"], "additionalProperties": false,
+         "properties": {
+            "query": {"type": "string", "minLength": 1, "maxLength": 512},
+            "limit": {"type": "integer", "minimum": 1, "maximum": 100},
+            "sort": {"enum": ["relevance", "newest", "oldest", "popular", "random"]},
+            "repository": {"type": "string", "pattern": "^[A-Za-z0-9_.-]+/[A-Za-z0-9_.-]+$"},
+            "labels": {"type": "array", "maxItems": 20, "items": {"type": "string", "pattern": "^[a-z0-9-]+$"}},
+            "filters": {"type": "object", "properties": {
+                "author": {"type": "string"},
+                "since": {"type": "string"},
+                "draft": {"type": "boolean"}}}
+         }}
+        """;
+    private static final String ARGUMENTS = """
+        {"query": "memory leak in event loop", "limit": 25, "sort": "newest",
+         "repository": "example/server", "labels": ["bug", "performance", "needs-triage"],
+         "filters": {"author": "someone", "since": "2024-01-01", "draft": false}}
+        """;
+
+    @State(Scope.Benchmark)
+    public static class Schema {
+        JsonNode schema;
+        JsonNode arguments;
+        SchemaValidator compiled;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            ObjectMapper objectMapper = new ObjectMapper();
+            schema = objectMapper.readTree(SCHEMA);
+            arguments = objectMapper.readTree(ARGUMENTS);
+            compiled = SchemaValidator.compile(schema);
+            if (compiled.validate(arguments) != null || !NaiveValidator.valid(schema, arguments)) {
+                throw new IllegalStateException("Benchmark arguments do not match the schema");
+            }
+        }
+    }
+
+    @Benchmark
+    public SchemaValidator.Violation compiled(Schema state) {
+        return state.compiled.validate(state.arguments);
+    }
+
+    @Benchmark
+    public boolean naive(Schema state) {
+        return NaiveValidator.valid(state.schema, state.arguments);
+    }
+
+    /**
+     * The baseline: the same keywords, read from the schema on every call.
+     */
+    static final class NaiveValidator {
+        static boolean valid(JsonNode schema, JsonNode value) {
+            JsonNode type = schema.get("type");
+            if (type != null && !hasType(value, type.asText())) {
+                return false;
+            }
+            JsonNode values = schema.get("enum");
+            if (values != null) {
+                boolean found = false;
+                for (JsonNode allowed : values) {
+                    found |= allowed.equals(value);
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            if (value.isTextual()) {
+                String text = value.asText();
+                if (schema.has("minLength") && text.codePointCount(0, text.length()) < schema.get("minLength").asInt()) {
+                    return false;
+                }
+                if (schema.has("maxLength") && text.codePointCount(0, text.length()) > schema.get("maxLength").asInt()) {
+                    return false;
+                }
+                if (schema.has("pattern") && !Pattern.compile(schema.get("pattern").asText()).matcher(text).find()) {
+                    return false;
+                }
+            }
+            if (value.isNumber()) {
+                if (schema.has("minimum") && value.asDouble() < schema.get("minimum").asDouble()) {
+                    return false;
+                }
+                if (schema.has("maximum") && value.asDouble() > schema.get("maximum").asDouble()) {
+                    return false;
+                }
+            }
+            if (value.isObject()) {
+                if (schema.has("required")) {
+                    for (JsonNode name : schema.get("required")) {
+                        if (!value.has(name.asText())) {
+                            return false;
+                        }
+                    }
+                }
+                JsonNode properties = schema.path("properties");
+                boolean closed = !schema.path("additionalProperties").asBoolean(true);
+                for (Iterator<Map.Entry<String, JsonNode>> fields = value.fields(); fields.hasNext(); ) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    JsonNode property = properties.get(field.getKey());
+                    if (property == null ? closed : !valid(property, field.getValue())) {
+                        return false;
+                    }
+                }
+            }
+            if (value.isArray()) {
+                if (schema.has("maxItems") && value.size() > schema.get("maxItems").asInt()) {
+                    return false;
+                }
+                if (schema.has("items")) {
+                    for (JsonNode item : value) {
+                        if (!valid(schema.get("items"), item)) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static boolean hasType(JsonNode value, String type) {
+            return switch (type) {
+                case "object" -> value.isObject();
+                case "array" -> value.isArray();
+                case "string" -> value.isTextual();
+                case "integer" -> value.isIntegralNumber();
+                case "number" -> value.isNumber();
+                case "boolean" -> value.isBoolean();
+                case "null" -> value.isNull();
+                default -> false;
+            };
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.sampullara.mcp.server;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link SseEmitter#emit} throughput with one and with many producers sharing
+ * a stream, for string data and for JSON generated straight into the frame
+ * (run with {@code -prof gc} to compare allocation per event). Each producer waits for its frames every {@link #WINDOW} emits so
+ * the queue stays bounded and the writer's flushes are part of the cost.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseEmitterBenchmark {
+    private static final int WINDOW = 64;
+    private static final String DATA = "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/message\",\"params\":{\"level\":\"info\"}}";
+    private static final SseFrameEncoder.JsonWriter JSON = generator -> {
+        generator.writeStartObject();
+        generator.writeStringField("jsonrpc", "2.0");
+        generator.writeStringField("method", "notifications/message");
+        generator.writeObjectFieldStart("params");
+        generator.writeStringField("level", "info");
+        generator.writeEndObject();
+        generator.writeEndObject();
+    };
+
+    @State(Scope.Benchmark)
+    public static class Stream {
+        final MessageHandlerBenchmark.Sink sink = new MessageHandlerBenchmark.Sink();
+        SseEmitter emitter;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            emitter = new SseEmitter();
+            emitter.setOutputStream(sink);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            emitter.complete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        int emitted;
+        CompletableFuture<Void> last;
+
+        CompletableFuture<Void> emit(SseEmitter emitter) throws IOException {
+            return windowed(emitter.emit("message", DATA));
+        }
+
+        CompletableFuture<Void> emitJson(SseEmitter emitter) throws IOException {
+            return windowed(emitter.emit("message", JSON));
+        }
+
+        private CompletableFuture<Void> windowed(CompletableFuture<Void> emit) {
+            last = emit;
+            if (++emitted % WINDOW == 0) {
+                last.join();
+            }
+            return last;
+        }
+
+        @TearDown(Level.Iteration)
+        public void drain() {
+            if (last != null) {
+                last.join();
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public CompletableFuture<Void> singleProducer(Stream stream, Producer producer) throws IOException {
+        return producer.emit(stream.emitter);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public CompletableFuture<Void> singleProducerJson(Stream stream, Producer producer) throws IOException {
+        return producer.emitJson(stream.emitter);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public CompletableFuture<Void> manyProducers(Stream stream, Producer producer) throws IOException {
+        return producer.emit(stream.emitter);
+    }
+}
@@ -0,0 +1,94 @@
+package com.sampullara.mcp.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Concurrency limit that adapts to observed latency, additive increase /
+ * multiplicative decrease. A call that finishes within its latency target
+ * while the limit is being used grows the limit by one per limit's worth of
+ * calls; a call that overruns its target cuts the limit by {@link #BACKOFF}.
+ * Cuts happen at most once per observed latency, so a wave of slow calls that
+ * were all admitted under the old limit counts as one congestion signal.
+ *
+ * <p>Calls over the limit are refused, never queued. All state is in atomics.
+ */
+public class AdaptiveLimiter {
+    static final double BACKOFF = 0.9;
+    private static final int MIN_LIMIT = 1;
+
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Double bits of the current limit
+    private final AtomicLong limit;
+    // Far enough back that the first congested call always counts
+    private final AtomicLong lastDecreaseNanos = new AtomicLong(System.nanoTime() - TimeUnit.DAYS.toNanos(1));
+
+    /**
+     * @param maxLimit the ceiling, and the limit to start from
+     */
+    public AdaptiveLimiter(int maxLimit) {
+        if (maxLimit < MIN_LIMIT) {
+            throw new IllegalArgumentException("maxLimit must be positive: " + maxLimit);
+        }
+        this.maxLimit = maxLimit;
+        this.limit = new AtomicLong(Double.doubleToLongBits(maxLimit));
+    }
+
+    /**
+     * Admits a call if fewer than the current limit are in flight. Every
+     * admitted call must be followed by exactly one {@link #release}.
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit()) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Ends an admitted call and feeds its outcome into the limit.
+     *
+     * @param latencyNanos how long the call took
+     * @param congested    whether it overran its latency target
+     */
+    public void release(long latencyNanos, boolean congested) {
+        int before = inFlight.getAndDecrement();
+        if (congested) {
+            long now = System.nanoTime();
+            long last = lastDecreaseNanos.get();
+            if (now - last >= latencyNanos && lastDecreaseNanos.compareAndSet(last, now)) {
+                update(current -> Math.max(MIN_LIMIT, current * BACKOFF));
+            }
+        } else if (before * 2 >= limit()) {
+            // Only grow a limit that is actually being used
+            update(current -> Math.min(maxLimit, current + 1 / current));
+        }
+    }
+
+    private void update(DoubleUnaryOperator function) {
+        long current;
+        long next;
+        do {
+            current = limit.get();
+            next = Double.doubleToLongBits(function.applyAsDouble(Double.longBitsToDouble(current)));
+        } while (current != next && !limit.compareAndSet(current, next));
+    }
+
+    /**
+     * The number of calls currently admitted at once.
+     */
+    public int limit() {
+        return (int) Double.longBitsToDouble(limit.get());
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+}
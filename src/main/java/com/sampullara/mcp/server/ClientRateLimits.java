@@ -0,0 +1,41 @@
+package com.sampullara.mcp.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token buckets for clients that have no session on the server, such as
+ * those of the streamable HTTP endpoint and stdio, keyed by whatever the
+ * transport identifies the client by. At most {@link
+ * McpServerConfig#maxSessions()} clients are tracked; beyond that the least
+ * recently seen one is forgotten, and starts over with full buckets if it
+ * comes back.
+ */
+class ClientRateLimits {
+    private final Map<String, Map<String, TokenBucket>> clients;
+
+    ClientRateLimits(McpServerConfig config) {
+        int maxClients = config.maxSessions();
+        this.clients = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, TokenBucket>> eldest) {
+                return size() > maxClients;
+            }
+        };
+    }
+
+    /**
+     * The bucket for {@code key} of {@code client}, created from
+     * {@code limit} the first time it is used.
+     */
+    TokenBucket bucket(String client, String key, McpServerConfig.RateLimit limit) {
+        Map<String, TokenBucket> buckets;
+        synchronized (clients) {
+            buckets = clients.computeIfAbsent(client, _ -> new ConcurrentHashMap<>());
+        }
+        TokenBucket bucket = buckets.get(key);
+        return bucket != null ? bucket
+                : buckets.computeIfAbsent(key, _ -> new TokenBucket(limit.permitsPerSecond(), limit.burst()));
+    }
+}
@@ -0,0 +1,219 @@
+package com.sampullara.mcp.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * The HTTP content codings the server can answer with, negotiated from the
+ * request's {@code Accept-Encoding} header.
+ *
+ * <p>Unary responses are compressed whole, except that a response built on a
+ * {@link SharedPayload} reuses the payload's cached deflate blocks: only the
+ * small per-request envelope is added, as stored blocks, around them. Event
+ * streams are wrapped in a sync-flushing stream so one compression context
+ * lives for the whole stream while every flush still reaches the client.
+ */
+public enum ContentCoding {
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final byte[] ZLIB_HEADER = {0x78, (byte) 0x9c};
+    private static final int MAX_STORED_BLOCK = 65535;
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    private static final byte[] CLOSE = {'}'};
+
+    private final String token;
+
+    ContentCoding(String token) {
+        this.token = token;
+    }
+
+    /**
+     * The {@code Content-Encoding} value for this coding.
+     */
+    public String token() {
+        return token;
+    }
+
+    /**
+     * Picks a coding the client accepts, preferring gzip on a tie, or returns
+     * {@code null} if the response should not be compressed.
+     */
+    public static ContentCoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] fields = part.split(";");
+            String coding = fields[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < fields.length; i++) {
+                String param = fields[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            switch (coding) {
+                case "gzip", "x-gzip" -> gzip = quality;
+                case "deflate" -> deflate = quality;
+                case "*" -> any = quality;
+                default -> {
+                }
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    public static ContentCoding negotiate(HttpExchange exchange) {
+        return negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+    }
+
+    /**
+     * Compresses a complete response body.
+     */
+    public byte[] encode(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (OutputStream compressed = wrap(out)) {
+            compressed.write(body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Compresses a JSON-RPC response. A result held in a {@link
+     * SharedPayload} is not deflated again; its cached blocks are spliced
+     * between the envelope's head and tail.
+     */
+    public byte[] encode(JsonRpcResponse response) {
+        if (!(response instanceof JsonRpcResponse.Encoded encoded) || encoded.shared() == null) {
+            return encode(response.toByteArray());
+        }
+        ByteArrayOutputStream head = new ByteArrayOutputStream(64);
+        try {
+            response.writeHead(head);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return splice(head.toByteArray(), encoded.shared(), CLOSE);
+    }
+
+    private byte[] splice(byte[] head, SharedPayload member, byte[] tail) {
+        byte[] deflated = member.deflated();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(deflated.length + head.length + tail.length + 64);
+        Checksum checksum = this == GZIP ? new CRC32() : new Adler32();
+        out.writeBytes(this == GZIP ? GZIP_HEADER : ZLIB_HEADER);
+        writeStored(out, head, false);
+        out.writeBytes(deflated);
+        writeStored(out, tail, true);
+        checksum.update(head);
+        checksum.update(member.bytes());
+        checksum.update(tail);
+        int value = (int) checksum.getValue();
+        if (this == GZIP) {
+            writeIntLE(out, value);
+            writeIntLE(out, head.length + member.bytes().length + tail.length);
+        } else {
+            out.write(value >>> 24);
+            out.write(value >>> 16);
+            out.write(value >>> 8);
+            out.write(value);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Wraps an output stream so that everything written to it is compressed
+     * and every {@link OutputStream#flush()} emits the data written so far.
+     * Closing the wrapper finishes the compressed stream and closes {@code out}.
+     */
+    public OutputStream wrap(OutputStream out) throws IOException {
+        return switch (this) {
+            case GZIP -> new GZIPOutputStream(out, STREAM_BUFFER_SIZE, true);
+            case DEFLATE -> new DeflaterOutputStream(out, new Deflater(), STREAM_BUFFER_SIZE, true) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        // Not the stream's default deflater, so it is not ended for us
+                        def.end();
+                    }
+                }
+            };
+        };
+    }
+
+    /**
+     * Deflates {@code data} on its own, with no references to anything before
+     * it, and sync-flushes so the blocks end on a byte boundary.
+     */
+    static byte[] deflateFragment(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            int n;
+            // A full buffer means there may be more output pending
+            do {
+                n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                out.write(buffer, 0, n);
+            } while (n == buffer.length);
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeStored(ByteArrayOutputStream out, byte[] data, boolean last) {
+        int offset = 0;
+        int length = data.length;
+        do {
+            int chunk = Math.min(length, MAX_STORED_BLOCK);
+            length -= chunk;
+            // BFINAL in bit 0, BTYPE 00 (stored), padding to the byte boundary
+            out.write(last && length == 0 ? 1 : 0);
+            out.write(chunk);
+            out.write(chunk >>> 8);
+            out.write(~chunk);
+            out.write(~chunk >>> 8);
+            out.write(data, offset, chunk);
+            offset += chunk;
+        } while (length > 0);
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+}
@@ -0,0 +1,33 @@
+package com.sampullara.mcp.server;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Serves a local file by memory-mapping the requested range. The channel is
+ * closed right away; the mapping stays valid until the buffer is collected,
+ * so nothing is held open between reads.
+ */
+public class FileResourceProvider implements ResourceProvider {
+    private final Path path;
+
+    public FileResourceProvider(Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public ResourceContents read(long offset, int maxLength) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (offset < 0 || offset > size) {
+                throw new IllegalArgumentException("Offset " + offset + " is outside of " + size + " bytes");
+            }
+            long length = Math.min(maxLength, size - offset);
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            return new ResourceContents(data, offset, size);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.sampullara.mcp.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Transport backed by the JDK's {@code com.sun.net.httpserver}. Every exchange
+ * runs on its own thread from the server executor.
+ */
+public class HttpServerTransport implements McpTransport {
+    private final HttpServer server;
+
+    public HttpServerTransport(InetSocketAddress address, ExecutorService executor) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(executor);
+    }
+
+    @Override
+    public void createContext(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+    }
+
+    @Override
+    public void start() {
+        server.start();
+    }
+
+    @Override
+    public void stop() {
+        server.stop(0);
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    @Override
+    public boolean supportsDetachedStreams() {
+        return false;
+    }
+}
@@ -0,0 +1,124 @@
+package com.sampullara.mcp.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Single-pass JSON-RPC envelope decoder built on the streaming parser. The
+ * request body is read directly from the transport; the envelope fields are
+ * pulled out as they are encountered and {@code params} is copied once into a
+ * {@link TokenBuffer} without building a tree.
+ */
+public class JsonRpcDecoder {
+    private static final JsonRpcRequest INVALID = new JsonRpcRequest(null, null, null, null, null);
+
+    private final ObjectMapper objectMapper;
+
+    public JsonRpcDecoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * The requests carried by one body. {@code batch} is true when the body was
+     * a top-level array, even if it held a single element.
+     */
+    public record Decoded(boolean batch, List<JsonRpcRequest> requests) {}
+
+    /**
+     * Decodes one request or a batch of requests from the stream. A body that
+     * is well-formed JSON but neither an object nor an array yields a single
+     * invalid request, as does each non-object element of a batch. At most
+     * {@code maxBatchSize + 1} batch elements are read so an oversized batch can
+     * be rejected without buffering all of it. Malformed JSON, including
+     * anything but whitespace after the top-level value, is reported as a
+     * {@link com.fasterxml.jackson.core.JsonProcessingException}.
+     */
+    public Decoded decode(InputStream in, int maxBatchSize) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            return decode(parser, maxBatchSize);
+        }
+    }
+
+    /**
+     * Decodes a message that is already in memory, such as one line of a
+     * newline-delimited stream, straight from the raw bytes.
+     */
+    public Decoded decode(byte[] data, int offset, int length, int maxBatchSize) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(data, offset, length)) {
+            return decode(parser, maxBatchSize);
+        }
+    }
+
+    private Decoded decode(JsonParser parser, int maxBatchSize) throws IOException {
+        JsonToken token = parser.nextToken();
+        Decoded decoded;
+        if (token == JsonToken.START_ARRAY) {
+            List<JsonRpcRequest> requests = new ArrayList<>();
+            while (parser.nextToken() != JsonToken.END_ARRAY && requests.size() <= maxBatchSize) {
+                requests.add(decodeValue(parser));
+            }
+            if (requests.size() > maxBatchSize) {
+                // Refused for its size, so the rest is never read
+                return new Decoded(true, requests);
+            }
+            decoded = new Decoded(true, requests);
+        } else if (token == null) {
+            return new Decoded(false, List.of(INVALID));
+        } else {
+            decoded = new Decoded(false, List.of(decodeValue(parser)));
+        }
+        if (parser.nextToken() != null) {
+            throw new JsonParseException(parser, "Unexpected content after the message");
+        }
+        return decoded;
+    }
+
+    private JsonRpcRequest decodeValue(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            return decodeObject(parser);
+        }
+        parser.skipChildren();
+        return INVALID;
+    }
+
+    private JsonRpcRequest decodeObject(JsonParser parser) throws IOException {
+        String jsonrpc = null;
+        String method = null;
+        String id = null;
+        String sessionId = null;
+        TokenBuffer params = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "jsonrpc" -> jsonrpc = scalarText(parser, value);
+                case "method" -> method = scalarText(parser, value);
+                case "id" -> id = scalarText(parser, value);
+                case "sessionId" -> sessionId = scalarText(parser, value);
+                case "params" -> {
+                    params = new TokenBuffer(parser);
+                    params.copyCurrentStructure(parser);
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return new JsonRpcRequest(jsonrpc, method, id, sessionId, params);
+    }
+
+    private static String scalarText(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+}
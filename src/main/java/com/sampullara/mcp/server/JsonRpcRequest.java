@@ -0,0 +1,49 @@
+package com.sampullara.mcp.server;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * A decoded JSON-RPC 2.0 request envelope. The {@code params} member is kept as
+ * the raw token stream captured by the parser and is only bound to a tree or a
+ * type when a method handler asks for it.
+ */
+public record JsonRpcRequest(
+        String jsonrpc,
+        String method,
+        String id,
+        String sessionId,
+        TokenBuffer params
+) {
+    public boolean isValid() {
+        return "2.0".equals(jsonrpc) && method != null;
+    }
+
+    /**
+     * Notifications carry no id and never receive a response.
+     */
+    public boolean isNotification() {
+        return id == null;
+    }
+
+    public boolean hasParams() {
+        return params != null;
+    }
+
+    public JsonNode params(ObjectMapper objectMapper) throws IOException {
+        if (params == null) {
+            return objectMapper.createObjectNode();
+        }
+        return objectMapper.readTree(params.asParser(objectMapper));
+    }
+
+    public <T> T params(ObjectMapper objectMapper, Class<T> type) throws IOException {
+        if (params == null) {
+            return null;
+        }
+        return objectMapper.readValue(params.asParser(objectMapper), type);
+    }
+}
@@ -0,0 +1,113 @@
+package com.sampullara.mcp.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+/**
+ * A JSON-RPC 2.0 response whose result or error member is either already
+ * encoded or written straight to the transport. Only the envelope and the
+ * request id are written per call, so payloads that are shared between
+ * requests never have to be re-serialized.
+ */
+public sealed interface JsonRpcResponse permits JsonRpcResponse.Encoded, JsonRpcResponse.Streamed {
+    byte[] PREFIX = "{\"jsonrpc\":\"2.0\",\"id\":".getBytes(StandardCharsets.UTF_8);
+    byte[] RESULT = ",\"result\":".getBytes(StandardCharsets.UTF_8);
+    byte[] ERROR = ",\"error\":".getBytes(StandardCharsets.UTF_8);
+    byte[] NULL = "null".getBytes(StandardCharsets.UTF_8);
+
+    String id();
+
+    boolean isError();
+
+    void writeMember(OutputStream out) throws IOException;
+
+    /**
+     * Writes the result member directly to the output, for results that are
+     * too large to buffer.
+     */
+    @FunctionalInterface
+    interface MemberWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * @param shared the payload {@code member} came from when it is shared
+     *               between responses, so its compressed form can be reused;
+     *               otherwise {@code null}
+     */
+    record Encoded(String id, byte[] member, boolean isError, SharedPayload shared) implements JsonRpcResponse {
+        public Encoded(String id, byte[] member, boolean isError) {
+            this(id, member, isError, null);
+        }
+
+        @Override
+        public void writeMember(OutputStream out) throws IOException {
+            out.write(member);
+        }
+    }
+
+    record Streamed(String id, MemberWriter writer) implements JsonRpcResponse {
+        @Override
+        public boolean isError() {
+            return false;
+        }
+
+        @Override
+        public void writeMember(OutputStream out) throws IOException {
+            writer.writeTo(out);
+        }
+    }
+
+    static JsonRpcResponse ofResult(String id, byte[] encodedResult) {
+        return new Encoded(id, encodedResult, false);
+    }
+
+    static JsonRpcResponse ofResult(String id, SharedPayload sharedResult) {
+        return new Encoded(id, sharedResult.bytes(), false, sharedResult);
+    }
+
+    static JsonRpcResponse ofError(String id, byte[] encodedError) {
+        return new Encoded(id, encodedError, true);
+    }
+
+    static JsonRpcResponse ofStreamedResult(String id, MemberWriter writer) {
+        return new Streamed(id, writer);
+    }
+
+    default void writeTo(OutputStream out) throws IOException {
+        writeHead(out);
+        writeMember(out);
+        out.write('}');
+    }
+
+    /**
+     * Writes the envelope up to the result or error member.
+     */
+    default void writeHead(OutputStream out) throws IOException {
+        out.write(PREFIX);
+        String id = id();
+        if (id == null) {
+            out.write(NULL);
+        } else {
+            out.write('"');
+            out.write(JsonStringEncoder.getInstance().quoteAsUTF8(id));
+            out.write('"');
+        }
+        out.write(isError() ? ERROR : RESULT);
+    }
+
+    default byte[] toByteArray() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                this instanceof Encoded encoded ? encoded.member().length + 64 : 8192);
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,462 @@
+package com.sampullara.mcp.server;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+/**
+ * {@link SessionRelay} between processes on one host. Every node maps an
+ * inbox file, {@code <nodeId>.ring} in a shared directory (best on a tmpfs
+ * such as {@code /dev/shm}), holding a ring buffer that any process may write
+ * to and only its owner reads. Requests go into the owner's inbox and replies
+ * into the sender's, matched up by a correlation id.
+ *
+ * <p>Writers from different processes coordinate through atomic operations
+ * on the mapped memory itself: a writer claims space by advancing the tail
+ * with a compare-and-set, marks the space as claimed by storing the negated
+ * length of its record along with its process id, fills in the record and
+ * publishes it by storing the positive length last. The reader waits for that
+ * length, handles the record, zeroes it for the next lap and advances the
+ * head. A record that would run past the end of the ring is preceded by a
+ * padding record filling the rest of the lap, so records are always
+ * contiguous.
+ *
+ * <p>A writer that dies part way through would leave the reader waiting on
+ * its record forever. A record that stays claimed is skipped once the process
+ * that claimed it is gone. If a writer dies in the few instructions between
+ * advancing the tail and marking its claim, the reader cannot tell how long
+ * the record is; once it has waited that long for a claimed position, it
+ * abandons the inbox and starts over with a fresh one, and whatever was in
+ * flight through the old one is lost. Senders in turn give up on a node whose
+ * inbox stays full without draining, as if it had died.
+ *
+ * <p>The owner stamps a heartbeat into its file while it runs; a file whose
+ * heartbeat has gone stale belongs to a process that died, and its node is
+ * treated as unknown.
+ */
+public class MappedRingRelay implements SessionRelay {
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final Pattern NODE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    // File header: each field on its own cache line
+    private static final int TAIL = 0;
+    private static final int HEAD = 64;
+    private static final int HEARTBEAT = 128;
+    private static final int DATA = 192;
+
+    // Record: length, type, correlation id, sender length, body length, writer pid, then sender and body
+    private static final int RECORD_HEADER = 32;
+    private static final int WRITER_PID = 24;
+    private static final int PADDING = 1;
+    private static final int REQUEST = 2;
+    private static final int RESPONSE = 3;
+    private static final int ACCEPTED = 4;
+    private static final int FAILED = 5;
+
+    private static final long HEARTBEAT_MILLIS = 100;
+    private static final long STALE_MILLIS = 5_000;
+    private static final long FULL_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long PID = ProcessHandle.current().pid();
+    private static final byte[] ZEROS = new byte[4096];
+
+    private final Path directory;
+    private final String nodeId;
+    private final byte[] sender;
+    private final int ringBytes;
+    private final Executor executor;
+    private final long stallMillis;
+    private final Map<String, Ring> peers = new ConcurrentHashMap<>();
+    private final Map<Long, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextCorrelation = new AtomicLong();
+    private volatile Ring inbox;
+    private volatile Handler handler;
+    private volatile boolean closed;
+    private Thread reader;
+
+    /**
+     * @param directory directory shared by every node on the host
+     * @param nodeId    this node's id, letters, digits, {@code _} and {@code -}
+     * @param ringBytes size of this node's inbox, rounded up to a power of two;
+     *                  messages over half of it cannot be relayed
+     * @param executor  runs forwarded requests
+     */
+    public MappedRingRelay(Path directory, String nodeId, int ringBytes, Executor executor) {
+        this(directory, nodeId, ringBytes, executor, STALE_MILLIS);
+    }
+
+    /**
+     * @param stallMillis how long the reader waits on an unpublished record
+     *                    before checking whether its writer died
+     */
+    MappedRingRelay(Path directory, String nodeId, int ringBytes, Executor executor, long stallMillis) {
+        if (!NODE_ID.matcher(nodeId).matches()) {
+            throw new IllegalArgumentException("Invalid node id: " + nodeId);
+        }
+        if (ringBytes < 1) {
+            throw new IllegalArgumentException("ringBytes must be positive: " + ringBytes);
+        }
+        this.directory = directory;
+        this.nodeId = nodeId;
+        this.sender = nodeId.getBytes(StandardCharsets.US_ASCII);
+        this.ringBytes = Math.max(ZEROS.length, Integer.highestOneBit(ringBytes - 1) << 1);
+        this.executor = executor;
+        this.stallMillis = stallMillis;
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public synchronized void start(Handler handler) throws IOException {
+        if (inbox != null) {
+            throw new IllegalStateException("Relay already started");
+        }
+        this.handler = handler;
+        Files.createDirectories(directory);
+        inbox = createInbox();
+        reader = Thread.ofPlatform().daemon().name("mcp-relay-" + nodeId).start(this::read);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> forward(String nodeId, byte[] body) {
+        CompletableFuture<byte[]> reply = new CompletableFuture<>();
+        long correlation = nextCorrelation.incrementAndGet();
+        pending.put(correlation, reply);
+        // Also clears replies the caller gave up waiting for
+        reply.whenComplete((_, _) -> pending.remove(correlation));
+        try {
+            send(nodeId, REQUEST, correlation, body);
+        } catch (IOException e) {
+            reply.completeExceptionally(e);
+        }
+        return reply;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (reader != null) {
+            LockSupport.unpark(reader);
+            try {
+                reader.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Peers that still have the inbox mapped see at once that it is gone
+            inbox.beat(0);
+            Files.deleteIfExists(ringFile(nodeId));
+        }
+        IOException closedError = new IOException("Relay closed");
+        pending.values().forEach(reply -> reply.completeExceptionally(closedError));
+    }
+
+    private Ring createInbox() throws IOException {
+        // Built under a temporary name so no peer ever maps a file that is not ready
+        Path temporary = Files.createTempFile(directory, nodeId, ".tmp");
+        Ring ring = Ring.map(temporary, DATA + ringBytes);
+        ring.beat(System.currentTimeMillis());
+        Files.move(temporary, ringFile(nodeId), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return ring;
+    }
+
+    private Path ringFile(String nodeId) {
+        return directory.resolve(nodeId + ".ring");
+    }
+
+    private void send(String nodeId, int type, long correlation, byte[] body) throws IOException {
+        if (closed) {
+            throw new IOException("Relay closed");
+        }
+        Ring ring = peer(nodeId);
+        long deadline = System.nanoTime() + FULL_WAIT_NANOS;
+        long head = ring.head();
+        while (!ring.offer(type, correlation, sender, body)) {
+            if (System.nanoTime() - deadline > 0) {
+                // A reader that made no progress at all in that time is as good as dead
+                if (ring.head() == head) {
+                    throw new UnknownNodeException(nodeId);
+                }
+                throw new IOException("Inbox of node " + nodeId + " is full");
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+    }
+
+    private Ring peer(String nodeId) throws IOException {
+        Ring ring = peers.get(nodeId);
+        if (ring != null && ring.alive()) {
+            return ring;
+        }
+        // Session ids come from clients, so only well-formed ids may name a file
+        if (!NODE_ID.matcher(nodeId).matches()) {
+            throw new UnknownNodeException(nodeId);
+        }
+        // A stale mapping may belong to a process that has since restarted under the same id
+        try {
+            ring = Ring.map(ringFile(nodeId), -1);
+        } catch (NoSuchFileException e) {
+            throw new UnknownNodeException(nodeId);
+        }
+        if (!ring.alive()) {
+            throw new UnknownNodeException(nodeId);
+        }
+        peers.put(nodeId, ring);
+        return ring;
+    }
+
+    private void read() {
+        Ring ring = inbox;
+        long head = ring.head();
+        long lastBeat = 0;
+        long stalledSince = 0;
+        int idle = 0;
+        while (!closed) {
+            long now = System.currentTimeMillis();
+            if (now - lastBeat >= HEARTBEAT_MILLIS) {
+                ring.beat(now);
+                lastBeat = now;
+            }
+            int index = DATA + (int) (head & ring.mask);
+            int length = (int) INT.getAcquire(ring.buffer, index);
+            if (length <= 0) {
+                if (length == 0 && (long) LONG.getVolatile(ring.buffer, TAIL) == head) {
+                    stalledSince = 0;
+                } else if (stalledSince == 0) {
+                    stalledSince = now;
+                } else if (now - stalledSince >= stallMillis) {
+                    // Space is claimed but unpublished: recover if its writer has died
+                    stalledSince = now;
+                    if (length < 0 && !alive(ring.buffer.getLong(index + WRITER_PID))) {
+                        System.err.println("Skipping relayed message abandoned by a dead process");
+                        length = -length;
+                    } else if (length == 0) {
+                        ring = replaceInbox(ring);
+                        head = ring.head();
+                        continue;
+                    }
+                }
+                if (length <= 0) {
+                    // Spin briefly for back-to-back messages, then back off to sleeping
+                    if (++idle < 100) {
+                        Thread.onSpinWait();
+                    } else {
+                        LockSupport.parkNanos(idle < 1_000 ? 20_000 : 1_000_000);
+                    }
+                    continue;
+                }
+            }
+            idle = 0;
+            stalledSince = 0;
+            if (ring.buffer.getInt(index + 4) != PADDING && ring.buffer.getInt(index) > 0) {
+                try {
+                    receive(ring, index);
+                } catch (RuntimeException e) {
+                    System.err.println("Error reading relayed message: " + e.getMessage());
+                }
+            }
+            ring.clear(index, length);
+            head += length;
+            LONG.setRelease(ring.buffer, HEAD, head);
+        }
+    }
+
+    private static boolean alive(long pid) {
+        return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    /**
+     * Swaps in a fresh inbox for one that is stuck on a claim whose length it
+     * cannot know. Peers see the old one die and map the new one.
+     */
+    private Ring replaceInbox(Ring stuck) {
+        try {
+            Ring ring = createInbox();
+            stuck.beat(0);
+            inbox = ring;
+            System.err.println("Replaced relay inbox stuck on an unpublished message");
+            return ring;
+        } catch (IOException e) {
+            System.err.println("Error replacing stuck relay inbox: " + e.getMessage());
+            return stuck;
+        }
+    }
+
+    private void receive(Ring ring, int index) {
+        MappedByteBuffer buffer = ring.buffer;
+        int type = buffer.getInt(index + 4);
+        long correlation = buffer.getLong(index + 8);
+        byte[] from = new byte[buffer.getInt(index + 16)];
+        byte[] body = new byte[buffer.getInt(index + 20)];
+        buffer.get(index + RECORD_HEADER, from);
+        buffer.get(index + RECORD_HEADER + from.length, body);
+        switch (type) {
+            case REQUEST -> executor.execute(() -> answer(new String(from, StandardCharsets.US_ASCII), correlation, body));
+            case RESPONSE, ACCEPTED, FAILED -> {
+                CompletableFuture<byte[]> reply = pending.remove(correlation);
+                if (reply == null) {
+                    return;
+                }
+                if (type == FAILED) {
+                    reply.completeExceptionally(new IOException(new String(body, StandardCharsets.UTF_8)));
+                } else {
+                    reply.complete(type == RESPONSE ? body : null);
+                }
+            }
+            default -> System.err.println("Unknown relayed message type: " + type);
+        }
+    }
+
+    private void answer(String from, long correlation, byte[] body) {
+        int type;
+        byte[] reply;
+        try {
+            reply = handler.handle(body);
+            type = reply == null ? ACCEPTED : RESPONSE;
+        } catch (IOException | RuntimeException e) {
+            reply = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+            type = FAILED;
+        }
+        try {
+            if (reply != null && reply.length > maxBody(peer(from))) {
+                reply = "Response too large to relay".getBytes(StandardCharsets.UTF_8);
+                type = FAILED;
+            }
+            send(from, type, correlation, reply == null ? new byte[0] : reply);
+        } catch (IOException e) {
+            System.err.println("Error relaying response to node " + from + ": " + e.getMessage());
+        }
+    }
+
+    private int maxBody(Ring ring) {
+        return ring.capacity / 2 - RECORD_HEADER - sender.length - 7;
+    }
+
+    /**
+     * One node's inbox as mapped into this process.
+     */
+    private static final class Ring {
+        final MappedByteBuffer buffer;
+        final int capacity;
+        final int mask;
+
+        private Ring(MappedByteBuffer buffer, int capacity) {
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * Maps {@code file}, creating it at {@code size} bytes, or at its
+         * existing size when {@code size} is negative.
+         */
+        static Ring map(Path file, int size) throws IOException {
+            try (FileChannel channel = size < 0
+                    ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+                long length = size < 0 ? channel.size() : size;
+                int capacity = (int) (length - DATA);
+                if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+                    throw new IOException("Not a relay ring: " + file);
+                }
+                // The mapping stays valid after the channel is closed
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+                buffer.order(ByteOrder.nativeOrder());
+                return new Ring(buffer, capacity);
+            }
+        }
+
+        long head() {
+            return (long) LONG.getAcquire(buffer, HEAD);
+        }
+
+        void beat(long now) {
+            LONG.setRelease(buffer, HEARTBEAT, now);
+        }
+
+        boolean alive() {
+            return System.currentTimeMillis() - (long) LONG.getAcquire(buffer, HEARTBEAT) < STALE_MILLIS;
+        }
+
+        /**
+         * Writes one record, or returns {@code false} if the reader has not
+         * yet made room for it.
+         */
+        boolean offer(int type, long correlation, byte[] from, byte[] body) throws IOException {
+            int length = align(RECORD_HEADER + from.length + body.length);
+            // Bigger records could need a padding record so long they never fit
+            if (length > capacity / 2) {
+                throw new IOException("Message of " + body.length + " bytes is too large to relay");
+            }
+            long tail;
+            int index;
+            int padding;
+            do {
+                tail = (long) LONG.getVolatile(buffer, TAIL);
+                long head = (long) LONG.getAcquire(buffer, HEAD);
+                index = (int) (tail & mask);
+                padding = capacity - index < length ? capacity - index : 0;
+                if (tail + padding + length - head > capacity) {
+                    return false;
+                }
+            } while (!LONG.compareAndSet(buffer, TAIL, tail, tail + padding + length));
+
+            if (padding > 0) {
+                buffer.putInt(DATA + index + 4, PADDING);
+                INT.setRelease(buffer, DATA + index, padding);
+                index = 0;
+            }
+            int start = DATA + index;
+            // Marks the claim so the reader can skip it if this process dies before publishing
+            buffer.putLong(start + WRITER_PID, PID);
+            INT.setRelease(buffer, start, -length);
+            buffer.putInt(start + 4, type);
+            buffer.putLong(start + 8, correlation);
+            buffer.putInt(start + 16, from.length);
+            buffer.putInt(start + 20, body.length);
+            buffer.put(start + RECORD_HEADER, from);
+            buffer.put(start + RECORD_HEADER + from.length, body);
+            // Publishing the length hands the record to the reader
+            INT.setRelease(buffer, start, length);
+            return true;
+        }
+
+        /**
+         * Zeroes a consumed record so that on the next lap the reader sees no
+         * length anywhere a new record might start until one is published.
+         */
+        void clear(int start, int length) {
+            for (int offset = 0; offset < length; offset += ZEROS.length) {
+                buffer.put(start + offset, ZEROS, 0, Math.min(ZEROS.length, length - offset));
+            }
+        }
+
+        private static int align(int length) {
+            return (length + 7) & ~7;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.sampullara.mcp.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Server-wide operational metrics. Recording only touches atomics, adders
+ * and pre-allocated histogram buckets, so it allocates nothing on the hot
+ * path; the Prometheus rendering in {@link #writePrometheus} does the work.
+ */
+public class McpMetrics {
+    // Callers only pass methods the server implements, but cap them anyway
+    private static final int MAX_METHODS = 64;
+    private static final double[] QUANTILES = {50, 90, 99, 99.9};
+
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    private final LatencyHistogram serializeLatency = new LatencyHistogram();
+    private final LatencyHistogram otherDispatchLatency = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> dispatchLatency = new ConcurrentHashMap<>();
+    private final LongAdder sseBytesWritten = new LongAdder();
+    private final LongAdder sseEventsWritten = new LongAdder();
+    private final LongAdder sseWriteErrors = new LongAdder();
+    private final LongAdder sseQueueDepth = new LongAdder();
+    private final LongAdder sseDropped = new LongAdder();
+    private final LongAdder sseCoalesced = new LongAdder();
+    private final LongAdder sseOverflowDisconnects = new LongAdder();
+    private final LongAdder sseWriteTimeouts = new LongAdder();
+    private final LongAdder requestsRateLimited = new LongAdder();
+    private final LongAdder requestsShed = new LongAdder();
+    private final LongAdder requestsRelayed = new LongAdder();
+    private final LongAdder relayFailures = new LongAdder();
+    private final LongAdder sessionsCreated = new LongAdder();
+    private final LongAdder sessionsRemoved = new LongAdder();
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+
+    private record Gauge(String name, String help, String type, LongSupplier value) {}
+
+    public LatencyHistogram parseLatency() {
+        return parseLatency;
+    }
+
+    public LatencyHistogram serializeLatency() {
+        return serializeLatency;
+    }
+
+    /**
+     * The dispatch histogram for {@code method}, which must be a method the
+     * server implements; {@code null} records under {@code method="other"}.
+     */
+    public LatencyHistogram dispatchLatency(String method) {
+        if (method == null) {
+            return otherDispatchLatency;
+        }
+        LatencyHistogram histogram = dispatchLatency.get(method);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (dispatchLatency.size() >= MAX_METHODS) {
+            return otherDispatchLatency;
+        }
+        dispatchLatency.putIfAbsent(method, new LatencyHistogram());
+        return dispatchLatency.get(method);
+    }
+
+    public void sseWritten(int events, long bytes) {
+        sseEventsWritten.add(events);
+        sseBytesWritten.add(bytes);
+    }
+
+    public void sseWriteFailed() {
+        sseWriteErrors.increment();
+    }
+
+    public void sseQueued(int frames) {
+        sseQueueDepth.add(frames);
+    }
+
+    public void sseDropped() {
+        sseDropped.increment();
+    }
+
+    public void sseCoalesced() {
+        sseCoalesced.increment();
+    }
+
+    public void sseOverflowDisconnect() {
+        sseOverflowDisconnects.increment();
+    }
+
+    public void sseWriteTimedOut() {
+        sseWriteTimeouts.increment();
+    }
+
+    public void requestRateLimited() {
+        requestsRateLimited.increment();
+    }
+
+    public void requestShed() {
+        requestsShed.increment();
+    }
+
+    public void requestRelayed() {
+        requestsRelayed.increment();
+    }
+
+    public void relayFailed() {
+        relayFailures.increment();
+    }
+
+    public void sessionCreated() {
+        sessionsCreated.increment();
+    }
+
+    public void sessionRemoved() {
+        sessionsRemoved.increment();
+    }
+
+    /**
+     * Exposes a value owned by another component, read each time metrics are
+     * scraped. {@code type} is the Prometheus type, {@code gauge} or {@code counter}.
+     */
+    public void registerGauge(String name, String help, String type, LongSupplier value) {
+        gauges.add(new Gauge(name, help, type, value));
+    }
+
+    public void writePrometheus(StringBuilder out) {
+        writeSummary(out, "mcp_request_parse_seconds", "Time to decode a JSON-RPC request body", null, parseLatency);
+        writeHeader(out, "mcp_request_dispatch_seconds", "Time to handle a JSON-RPC call", "summary");
+        dispatchLatency.forEach((method, histogram) ->
+                writeSummaryValues(out, "mcp_request_dispatch_seconds", "method=\"" + escapeLabel(method) + "\"",
+                        histogram));
+        if (otherDispatchLatency.count() > 0) {
+            writeSummaryValues(out, "mcp_request_dispatch_seconds", "method=\"other\"", otherDispatchLatency);
+        }
+        writeSummary(out, "mcp_response_serialize_seconds", "Time to encode and write a response", null, serializeLatency);
+        writeValue(out, "mcp_sse_bytes_written_total", "Bytes flushed to SSE streams", "counter", sseBytesWritten.sum());
+        writeValue(out, "mcp_sse_events_written_total", "Frames flushed to SSE streams", "counter", sseEventsWritten.sum());
+        writeValue(out, "mcp_sse_write_errors_total", "Failed SSE writes", "counter", sseWriteErrors.sum());
+        writeValue(out, "mcp_sse_queue_depth", "Frames queued but not yet flushed", "gauge", sseQueueDepth.sum());
+        writeValue(out, "mcp_sse_dropped_total", "Queued notifications dropped for slow clients", "counter",
+                sseDropped.sum());
+        writeValue(out, "mcp_sse_coalesced_total", "Queued notifications replaced by newer ones", "counter",
+                sseCoalesced.sum());
+        writeValue(out, "mcp_sse_overflow_disconnects_total", "Sessions closed for exceeding their queue limits",
+                "counter", sseOverflowDisconnects.sum());
+        writeValue(out, "mcp_sse_write_timeouts_total", "SSE writes aborted after the write timeout", "counter",
+                sseWriteTimeouts.sum());
+        writeValue(out, "mcp_requests_rate_limited_total", "Requests refused by a session rate limit", "counter",
+                requestsRateLimited.sum());
+        writeValue(out, "mcp_requests_shed_total", "Requests refused by the concurrency limit", "counter",
+                requestsShed.sum());
+        writeValue(out, "mcp_requests_relayed_total", "Requests forwarded to the process owning their session",
+                "counter", requestsRelayed.sum());
+        writeValue(out, "mcp_relay_failures_total", "Forwarded requests the owning process did not answer",
+                "counter", relayFailures.sum());
+        writeValue(out, "mcp_sessions_created_total", "Sessions created", "counter", sessionsCreated.sum());
+        writeValue(out, "mcp_sessions_removed_total", "Sessions removed", "counter", sessionsRemoved.sum());
+        for (Gauge gauge : gauges) {
+            writeValue(out, gauge.name(), gauge.help(), gauge.type(), gauge.value().getAsLong());
+        }
+    }
+
+    private static void writeHeader(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void writeValue(StringBuilder out, String name, String help, String type, long value) {
+        writeHeader(out, name, help, type);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void writeSummary(StringBuilder out, String name, String help, String labels,
+                                     LatencyHistogram histogram) {
+        writeHeader(out, name, help, "summary");
+        writeSummaryValues(out, name, labels, histogram);
+    }
+
+    private static void writeSummaryValues(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String prefix = labels == null ? "" : labels + ",";
+        for (double quantile : QUANTILES) {
+            out.append(name).append("{").append(prefix).append("quantile=\"").append(quantile / 100).append("\"} ")
+                    .append(seconds(histogram.percentile(quantile))).append('\n');
+        }
+        String suffix = labels == null ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(suffix).append(' ').append(seconds(histogram.sum())).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(histogram.count()).append('\n');
+    }
+
+    /**
+     * Escapes a label value as the Prometheus text format requires.
+     */
+    static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+}
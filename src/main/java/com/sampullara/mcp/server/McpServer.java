@@ -1,17 +1,25 @@
 package com.sampullara.mcp.server;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.sun.net.httpserver.HttpServer;
 
 public class McpServer {
-    private final HttpServer server;
+    private final McpTransport transport;
     private final ObjectMapper objectMapper;
     private final McpSessionManager sessionManager;
     private final McpCapabilities capabilities;
+    private final McpServerConfig config;
+    private final ExecutorService executor;
+    private final HashedTimerWheel timerWheel;
+    private final MessageHandler messageHandler;
+    private final McpMetrics metrics;
+    private final SessionRelay relay;
 
     public record McpCapabilities(
             boolean resources,
@@ -21,20 +29,51 @@ public class McpServer {
     ) {}
 
     public McpServer(int port, McpCapabilities capabilities) throws Exception {
+        this(port, capabilities, new McpServerConfig());
+    }
+
+    public McpServer(int port, McpCapabilities capabilities, McpServerConfig config) throws Exception {
+        this(port, capabilities, config, null);
+    }
+
+    /**
+     * Creates a server that shares sessions with other processes over
+     * {@code relay}, whose node id must be the configured one. Without a
+     * relay, one is made for {@link McpServerConfig#relayDirectory()} if
+     * that is set.
+     */
+    public McpServer(int port, McpCapabilities capabilities, McpServerConfig config, SessionRelay relay)
+            throws Exception {
+        if (relay != null && !relay.nodeId().equals(config.nodeId())) {
+            throw new IllegalArgumentException("Relay node id " + relay.nodeId()
+                    + " does not match configured node id " + config.nodeId());
+        }
         this.objectMapper = new ObjectMapper();
         this.capabilities = capabilities;
-        this.sessionManager = new McpSessionManager();
+        this.config = config;
+        // One wheel drives keep-alives and session sweeps: 100ms ticks, ~51s per rotation
+        this.timerWheel = new HashedTimerWheel(100, TimeUnit.MILLISECONDS, 512);
+        this.metrics = new McpMetrics();
+        this.sessionManager = new McpSessionManager(config, timerWheel, metrics);
 
         // Create HTTP server with virtual threads
         ThreadFactory serverFactory = Thread.ofVirtual()
                 .name("mcp-worker-", 0)
                 .factory();
+        this.executor = Executors.newThreadPerTaskExecutor(serverFactory);
+        this.messageHandler = new MessageHandler(sessionManager, objectMapper, config, executor, metrics);
+        if (relay == null && config.relayDirectory() != null) {
+            relay = new MappedRingRelay(config.relayDirectory(), config.nodeId(), config.relayRingBytes(), executor);
+        }
+        this.relay = relay;
+        messageHandler.setRelay(relay);
+        registerGauges();
 
-        this.server = HttpServer.create(
-                new InetSocketAddress(port),
-                0
-        );
-        this.server.setExecutor(Executors.newThreadPerTaskExecutor(serverFactory));
+        InetSocketAddress address = new InetSocketAddress(port);
+        this.transport = switch (config.transport()) {
+            case HTTP_SERVER -> new HttpServerTransport(address, executor);
+            case NIO -> new NioHttpTransport(address, config, executor);
+        };
 
         // Set up endpoints
         setupEndpoints();
@@ -42,29 +81,89 @@ public class McpServer {
 
     private void setupEndpoints() {
         // SSE endpoint for client connections
-        server.createContext("/sse", new SseHandler(sessionManager));
+        transport.createContext("/sse", new SseHandler(sessionManager, timerWheel, transport.supportsDetachedStreams(),
+                config.sseReconnectGrace()));
 
         // Message endpoint for client-to-server communication
-        server.createContext("/message", new MessageHandler(
-                sessionManager,
-                objectMapper
-        ));
+        transport.createContext("/message", messageHandler);
+
+        // Single-endpoint streamable HTTP: POSTs answered inline or upgraded to a stream
+        transport.createContext("/mcp",
+                new StreamableHttpHandler(messageHandler, objectMapper, config, executor, metrics, timerWheel));
+
+        // Prometheus scrape endpoint
+        transport.createContext("/metrics", new MetricsHandler(metrics));
+    }
+
+    private void registerGauges() {
+        metrics.registerGauge("mcp_sessions_active", "Live sessions", "gauge", sessionManager::getSessionCount);
+        metrics.registerGauge("mcp_sse_replay_bytes", "Bytes held for Last-Event-ID replay", "gauge",
+                sessionManager::getReplayBytes);
+        AdaptiveLimiter limiter = messageHandler.getLimiter();
+        metrics.registerGauge("mcp_concurrency_limit", "Requests admitted at once under the adaptive limit", "gauge",
+                limiter::limit);
+        metrics.registerGauge("mcp_requests_in_flight", "Requests being handled", "gauge", limiter::inFlight);
+        ResultCache cache = messageHandler.getResultCache();
+        metrics.registerGauge("mcp_result_cache_hits_total", "Result cache hits", "counter",
+                () -> cache.stats().hits());
+        metrics.registerGauge("mcp_result_cache_misses_total", "Result cache misses", "counter",
+                () -> cache.stats().misses());
+        metrics.registerGauge("mcp_result_cache_evictions_total", "Result cache evictions", "counter",
+                () -> cache.stats().evictions());
+        metrics.registerGauge("mcp_result_cache_bytes", "Bytes held by the result cache", "gauge",
+                () -> cache.stats().bytes());
     }
 
     public McpSessionManager getSessionManager() {
         return sessionManager;
     }
 
+    public MessageHandler getMessageHandler() {
+        return messageHandler;
+    }
+
     public McpCapabilities getCapabilities() {
         return capabilities;
     }
 
-    public void start() {
-        server.start();
+    public McpServerConfig getConfig() {
+        return config;
+    }
+
+    public McpMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The address the server is bound to, with the actual port when it was
+     * started on port 0.
+     */
+    public InetSocketAddress getAddress() {
+        return transport.getAddress();
+    }
+
+    public SessionRelay getRelay() {
+        return relay;
+    }
+
+    public void start() throws IOException {
+        if (relay != null) {
+            relay.start(messageHandler::handleRelayed);
+        }
+        transport.start();
     }
 
     public void stop() {
+        if (relay != null) {
+            try {
+                relay.close();
+            } catch (IOException e) {
+                System.err.println("Error closing session relay: " + e.getMessage());
+            }
+        }
         sessionManager.closeAllSessions();
-        server.stop(0);
+        transport.stop();
+        executor.shutdown();
+        timerWheel.close();
     }
 }
\ No newline at end of file
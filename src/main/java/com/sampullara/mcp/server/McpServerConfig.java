@@ -0,0 +1,570 @@
+package com.sampullara.mcp.server;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Tunable limits for an {@link McpServer}. Every value has a default and the
+ * setters return {@code this} so a configuration can be built in one
+ * expression.
+ */
+public class McpServerConfig {
+    /**
+     * The HTTP implementation underneath the server.
+     */
+    public enum Transport {
+        /** The JDK's {@code com.sun.net.httpserver}, one thread per exchange. */
+        HTTP_SERVER,
+        /** {@link NioHttpTransport}: a selector thread, non-blocking writes and detached SSE streams. */
+        NIO
+    }
+
+    /**
+     * What an SSE session does when its client falls so far behind that the
+     * session's outbound queue goes over its limits.
+     */
+    public enum SseOverflowPolicy {
+        /** Drop the oldest queued notifications; disconnect if that is not enough. */
+        DROP_OLDEST,
+        /** Drop a queued notification that a newer one about the same thing replaces; disconnect if that is not enough. */
+        COALESCE,
+        /** Send an {@code error} event and close the session. */
+        DISCONNECT
+    }
+
+    /**
+     * A sustained rate with an allowance for bursts.
+     */
+    public record RateLimit(double permitsPerSecond, int burst) {
+        public RateLimit {
+            if (!(permitsPerSecond > 0) || burst < 1) {
+                throw new IllegalArgumentException("Rate and burst must be positive: " + permitsPerSecond + ", " + burst);
+            }
+        }
+    }
+
+    private static final Pattern NODE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private Transport transport = Transport.HTTP_SERVER;
+    private int socketSendBufferSize = 64 * 1024;
+    private int socketReceiveBufferSize = 64 * 1024;
+    private Duration writeTimeout = Duration.ofSeconds(30);
+    private int maxRequestBytes = 16 * 1024 * 1024;
+    private int compressionMinBytes = 1024;
+    private int maxBatchSize = 100;
+    private int listPageSize = 1000;
+    private int maxBatchConcurrency = 16;
+    private boolean asyncResponses = false;
+    private int maxSessions = 10_000;
+    private Duration sessionIdleTimeout = Duration.ofMinutes(30);
+    private Duration sessionMaxLifetime = Duration.ofHours(24);
+    private Duration sessionSweepInterval = Duration.ofSeconds(10);
+    private int sseReplayBufferBytes = 256 * 1024;
+    private long sseReplayMaxBytes = 64L * 1024 * 1024;
+    private Duration sseReconnectGrace = Duration.ofSeconds(30);
+    private int sseMaxQueuedEvents = 1024;
+    private int sseMaxQueuedBytes = 1024 * 1024;
+    private SseOverflowPolicy sseOverflowPolicy = SseOverflowPolicy.COALESCE;
+    private RateLimit sessionRateLimit = new RateLimit(200, 400);
+    private final Map<String, RateLimit> methodRateLimits = new HashMap<>();
+    private int maxConcurrentRequests = 1024;
+    private Duration requestLatencyTarget = Duration.ofSeconds(1);
+    private final Map<String, Duration> methodLatencyTargets = new HashMap<>(Map.of("tools/call", Duration.ofSeconds(10)));
+    private int maxConcurrentToolCalls = 256;
+    private int maxConcurrentCallsPerTool = 32;
+    private Duration toolCallTimeout = Duration.ofSeconds(60);
+    private Duration streamUpgradeDelay = Duration.ofMillis(250);
+    private int maxResourceReadBytes = 16 * 1024 * 1024;
+    private long resultCacheMaxBytes = 64L * 1024 * 1024;
+    private String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private Path relayDirectory;
+    private int relayRingBytes = 16 * 1024 * 1024;
+    private Duration relayTimeout = Duration.ofSeconds(75);
+
+    public Transport transport() {
+        return transport;
+    }
+
+    public McpServerConfig transport(Transport transport) {
+        this.transport = Objects.requireNonNull(transport, "transport");
+        return this;
+    }
+
+    public int socketSendBufferSize() {
+        return socketSendBufferSize;
+    }
+
+    /**
+     * {@code SO_SNDBUF} for accepted connections. Only the NIO transport
+     * controls its sockets directly.
+     */
+    public McpServerConfig socketSendBufferSize(int socketSendBufferSize) {
+        this.socketSendBufferSize = requirePositive("socketSendBufferSize", socketSendBufferSize);
+        return this;
+    }
+
+    public int socketReceiveBufferSize() {
+        return socketReceiveBufferSize;
+    }
+
+    /**
+     * {@code SO_RCVBUF} for accepted connections (NIO transport only).
+     */
+    public McpServerConfig socketReceiveBufferSize(int socketReceiveBufferSize) {
+        this.socketReceiveBufferSize = requirePositive("socketReceiveBufferSize", socketReceiveBufferSize);
+        return this;
+    }
+
+    public Duration writeTimeout() {
+        return writeTimeout;
+    }
+
+    /**
+     * How long a connection may have unsent response data without the client
+     * reading any of it before it is closed. On the NIO transport this covers
+     * every connection; on either transport a single SSE write that takes
+     * longer is aborted, checked each time the session sweeper passes.
+     */
+    public McpServerConfig writeTimeout(Duration writeTimeout) {
+        this.writeTimeout = requirePositive("writeTimeout", writeTimeout);
+        return this;
+    }
+
+    public int maxRequestBytes() {
+        return maxRequestBytes;
+    }
+
+    /**
+     * Largest request body the NIO transport buffers; bigger requests get 413.
+     */
+    public McpServerConfig maxRequestBytes(int maxRequestBytes) {
+        this.maxRequestBytes = requirePositive("maxRequestBytes", maxRequestBytes);
+        return this;
+    }
+
+    public int compressionMinBytes() {
+        return compressionMinBytes;
+    }
+
+    /**
+     * Smallest JSON response that is compressed for clients that send
+     * {@code Accept-Encoding}. Smaller ones gain too little to pay for it.
+     */
+    public McpServerConfig compressionMinBytes(int compressionMinBytes) {
+        this.compressionMinBytes = requirePositive("compressionMinBytes", compressionMinBytes);
+        return this;
+    }
+
+    public int maxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Largest number of calls accepted in one JSON-RPC batch; larger batches
+     * are rejected as a whole with {@code INVALID_REQUEST}.
+     */
+    public McpServerConfig maxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = requirePositive("maxBatchSize", maxBatchSize);
+        return this;
+    }
+
+    public int listPageSize() {
+        return listPageSize;
+    }
+
+    /**
+     * Most entries returned by one {@code tools/list} or {@code resources/list};
+     * clients page through the rest with {@code nextCursor}.
+     */
+    public McpServerConfig listPageSize(int listPageSize) {
+        this.listPageSize = requirePositive("listPageSize", listPageSize);
+        return this;
+    }
+
+    public boolean asyncResponses() {
+        return asyncResponses;
+    }
+
+    /**
+     * Whether {@code /message} answers a request for a live session with
+     * {@code 202 Accepted} at once and sends the JSON-RPC response later as a
+     * {@code message} event on the session's SSE stream. The POST connection
+     * is then free while the call runs, and many calls share the one stream.
+     */
+    public McpServerConfig asyncResponses(boolean asyncResponses) {
+        this.asyncResponses = asyncResponses;
+        return this;
+    }
+
+    public int maxBatchConcurrency() {
+        return maxBatchConcurrency;
+    }
+
+    /**
+     * Number of calls from a single batch that may run at the same time.
+     */
+    public McpServerConfig maxBatchConcurrency(int maxBatchConcurrency) {
+        this.maxBatchConcurrency = requirePositive("maxBatchConcurrency", maxBatchConcurrency);
+        return this;
+    }
+
+    public int maxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * Cap on live sessions. New SSE connections beyond it are turned away with
+     * 503 instead of allocating another session.
+     */
+    public McpServerConfig maxSessions(int maxSessions) {
+        this.maxSessions = requirePositive("maxSessions", maxSessions);
+        return this;
+    }
+
+    public Duration sessionIdleTimeout() {
+        return sessionIdleTimeout;
+    }
+
+    /**
+     * How long a session may go without a message from its client, or the
+     * client reconnecting to its event stream, before it is evicted. Events
+     * and keep-alives sent to the client do not count, since they are
+     * accepted by a connection whose peer is gone.
+     */
+    public McpServerConfig sessionIdleTimeout(Duration sessionIdleTimeout) {
+        this.sessionIdleTimeout = requirePositive("sessionIdleTimeout", sessionIdleTimeout);
+        return this;
+    }
+
+    public Duration sessionMaxLifetime() {
+        return sessionMaxLifetime;
+    }
+
+    /**
+     * Absolute age after which a session is evicted regardless of activity.
+     */
+    public McpServerConfig sessionMaxLifetime(Duration sessionMaxLifetime) {
+        this.sessionMaxLifetime = requirePositive("sessionMaxLifetime", sessionMaxLifetime);
+        return this;
+    }
+
+    public Duration sessionSweepInterval() {
+        return sessionSweepInterval;
+    }
+
+    /**
+     * Time for the background sweeper to visit every session once. The work is
+     * spread evenly over the interval, one shard of sessions at a time.
+     */
+    public McpServerConfig sessionSweepInterval(Duration sessionSweepInterval) {
+        this.sessionSweepInterval = requirePositive("sessionSweepInterval", sessionSweepInterval);
+        return this;
+    }
+
+    public int sseReplayBufferBytes() {
+        return sseReplayBufferBytes;
+    }
+
+    /**
+     * Bytes of recent events each SSE session keeps for clients that reconnect
+     * with {@code Last-Event-ID}.
+     */
+    public McpServerConfig sseReplayBufferBytes(int sseReplayBufferBytes) {
+        this.sseReplayBufferBytes = requirePositive("sseReplayBufferBytes", sseReplayBufferBytes);
+        return this;
+    }
+
+    public long sseReplayMaxBytes() {
+        return sseReplayMaxBytes;
+    }
+
+    /**
+     * Bytes of replayable events kept across all sessions. Sessions that emit
+     * while it is used up give up their own oldest events first.
+     */
+    public McpServerConfig sseReplayMaxBytes(long sseReplayMaxBytes) {
+        if (sseReplayMaxBytes < 1) {
+            throw new IllegalArgumentException("sseReplayMaxBytes must be positive: " + sseReplayMaxBytes);
+        }
+        this.sseReplayMaxBytes = sseReplayMaxBytes;
+        return this;
+    }
+
+    public Duration sseReconnectGrace() {
+        return sseReconnectGrace;
+    }
+
+    /**
+     * How long a session outlives its dropped SSE connection, waiting for the
+     * client to reconnect with {@code Last-Event-ID}.
+     */
+    public McpServerConfig sseReconnectGrace(Duration sseReconnectGrace) {
+        this.sseReconnectGrace = requirePositive("sseReconnectGrace", sseReconnectGrace);
+        return this;
+    }
+
+    public int sseMaxQueuedEvents() {
+        return sseMaxQueuedEvents;
+    }
+
+    /**
+     * Events an SSE session may have queued for a client that is not keeping
+     * up before {@link #sseOverflowPolicy()} applies.
+     */
+    public McpServerConfig sseMaxQueuedEvents(int sseMaxQueuedEvents) {
+        this.sseMaxQueuedEvents = requirePositive("sseMaxQueuedEvents", sseMaxQueuedEvents);
+        return this;
+    }
+
+    public int sseMaxQueuedBytes() {
+        return sseMaxQueuedBytes;
+    }
+
+    /**
+     * Bytes an SSE session may have queued before {@link #sseOverflowPolicy()}
+     * applies.
+     */
+    public McpServerConfig sseMaxQueuedBytes(int sseMaxQueuedBytes) {
+        this.sseMaxQueuedBytes = requirePositive("sseMaxQueuedBytes", sseMaxQueuedBytes);
+        return this;
+    }
+
+    public SseOverflowPolicy sseOverflowPolicy() {
+        return sseOverflowPolicy;
+    }
+
+    public McpServerConfig sseOverflowPolicy(SseOverflowPolicy sseOverflowPolicy) {
+        this.sseOverflowPolicy = Objects.requireNonNull(sseOverflowPolicy, "sseOverflowPolicy");
+        return this;
+    }
+
+    public RateLimit sessionRateLimit() {
+        return sessionRateLimit;
+    }
+
+    /**
+     * Requests per second each session may send, shared by every method
+     * without a {@linkplain #methodRateLimit(String, double, int) limit of its own}.
+     * On {@code /message} a session is the SSE session, on {@code /mcp} the
+     * {@code Mcp-Session-Id} the client sends, or its address if it sends
+     * none, and on stdio the one client. Requests over it are answered at
+     * once with a rate-limit error.
+     */
+    public McpServerConfig sessionRateLimit(double permitsPerSecond, int burst) {
+        this.sessionRateLimit = new RateLimit(permitsPerSecond, burst);
+        return this;
+    }
+
+    /**
+     * The limit set for {@code method}, or {@code null} if it shares the
+     * {@linkplain #sessionRateLimit() session-wide} one.
+     */
+    public RateLimit methodRateLimit(String method) {
+        return methodRateLimits.get(method);
+    }
+
+    /**
+     * Gives {@code method} its own per-session rate limit, counted separately
+     * from the session-wide one.
+     */
+    public McpServerConfig methodRateLimit(String method, double permitsPerSecond, int burst) {
+        methodRateLimits.put(Objects.requireNonNull(method, "method"), new RateLimit(permitsPerSecond, burst));
+        return this;
+    }
+
+    public int maxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * Ceiling of the adaptive limit on requests handled at once across all
+     * sessions. The limit starts here, backs off when requests overrun their
+     * latency target and creeps back up while they meet it; requests over it
+     * are refused rather than queued.
+     */
+    public McpServerConfig maxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = requirePositive("maxConcurrentRequests", maxConcurrentRequests);
+        return this;
+    }
+
+    public Duration requestLatencyTarget() {
+        return requestLatencyTarget;
+    }
+
+    /**
+     * Latency above which a request counts as a sign of overload for methods
+     * without a target of their own. {@code tools/call} defaults to 10 seconds.
+     */
+    public McpServerConfig requestLatencyTarget(Duration requestLatencyTarget) {
+        this.requestLatencyTarget = requirePositive("requestLatencyTarget", requestLatencyTarget);
+        return this;
+    }
+
+    public Duration requestLatencyTarget(String method) {
+        return methodLatencyTargets.getOrDefault(method, requestLatencyTarget);
+    }
+
+    public McpServerConfig requestLatencyTarget(String method, Duration requestLatencyTarget) {
+        methodLatencyTargets.put(Objects.requireNonNull(method, "method"),
+                requirePositive("requestLatencyTarget", requestLatencyTarget));
+        return this;
+    }
+
+    public int maxConcurrentToolCalls() {
+        return maxConcurrentToolCalls;
+    }
+
+    /**
+     * Number of tool calls that may run at once across all tools. Calls beyond
+     * it are rejected immediately rather than queued.
+     */
+    public McpServerConfig maxConcurrentToolCalls(int maxConcurrentToolCalls) {
+        this.maxConcurrentToolCalls = requirePositive("maxConcurrentToolCalls", maxConcurrentToolCalls);
+        return this;
+    }
+
+    public int maxConcurrentCallsPerTool() {
+        return maxConcurrentCallsPerTool;
+    }
+
+    /**
+     * Number of calls to any single tool that may run at once.
+     */
+    public McpServerConfig maxConcurrentCallsPerTool(int maxConcurrentCallsPerTool) {
+        this.maxConcurrentCallsPerTool = requirePositive("maxConcurrentCallsPerTool", maxConcurrentCallsPerTool);
+        return this;
+    }
+
+    public Duration toolCallTimeout() {
+        return toolCallTimeout;
+    }
+
+    /**
+     * Deadline for a single tool call; the call is interrupted when it passes.
+     */
+    public McpServerConfig toolCallTimeout(Duration toolCallTimeout) {
+        this.toolCallTimeout = requirePositive("toolCallTimeout", toolCallTimeout);
+        return this;
+    }
+
+    public Duration streamUpgradeDelay() {
+        return streamUpgradeDelay;
+    }
+
+    /**
+     * How long a streamable HTTP POST waits for its call before upgrading the
+     * response to an event stream. Calls that finish sooner are answered with
+     * plain JSON; a progress notification upgrades the response right away.
+     */
+    public McpServerConfig streamUpgradeDelay(Duration streamUpgradeDelay) {
+        this.streamUpgradeDelay = requirePositive("streamUpgradeDelay", streamUpgradeDelay);
+        return this;
+    }
+
+    public int maxResourceReadBytes() {
+        return maxResourceReadBytes;
+    }
+
+    /**
+     * Largest range of a resource returned by one {@code resources/read};
+     * bigger resources are paged through with the {@code offset} param.
+     */
+    public McpServerConfig maxResourceReadBytes(int maxResourceReadBytes) {
+        this.maxResourceReadBytes = requirePositive("maxResourceReadBytes", maxResourceReadBytes);
+        return this;
+    }
+
+    public long resultCacheMaxBytes() {
+        return resultCacheMaxBytes;
+    }
+
+    /**
+     * Byte budget for cached tool results and resource reads. Only tools and
+     * resources registered with a cache TTL use it.
+     */
+    public McpServerConfig resultCacheMaxBytes(long resultCacheMaxBytes) {
+        if (resultCacheMaxBytes < 1) {
+            throw new IllegalArgumentException("resultCacheMaxBytes must be positive: " + resultCacheMaxBytes);
+        }
+        this.resultCacheMaxBytes = resultCacheMaxBytes;
+        return this;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * This process's name among the processes that share sessions, and the
+     * prefix of every session id it hands out. Letters, digits, {@code _} and
+     * {@code -}; a random id by default.
+     */
+    public McpServerConfig nodeId(String nodeId) {
+        if (!NODE_ID.matcher(nodeId).matches()) {
+            throw new IllegalArgumentException("Invalid node id: " + nodeId);
+        }
+        this.nodeId = nodeId;
+        return this;
+    }
+
+    public Path relayDirectory() {
+        return relayDirectory;
+    }
+
+    /**
+     * Directory through which server processes on the same host forward
+     * {@code /message} requests to the process that owns their session, so
+     * several of them can run behind one port or load balancer. Best placed
+     * on a tmpfs such as {@code /dev/shm}. Unset by default, which keeps
+     * every session local to its process.
+     */
+    public McpServerConfig relayDirectory(Path relayDirectory) {
+        this.relayDirectory = relayDirectory;
+        return this;
+    }
+
+    public int relayRingBytes() {
+        return relayRingBytes;
+    }
+
+    /**
+     * Size of each process's shared-memory inbox for forwarded messages.
+     * Requests and responses larger than half of it cannot be forwarded.
+     */
+    public McpServerConfig relayRingBytes(int relayRingBytes) {
+        this.relayRingBytes = requirePositive("relayRingBytes", relayRingBytes);
+        return this;
+    }
+
+    public Duration relayTimeout() {
+        return relayTimeout;
+    }
+
+    /**
+     * How long a forwarded request waits for the owning process to answer.
+     * Longer than {@link #toolCallTimeout()} so tool calls time out there first.
+     */
+    public McpServerConfig relayTimeout(Duration relayTimeout) {
+        this.relayTimeout = requirePositive("relayTimeout", relayTimeout);
+        return this;
+    }
+
+    private static Duration requirePositive(String name, Duration value) {
+        if (value.isNegative() || value.isZero()) {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+        return value;
+    }
+
+    private static int requirePositive(String name, int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+        return value;
+    }
+}
@@ -1,39 +1,204 @@
 package com.sampullara.mcp.server;
 
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
+/**
+ * Tracks live sessions. Sessions are spread over a fixed number of shards so
+ * the background sweeper can visit one shard per step instead of scanning
+ * every session at once; idle and over-age sessions are removed as they are
+ * found, and lookups also drop expired sessions eagerly. Only what the client
+ * does keeps a session from being idle: writes to its SSE stream succeed
+ * against a peer that has silently gone away. The sweeper also aborts SSE
+ * writes that have been blocked on a client for longer than the write
+ * timeout.
+ */
 public class McpSessionManager {
-    private final Map<String, McpSession> sessions = new ConcurrentHashMap<>();
+    private static final int SHARDS = 16;
+
+    @SuppressWarnings("unchecked")
+    private final Map<String, McpSession>[] shards = new Map[SHARDS];
+    private final AtomicInteger liveSessions = new AtomicInteger();
+    private final List<Consumer<McpSession>> removalListeners = new CopyOnWriteArrayList<>();
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final int maxSessions;
+    private final HashedTimerWheel timerWheel;
+    private final McpMetrics metrics;
+    private final int replayBufferBytes;
+    private final SseReplayBuffer.Budget replayBudget;
+    private final SseEmitter.Limits emitterLimits;
+    private final long writeTimeoutNanos;
+    private final String idPrefix;
+    private volatile HashedTimerWheel.Timeout sweep;
+    private volatile boolean closed;
+    private int nextShard;
 
     public record McpSession(
             String id,
             SseEmitter emitter,
-            long createdAt
-    ) {}
+            long createdAt,
+            AtomicLong lastActivity,
+            Map<String, TokenBucket> rateLimits
+    ) {
+        public McpSession(String id, SseEmitter emitter, long createdAt) {
+            this(id, emitter, createdAt, new AtomicLong(createdAt), new ConcurrentHashMap<>());
+        }
+
+        /**
+         * Records client activity. Called on every message, so it is a plain
+         * lock-free store rather than a read-modify-write.
+         */
+        public void touch() {
+            lastActivity.lazySet(System.currentTimeMillis());
+        }
+
+        /**
+         * The session's token bucket for {@code key}, created from
+         * {@code limit} the first time it is used.
+         */
+        public TokenBucket rateLimit(String key, McpServerConfig.RateLimit limit) {
+            TokenBucket bucket = rateLimits.get(key);
+            return bucket != null ? bucket
+                    : rateLimits.computeIfAbsent(key, _ -> new TokenBucket(limit.permitsPerSecond(), limit.burst()));
+        }
+    }
+
+    public McpSessionManager() {
+        this(new McpServerConfig(), null);
+    }
 
+    public McpSessionManager(McpServerConfig config, HashedTimerWheel timerWheel) {
+        this(config, timerWheel, new McpMetrics());
+    }
+
+    public McpSessionManager(McpServerConfig config, HashedTimerWheel timerWheel, McpMetrics metrics) {
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+        this.idleTimeoutMillis = config.sessionIdleTimeout().toMillis();
+        this.maxLifetimeMillis = config.sessionMaxLifetime().toMillis();
+        this.maxSessions = config.maxSessions();
+        this.timerWheel = timerWheel;
+        this.metrics = metrics;
+        this.replayBufferBytes = config.sseReplayBufferBytes();
+        this.replayBudget = new SseReplayBuffer.Budget(config.sseReplayMaxBytes());
+        this.emitterLimits = SseEmitter.Limits.of(config);
+        this.writeTimeoutNanos = config.writeTimeout().toNanos();
+        this.idPrefix = config.nodeId() + SessionRelay.NODE_SEPARATOR;
+        if (timerWheel != null) {
+            scheduleSweep(config.sessionSweepInterval().toMillis() / SHARDS);
+        }
+    }
+
+    /**
+     * Creates a new session, or returns {@code null} if the server is already
+     * at its {@link McpServerConfig#maxSessions()} limit.
+     */
     public McpSession createSession() {
-        String id = UUID.randomUUID().toString();
-        SseEmitter emitter = new SseEmitter();
+        if (liveSessions.incrementAndGet() > maxSessions) {
+            liveSessions.decrementAndGet();
+            return null;
+        }
+        // The node prefix lets other processes route this session's messages here
+        String id = idPrefix + UUID.randomUUID();
+        SseEmitter emitter = new SseEmitter(metrics, new SseReplayBuffer(id, replayBufferBytes, replayBudget),
+                emitterLimits);
         McpSession session = new McpSession(id, emitter, System.currentTimeMillis());
-        sessions.put(id, session);
+        shard(id).put(id, session);
+        metrics.sessionCreated();
         return session;
     }
 
     public McpSession getSession(String id) {
-        return sessions.get(id);
+        McpSession session = shard(id).get(id);
+        if (session != null && isExpired(session, System.currentTimeMillis())) {
+            removeSession(id);
+            return null;
+        }
+        return session;
     }
 
     public void removeSession(String id) {
-        McpSession session = sessions.remove(id);
+        McpSession session = shard(id).remove(id);
         if (session != null) {
+            liveSessions.decrementAndGet();
+            metrics.sessionRemoved();
             session.emitter().complete();
+            removalListeners.forEach(listener -> listener.accept(session));
         }
     }
 
+    /**
+     * Registers a callback that runs after a session is removed, whether it
+     * was closed by the client, evicted or shut down with the server.
+     */
+    public void addRemovalListener(Consumer<McpSession> listener) {
+        removalListeners.add(listener);
+    }
+
+    /**
+     * Bytes held by all sessions' replay buffers.
+     */
+    public long getReplayBytes() {
+        return replayBudget.used();
+    }
+
+    public int getSessionCount() {
+        return liveSessions.get();
+    }
+
     public void closeAllSessions() {
-        sessions.values().forEach(session -> session.emitter().complete());
-        sessions.clear();
+        closed = true;
+        HashedTimerWheel.Timeout timeout = sweep;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        for (Map<String, McpSession> shard : shards) {
+            shard.keySet().forEach(this::removeSession);
+        }
+    }
+
+    private Map<String, McpSession> shard(String id) {
+        return shards[(id.hashCode() & 0x7fffffff) % SHARDS];
+    }
+
+    private boolean isExpired(McpSession session, long now) {
+        return now - session.lastActivity().get() > idleTimeoutMillis
+                || now - session.createdAt() > maxLifetimeMillis;
+    }
+
+    private void scheduleSweep(long delayMillis) {
+        if (closed) {
+            return;
+        }
+        sweep = timerWheel.schedule(() -> {
+            // Closing emitters can block on the socket, so sweep off the wheel thread
+            Thread.ofVirtual().name("mcp-session-sweeper").start(() -> {
+                sweepShard(shards[nextShard]);
+                nextShard = (nextShard + 1) % SHARDS;
+                scheduleSweep(delayMillis);
+            });
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void sweepShard(Map<String, McpSession> shard) {
+        long now = System.currentTimeMillis();
+        long nowNanos = System.nanoTime();
+        for (McpSession session : shard.values()) {
+            if (isExpired(session, now)) {
+                removeSession(session.id());
+            } else {
+                // A client that stopped reading only holds up its own writer; cut it loose
+                session.emitter().abortIfStalled(nowNanos, writeTimeoutNanos);
+            }
+        }
     }
 }
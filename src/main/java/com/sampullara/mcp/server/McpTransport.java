@@ -0,0 +1,33 @@
+package com.sampullara.mcp.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * The HTTP server underneath {@link McpServer}. Handlers are written against
+ * {@link HttpHandler} and behave the same on every transport; a transport only
+ * decides how connections, threads and socket writes are managed.
+ */
+public interface McpTransport {
+
+    /**
+     * Routes requests whose path starts with {@code path} to {@code handler};
+     * the longest matching path wins.
+     */
+    void createContext(String path, HttpHandler handler);
+
+    void start() throws IOException;
+
+    void stop();
+
+    InetSocketAddress getAddress();
+
+    /**
+     * Whether a response may stay open after its handler returns. When it
+     * can, SSE streams are left to the transport instead of parking a thread
+     * per stream until the client goes away.
+     */
+    boolean supportsDetachedStreams();
+}
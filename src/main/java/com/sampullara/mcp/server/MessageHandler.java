@@ -1,36 +1,201 @@
 package com.sampullara.mcp.server;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sampullara.mcp.server.McpSessionManager.McpSession;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
 public class MessageHandler implements HttpHandler {
     private final McpSessionManager sessionManager;
     private final ObjectMapper objectMapper;
-    private final Map<String, Resource> resources = new HashMap<>();
-    private final Map<String, Tool> tools = new HashMap<>();
+    private final JsonRpcDecoder decoder;
+    private final McpServerConfig config;
+    private final ExecutorService executor;
+    private final ToolExecutor toolExecutor;
+    private final Registry<Resource> resources;
+    private final Registry<Tool> tools;
+    private final Map<String, ToolBinding> toolHandlers = new ConcurrentHashMap<>();
+    private final Map<String, ResourceBinding> resourceProviders = new ConcurrentHashMap<>();
+    private final ResultCache resultCache;
+    private final ResourceSubscriptions subscriptions;
+    private final McpMetrics metrics;
+    private final AdaptiveLimiter limiter;
+    private final ClientRateLimits clientRateLimits;
+    private volatile SessionRelay relay;
+
+    private static final Consumer<byte[]> NO_NOTIFICATIONS = _ -> {};
+    // Every method handleMessage implements
+    private static final Set<String> METHODS = Set.of("resources/list", "tools/list", "tools/call", "resources/read",
+            "resources/subscribe", "resources/unsubscribe", "notifications/cancelled");
+    private static final byte[] EMPTY_RESULT = {'{', '}'};
+
+    // A cache TTL of zero means results are never cached
+    private record ToolBinding(ToolHandler handler, long cacheTtlNanos, SchemaValidator validator) {}
+    private record ResourceBinding(ResourceProvider provider, long cacheTtlNanos) {}
 
     public record Resource(String uri, String name, String mimeType, String description) {}
     public record Tool(String name, String description, JsonNode inputSchema) {}
 
     public MessageHandler(McpSessionManager sessionManager, ObjectMapper objectMapper) {
+        this(sessionManager, objectMapper, new McpServerConfig(), Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public MessageHandler(McpSessionManager sessionManager, ObjectMapper objectMapper,
+                          McpServerConfig config, ExecutorService executor) {
+        this(sessionManager, objectMapper, config, executor, new McpMetrics());
+    }
+
+    public MessageHandler(McpSessionManager sessionManager, ObjectMapper objectMapper,
+                          McpServerConfig config, ExecutorService executor, McpMetrics metrics) {
         this.sessionManager = sessionManager;
         this.objectMapper = objectMapper;
+        this.decoder = new JsonRpcDecoder(objectMapper);
+        this.config = config;
+        this.executor = executor;
+        this.toolExecutor = new ToolExecutor(config, executor);
+        this.resultCache = new ResultCache(config.resultCacheMaxBytes());
+        this.metrics = metrics;
+        this.resources = new Registry<>(this::encodeResources, config.listPageSize());
+        this.tools = new Registry<>(this::encodeTools, config.listPageSize());
+        this.subscriptions = new ResourceSubscriptions(objectMapper);
+        this.limiter = new AdaptiveLimiter(config.maxConcurrentRequests());
+        this.clientRateLimits = new ClientRateLimits(config);
+        // Calls still running for a session whose stream has gone away are cancelled
+        sessionManager.addRemovalListener(session -> {
+            toolExecutor.cancelSession(session.id());
+            subscriptions.removeSession(session.id());
+        });
     }
 
     public void registerResource(Resource resource) {
-        resources.put(resource.uri(), resource);
+        resources.register(resource.uri(), resource);
+    }
+
+    /**
+     * Registers a resource together with the provider of its content so that
+     * it can be fetched through {@code resources/read}.
+     */
+    public void registerResource(Resource resource, ResourceProvider provider) {
+        registerResource(resource, provider, Duration.ZERO);
+    }
+
+    /**
+     * Registers a resource whose reads are cached for {@code cacheTtl}. Only
+     * ranges small enough to be worth keeping on the heap are cached.
+     */
+    public void registerResource(Resource resource, ResourceProvider provider, Duration cacheTtl) {
+        resourceProviders.put(resource.uri(), new ResourceBinding(provider, cacheTtl.toNanos()));
+        resources.register(resource.uri(), resource);
+        invalidateResource(resource.uri());
+    }
+
+    public void invalidateResource(String uri) {
+        resultCache.invalidate(resourceNamespace(uri));
     }
 
     public void registerTool(Tool tool) {
-        tools.put(tool.name(), tool);
+        tools.register(tool.name(), tool);
+    }
+
+    /**
+     * Registers a tool together with its implementation so that it can be
+     * invoked through {@code tools/call}.
+     */
+    public void registerTool(Tool tool, ToolHandler handler) {
+        registerTool(tool, handler, Duration.ZERO);
+    }
+
+    /**
+     * Registers a tool whose results are a pure function of its arguments.
+     * Successful results are cached for {@code cacheTtl}, keyed by the tool
+     * name and a canonical hash of the arguments.
+     *
+     * <p>The tool's input schema is compiled here, and every call's arguments
+     * are checked against it before the handler runs.
+     *
+     * @throws IllegalArgumentException if the input schema cannot be compiled
+     */
+    public void registerTool(Tool tool, ToolHandler handler, Duration cacheTtl) {
+        SchemaValidator validator = SchemaValidator.compile(tool.inputSchema());
+        // Install the handler first so the tool is never listed without one
+        toolHandlers.put(tool.name(), new ToolBinding(handler, cacheTtl.toNanos(), validator));
+        tools.register(tool.name(), tool);
+        invalidateTool(tool.name());
+    }
+
+    public void invalidateTool(String name) {
+        resultCache.invalidate(toolNamespace(name));
+    }
+
+    /**
+     * Tells every session subscribed to {@code uri} that the resource changed,
+     * after dropping its cached reads. Returns the number of notifications
+     * queued; sessions that already have one queued for it are skipped.
+     */
+    public int publishResourceUpdated(String uri) {
+        invalidateResource(uri);
+        return subscriptions.publish(uri);
+    }
+
+    public ResourceSubscriptions getSubscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * Forwards {@code /message} POSTs for sessions owned by other processes
+     * over {@code relay}. The relay is started by the caller, with
+     * {@link #handleRelayed} answering what other processes forward here.
+     */
+    public void setRelay(SessionRelay relay) {
+        this.relay = relay;
+    }
+
+    public AdaptiveLimiter getLimiter() {
+        return limiter;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    private static String toolNamespace(String name) {
+        return "tool:" + name;
+    }
+
+    private static String resourceNamespace(String uri) {
+        return "resource:" + uri;
     }
 
     // Add standard JSON-RPC error codes
@@ -40,29 +205,35 @@ public class MessageHandler implements HttpHandler {
         public static final int METHOD_NOT_FOUND = -32601;
         public static final int INVALID_PARAMS = -32602;
         public static final int INTERNAL_ERROR = -32603;
+        // Implementation-defined server errors
+        public static final int SERVER_BUSY = -32000;
+        public static final int REQUEST_TIMEOUT = -32001;
+        public static final int RESOURCE_NOT_FOUND = -32002;
+        public static final int RATE_LIMITED = -32003;
+        public static final int REQUEST_CANCELLED = -32800;
     }
 
-    private ObjectNode createJsonRpcResponse(String id, JsonNode result) {
-        ObjectNode response = objectMapper.createObjectNode();
-        response.put("jsonrpc", "2.0");
-        response.put("id", id);
-        response.set("result", result);
-        return response;
+    private JsonRpcResponse createJsonRpcResponse(String id, JsonNode result) {
+        try {
+            return JsonRpcResponse.ofResult(id, objectMapper.writeValueAsBytes(result));
+        } catch (IOException e) {
+            return createJsonRpcError(id, ErrorCode.INTERNAL_ERROR, "Internal error: " + e.getMessage(), null);
+        }
     }
 
-    private ObjectNode createJsonRpcError(String id, int code, String message, JsonNode data) {
-        ObjectNode response = objectMapper.createObjectNode();
-        response.put("jsonrpc", "2.0");
-        response.put("id", id);
-        
-        ObjectNode error = response.putObject("error");
+    private JsonRpcResponse createJsonRpcError(String id, int code, String message, JsonNode data) {
+        ObjectNode error = objectMapper.createObjectNode();
         error.put("code", code);
         error.put("message", message);
         if (data != null) {
             error.set("data", data);
         }
-        
-        return response;
+
+        try {
+            return JsonRpcResponse.ofError(id, objectMapper.writeValueAsBytes(error));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     @Override
@@ -72,86 +243,460 @@ public class MessageHandler implements HttpHandler {
             return;
         }
 
-        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-        JsonNode request;
-        
-        try {
-            request = objectMapper.readTree(body);
-        } catch (Exception e) {
+        // Decode the envelope straight off the request body; params stay as raw tokens
+        JsonRpcDecoder.Decoded decoded;
+        byte[] body = null;
+        long parseStart = System.nanoTime();
+        try (InputStream in = exchange.getRequestBody()) {
+            if (relay == null) {
+                decoded = decoder.decode(in, config.maxBatchSize());
+            } else {
+                // Kept whole in case it has to be forwarded to another process
+                body = in.readAllBytes();
+                decoded = decoder.decode(body, 0, body.length, config.maxBatchSize());
+            }
+            metrics.parseLatency().recordSince(parseStart);
+        } catch (JsonProcessingException e) {
             sendError(exchange, ErrorCode.PARSE_ERROR, "Invalid JSON", null);
             return;
         }
 
-        // Validate JSON-RPC 2.0 request format
-        if (!isValidJsonRpcRequest(request)) {
-            sendError(exchange, ErrorCode.INVALID_REQUEST, "Invalid JSON-RPC 2.0 request", null);
+        String owner = relay == null ? null : foreignOwner(decoded.requests());
+        if (owner != null) {
+            forward(exchange, owner, body, decoded);
             return;
         }
+        process(decoded, new Replies() {
+            @Override
+            public void accepted() throws IOException {
+                sendAccepted(exchange);
+            }
+
+            @Override
+            public void response(JsonRpcResponse response) throws IOException {
+                sendResponse(exchange, response);
+            }
+
+            @Override
+            public void batch(List<JsonRpcResponse> responses) throws IOException {
+                sendBatchResponse(exchange, responses);
+            }
+        });
+    }
+
+    /**
+     * Answers a request body forwarded by another process because its
+     * session lives here. Returns the encoded response, or {@code null} for
+     * {@code 202 Accepted}.
+     */
+    public byte[] handleRelayed(byte[] body) throws IOException {
+        JsonRpcDecoder.Decoded decoded;
+        try {
+            decoded = decoder.decode(body, 0, body.length, config.maxBatchSize());
+        } catch (JsonProcessingException e) {
+            return createJsonRpcError(null, ErrorCode.PARSE_ERROR, "Invalid JSON", null).toByteArray();
+        }
+        byte[][] reply = new byte[1][];
+        process(decoded, new Replies() {
+            @Override
+            public void accepted() {
+            }
 
+            @Override
+            public void response(JsonRpcResponse response) {
+                reply[0] = response.toByteArray();
+            }
 
+            @Override
+            public void batch(List<JsonRpcResponse> responses) throws IOException {
+                reply[0] = encodeBatch(responses).toByteArray();
+            }
+        });
+        return reply[0];
+    }
 
+    /**
+     * Where the outcome of a decoded POST goes: back over HTTP, or back to
+     * the process that forwarded it.
+     */
+    private interface Replies {
+        void accepted() throws IOException;
 
-        // Get session ID from header
-        String sessionId = request.has("sessionId") ? request.get("sessionId").asText() : null;
+        void response(JsonRpcResponse response) throws IOException;
 
-        if (sessionId == null) {
-            sendError(exchange, ErrorCode.INVALID_REQUEST, "Missing session ID", null);
+        void batch(List<JsonRpcResponse> responses) throws IOException;
+    }
+
+    private void process(JsonRpcDecoder.Decoded decoded, Replies replies) throws IOException {
+        List<JsonRpcRequest> requests = decoded.requests();
+        if (!decoded.batch()) {
+            JsonRpcRequest request = requests.getFirst();
+            McpSession session = lookupSession(request.sessionId());
+            if (config.asyncResponses() && session != null) {
+                replies.accepted();
+                executor.execute(() -> deliver(session, dispatch(request, session)));
+                return;
+            }
+            JsonRpcResponse response = dispatch(request, session);
+            if (response == null) {
+                replies.accepted();
+            } else {
+                replies.response(response);
+            }
             return;
         }
 
-        var session = sessionManager.getSession(sessionId);
-        if (session == null) {
-            sendError(exchange, ErrorCode.INVALID_REQUEST, "Invalid session ID", null);
+        if (requests.isEmpty()) {
+            replies.response(createJsonRpcError(null, ErrorCode.INVALID_REQUEST, "Empty batch", null));
+            return;
+        }
+        if (requests.size() > config.maxBatchSize()) {
+            replies.response(createJsonRpcError(null, ErrorCode.INVALID_REQUEST,
+                    "Batch exceeds " + config.maxBatchSize() + " requests", null));
             return;
         }
 
-        // Handle message based on method
-        JsonNode response = handleMessage(request);
+        // Looked up from the batch tasks, so it must tolerate concurrent access
+        Map<String, McpSession> sessions = new ConcurrentHashMap<>();
+        if (config.asyncResponses() && allHaveSessions(requests, sessions)) {
+            replies.accepted();
+            // Each response goes out as soon as it is ready rather than waiting for the whole batch
+            executor.execute(() -> {
+                try {
+                    dispatchBatch(requests, request -> {
+                        McpSession session = sessions.get(request.sessionId());
+                        deliver(session, dispatch(request, session));
+                        return null;
+                    });
+                } catch (IOException e) {
+                    System.err.println("Error dispatching batch: " + e.getMessage());
+                }
+            });
+            return;
+        }
+        List<JsonRpcResponse> responses = dispatchBatch(requests, request -> dispatch(request,
+                request.sessionId() == null ? null : sessions.computeIfAbsent(request.sessionId(), sessionManager::getSession)));
+        if (responses.isEmpty()) {
+            replies.accepted();
+        } else {
+            replies.batch(responses);
+        }
+    }
 
-        // Send response
-        if (response.has("error")) {
-            sendError(exchange, response.get("error").get("code").asInt(),
-                    response.get("error").get("message").asText(),
-                    response.get("error").get("data"));
+    /**
+     * The node every request of a POST has to be forwarded to, or
+     * {@code null} if any of them is for a session here or has no owner
+     * elsewhere, in which case the POST is handled here as usual.
+     */
+    private String foreignOwner(List<JsonRpcRequest> requests) {
+        String owner = null;
+        for (JsonRpcRequest request : requests) {
+            String sessionId = request.sessionId();
+            if (sessionId == null || sessionManager.getSession(sessionId) != null) {
+                return null;
+            }
+            String node = relay.ownerOf(sessionId);
+            if (node == null || node.equals(relay.nodeId()) || (owner != null && !owner.equals(node))) {
+                return null;
+            }
+            owner = node;
+        }
+        return owner;
+    }
+
+    /**
+     * Passes a POST on to the process that owns its session and answers with
+     * that process's reply.
+     */
+    private void forward(HttpExchange exchange, String owner, byte[] body, JsonRpcDecoder.Decoded decoded)
+            throws IOException {
+        metrics.requestRelayed();
+        // Errors for a single request keep its id so the client can match them up
+        String id = decoded.batch() ? null : decoded.requests().getFirst().id();
+        CompletableFuture<byte[]> reply = relay.forward(owner, body);
+        byte[] response;
+        try {
+            response = reply.get(config.relayTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SessionRelay.UnknownNodeException) {
+                sendResponse(exchange, createJsonRpcError(id, ErrorCode.INVALID_REQUEST, "Invalid session ID", null));
+                return;
+            }
+            metrics.relayFailed();
+            sendResponse(exchange, createJsonRpcError(id, ErrorCode.SERVER_BUSY,
+                    "Could not reach the session's server: " + e.getCause().getMessage(), null));
+            return;
+        } catch (TimeoutException e) {
+            reply.cancel(false);
+            metrics.relayFailed();
+            sendResponse(exchange, createJsonRpcError(id, ErrorCode.REQUEST_TIMEOUT,
+                    "The session's server did not answer in time", null));
+            return;
+        } catch (InterruptedException e) {
+            reply.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while forwarding request");
+        }
+        if (response == null) {
+            sendAccepted(exchange);
+            return;
+        }
+        ContentCoding coding = ContentCoding.negotiate(exchange);
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (coding != null && response.length >= config.compressionMinBytes()) {
+            sendBytes(exchange, coding.encode(response), coding);
         } else {
-            sendResponse(exchange, request.get("id").asText(), response.get("result"));
+            sendBytes(exchange, response, null);
+        }
+    }
+
+    private McpSession lookupSession(String sessionId) {
+        return sessionId == null ? null : sessionManager.getSession(sessionId);
+    }
+
+    /**
+     * Looks up the session of every request in a batch. Returns {@code false}
+     * if any has none, in which case the batch is answered inline so its
+     * errors have somewhere to go.
+     */
+    private boolean allHaveSessions(List<JsonRpcRequest> requests, Map<String, McpSession> sessions) {
+        for (JsonRpcRequest request : requests) {
+            if (request.sessionId() == null
+                    || sessions.computeIfAbsent(request.sessionId(), sessionManager::getSession) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends a response that was accepted with a 202 as a {@code message}
+     * event on its session's stream. It is numbered like any other event, so
+     * a client that reconnects in the meantime still receives it.
+     */
+    private void deliver(McpSession session, JsonRpcResponse response) {
+        if (response == null) {
+            return;
+        }
+        try {
+            try {
+                session.emitter().emit("message", response);
+            } catch (UncheckedIOException e) {
+                // A streamed result failed part way; send an error in its place
+                session.emitter().emit("message", createJsonRpcError(response.id(), ErrorCode.INTERNAL_ERROR,
+                        "Internal error: " + e.getCause().getMessage(), null));
+            }
+        } catch (IOException e) {
+            System.err.println("Error delivering response over SSE: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Validates a single call and runs it. Returns {@code null} for
+     * notifications, which never get a response.
+     */
+    private JsonRpcResponse dispatch(JsonRpcRequest request, McpSession session) {
+        // Validate JSON-RPC 2.0 request format
+        if (!request.isValid()) {
+            return createJsonRpcError(request.id(), ErrorCode.INVALID_REQUEST, "Invalid JSON-RPC 2.0 request", null);
+        }
+
+        if (request.sessionId() == null) {
+            return createJsonRpcError(request.id(), ErrorCode.INVALID_REQUEST, "Missing session ID", null);
+        }
+
+        if (session == null) {
+            return createJsonRpcError(request.id(), ErrorCode.INVALID_REQUEST, "Invalid session ID", null);
+        }
+        session.touch();
+        if (!request.isNotification()) {
+            long retryNanos = takeToken(request.method(), session::rateLimit);
+            if (retryNanos > 0) {
+                return rateLimited(request, retryNanos);
+            }
+        }
+        return execute(request, NO_NOTIFICATIONS);
+    }
+
+    /**
+     * Takes a token from the client's bucket for {@code method}, or from its
+     * session-wide bucket if the method has no limit of its own.
+     *
+     * @param buckets the client's bucket for a key, created from a limit
+     * @return 0 if the request may go ahead, otherwise nanoseconds until it could
+     */
+    private long takeToken(String method, BiFunction<String, McpServerConfig.RateLimit, TokenBucket> buckets) {
+        McpServerConfig.RateLimit methodLimit = config.methodRateLimit(method);
+        TokenBucket bucket = methodLimit == null
+                ? buckets.apply("", config.sessionRateLimit())
+                : buckets.apply(method, methodLimit);
+        return bucket.tryAcquire(System.nanoTime());
+    }
+
+    private JsonRpcResponse rateLimited(JsonRpcRequest request, long retryNanos) {
+        metrics.requestRateLimited();
+        ObjectNode data = objectMapper.createObjectNode();
+        data.put("retryAfterMs", Math.max(1, TimeUnit.NANOSECONDS.toMillis(retryNanos)));
+        return createJsonRpcError(request.id(), ErrorCode.RATE_LIMITED, "Rate limit exceeded", data);
+    }
+
+    /**
+     * Runs a call for a transport that identifies its client itself, such as
+     * stdio, where there is no HTTP session to look up. The request's session
+     * id scopes tool cancellation. Returns {@code null} for notifications.
+     * No per-session rate limit applies; see {@link #call(JsonRpcRequest, String, Consumer)}.
+     */
+    public JsonRpcResponse call(JsonRpcRequest request) {
+        return call(request, null, NO_NOTIFICATIONS);
+    }
+
+    /**
+     * Runs a call whose transport can deliver notifications, such as tool
+     * progress, while the call is still running. Each notification is passed
+     * to {@code notifications} as an encoded JSON-RPC message.
+     */
+    public JsonRpcResponse call(JsonRpcRequest request, Consumer<byte[]> notifications) {
+        return call(request, null, notifications);
+    }
+
+    /**
+     * Runs a call under the per-session rate limits of {@code client}, the
+     * key the transport identifies the caller by, or under none if it is
+     * {@code null}.
+     */
+    public JsonRpcResponse call(JsonRpcRequest request, String client, Consumer<byte[]> notifications) {
+        if (!request.isValid()) {
+            return createJsonRpcError(request.id(), ErrorCode.INVALID_REQUEST, "Invalid JSON-RPC 2.0 request", null);
+        }
+        if (!request.isNotification() && client != null) {
+            long retryNanos = takeToken(request.method(),
+                    (key, limit) -> clientRateLimits.bucket(client, key, limit));
+            if (retryNanos > 0) {
+                return rateLimited(request, retryNanos);
+            }
         }
+        return execute(request, notifications);
     }
 
-    private JsonNode handleMessage(JsonNode message) {
-        String method = message.get("method").asText();
-        String id = message.get("id").asText();
+    /**
+     * Admits a valid call that has passed its rate limits and runs it.
+     */
+    private JsonRpcResponse execute(JsonRpcRequest request, Consumer<byte[]> notifications) {
+        // Notifications are cheap and may be cancelling work, so they skip admission
+        boolean admitted = !request.isNotification();
+        if (admitted && !limiter.tryAcquire()) {
+            metrics.requestShed();
+            return createJsonRpcError(request.id(), ErrorCode.SERVER_BUSY, "Server is overloaded", null);
+        }
+
+        // Handle message based on method
+        long start = System.nanoTime();
+        JsonRpcResponse response;
+        try {
+            response = handleMessage(request, notifications);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            // Method names come from clients, so only known ones get a series of their own
+            metrics.dispatchLatency(METHODS.contains(request.method()) ? request.method() : null).record(elapsed);
+            if (admitted) {
+                limiter.release(elapsed, elapsed > config.requestLatencyTarget(request.method()).toNanos());
+            }
+        }
+        return request.isNotification() ? null : response;
+    }
+
+    /**
+     * Runs a batch like {@link #call(JsonRpcRequest)} runs a single request,
+     * with the same concurrency limit as batches posted to {@code /message}.
+     */
+    public List<JsonRpcResponse> callBatch(List<JsonRpcRequest> requests) throws IOException {
+        return callBatch(requests, null);
+    }
+
+    /**
+     * Runs a batch under the rate limits of {@code client}, like {@link
+     * #call(JsonRpcRequest, String, Consumer)}.
+     */
+    public List<JsonRpcResponse> callBatch(List<JsonRpcRequest> requests, String client) throws IOException {
+        return dispatchBatch(requests, request -> call(request, client, NO_NOTIFICATIONS));
+    }
+
+    /**
+     * Cancels an in-flight tool call, e.g. because the stream its result was
+     * going to be written to has gone away.
+     */
+    public boolean cancelCall(String sessionId, String requestId) {
+        return toolExecutor.cancel(sessionId, requestId);
+    }
+
+    /**
+     * Encodes a JSON-RPC error that is not tied to a decoded request, e.g.
+     * for input that could not be parsed at all.
+     */
+    public JsonRpcResponse error(String id, int code, String message) {
+        return createJsonRpcError(id, code, message, null);
+    }
+
+    /**
+     * Runs the calls of a batch concurrently on the server executor, with at
+     * most {@link McpServerConfig#maxBatchConcurrency()} in flight at once.
+     * Responses keep the order of the batch and notifications are dropped.
+     */
+    private List<JsonRpcResponse> dispatchBatch(List<JsonRpcRequest> requests,
+                                                Function<JsonRpcRequest, JsonRpcResponse> dispatcher) throws IOException {
+        JsonRpcResponse[] responses = new JsonRpcResponse[requests.size()];
+        Semaphore permits = new Semaphore(config.maxBatchConcurrency());
+        List<Future<?>> futures = new ArrayList<>(requests.size());
+        try {
+            for (int i = 0; i < requests.size(); i++) {
+                JsonRpcRequest request = requests.get(i);
+                int index = i;
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        responses[index] = dispatcher.apply(request);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while dispatching batch");
+        } catch (ExecutionException e) {
+            throw new IOException("Batch call failed", e.getCause());
+        }
+
+        List<JsonRpcResponse> result = new ArrayList<>(responses.length);
+        for (JsonRpcResponse response : responses) {
+            if (response != null) {
+                result.add(response);
+            }
+        }
+        return result;
+    }
+
+    private JsonRpcResponse handleMessage(JsonRpcRequest message, Consumer<byte[]> notifications) {
+        String method = message.method();
+        String id = message.id();
 
         try {
             return switch (method) {
-                case "resources/list" -> {
-                    ObjectNode result = objectMapper.createObjectNode();
-                    var resourceArray = objectMapper.createArrayNode();
-                    resources.values().forEach(resource -> {
-                        var resourceNode = objectMapper.createObjectNode();
-                        resourceNode.put("uri", resource.uri());
-                        resourceNode.put("name", resource.name());
-                        resourceNode.put("mimeType", resource.mimeType());
-                        if (resource.description() != null) {
-                            resourceNode.put("description", resource.description());
-                        }
-                        resourceArray.add(resourceNode);
-                    });
-                    result.set("resources", resourceArray);
-                    yield createJsonRpcResponse(id, result);
-                }
-                case "tools/list" -> {
-                    ObjectNode result = objectMapper.createObjectNode();
-                    var toolsArray = objectMapper.createArrayNode();
-                    tools.values().forEach(tool -> {
-                        var toolNode = objectMapper.createObjectNode();
-                        toolNode.put("name", tool.name());
-                        toolNode.put("description", tool.description());
-                        toolNode.set("inputSchema", tool.inputSchema());
-                        toolsArray.add(toolNode);
-                    });
-                    result.set("tools", toolsArray);
-                    yield createJsonRpcResponse(id, result);
+                case "resources/list" -> listPage(message, resources);
+                case "tools/list" -> listPage(message, tools);
+                case "tools/call" -> callTool(message, notifications);
+                case "resources/read" -> readResource(message);
+                case "resources/subscribe", "resources/unsubscribe" -> subscribe(message);
+                case "notifications/cancelled" -> {
+                    JsonNode requestId = message.params(objectMapper).path("requestId");
+                    if (!requestId.isMissingNode() && message.sessionId() != null) {
+                        toolExecutor.cancel(message.sessionId(), requestId.asText());
+                    }
+                    yield null;
                 }
                 default -> createJsonRpcError(id, ErrorCode.METHOD_NOT_FOUND, "Method not found", null);
             };
@@ -160,29 +705,314 @@ public class MessageHandler implements HttpHandler {
         }
     }
 
-    private boolean isValidJsonRpcRequest(JsonNode request) {
-        return request.isObject() &&
-               request.has("jsonrpc") &&
-               request.get("jsonrpc").asText().equals("2.0") &&
-               request.has("method") &&
-               request.has("id");
+    /**
+     * Answers a list call with the page after its {@code cursor} param. The
+     * first page is encoded once per registry version; only the id is spliced in.
+     */
+    private JsonRpcResponse listPage(JsonRpcRequest message, Registry<?> registry) throws IOException {
+        JsonNode cursor = message.hasParams() ? message.params(objectMapper).get("cursor") : null;
+        if (cursor == null || cursor.isNull()) {
+            return JsonRpcResponse.ofResult(message.id(), registry.page(null));
+        }
+        try {
+            return JsonRpcResponse.ofResult(message.id(), registry.page(cursor.asText()));
+        } catch (IllegalArgumentException e) {
+            return createJsonRpcError(message.id(), ErrorCode.INVALID_PARAMS, "Invalid cursor", null);
+        }
+    }
+
+    /**
+     * Handles {@code resources/subscribe} and {@code resources/unsubscribe}.
+     * Updates are pushed over the session's SSE stream, so only sessions that
+     * have one can subscribe.
+     */
+    private JsonRpcResponse subscribe(JsonRpcRequest message) throws IOException {
+        String uri = message.params(objectMapper).path("uri").asText(null);
+        if (uri == null) {
+            return createJsonRpcError(message.id(), ErrorCode.INVALID_PARAMS, "Missing resource URI", null);
+        }
+        if (message.method().equals("resources/unsubscribe")) {
+            subscriptions.unsubscribe(message.sessionId(), uri);
+            return JsonRpcResponse.ofResult(message.id(), EMPTY_RESULT);
+        }
+        if (resources.get(uri) == null) {
+            return createJsonRpcError(message.id(), ErrorCode.RESOURCE_NOT_FOUND, "Resource not found", null);
+        }
+        McpSession session = lookupSession(message.sessionId());
+        if (session == null) {
+            return createJsonRpcError(message.id(), ErrorCode.INVALID_REQUEST,
+                    "Subscriptions require an SSE session", null);
+        }
+        subscriptions.subscribe(session.id(), session.emitter(), uri);
+        return JsonRpcResponse.ofResult(message.id(), EMPTY_RESULT);
+    }
+
+    private JsonRpcResponse callTool(JsonRpcRequest message, Consumer<byte[]> notifications) throws IOException {
+        String id = message.id();
+        JsonNode params = message.params(objectMapper);
+        String name = params.path("name").asText(null);
+        ToolBinding binding = name == null ? null : toolHandlers.get(name);
+        if (binding == null) {
+            return createJsonRpcError(id, ErrorCode.INVALID_PARAMS, "Unknown tool: " + name, null);
+        }
+        JsonNode arguments = params.has("arguments") ? params.get("arguments") : objectMapper.createObjectNode();
+        SchemaValidator.Violation violation = binding.validator().validate(arguments);
+        if (violation != null) {
+            ObjectNode data = objectMapper.createObjectNode();
+            data.put("path", violation.path());
+            return createJsonRpcError(id, ErrorCode.INVALID_PARAMS, "Invalid arguments: " + violation, data);
+        }
+
+        String cacheKey = null;
+        if (binding.cacheTtlNanos() > 0) {
+            cacheKey = ResultCache.key(toolNamespace(name), arguments);
+            byte[] cached = resultCache.get(cacheKey);
+            if (cached != null) {
+                return JsonRpcResponse.ofResult(id, cached);
+            }
+        }
+
+        try {
+            JsonNode progressToken = params.path("_meta").get("progressToken");
+            ToolProgress progress = progressToken == null || notifications == NO_NOTIFICATIONS ? ToolProgress.NONE
+                    : (done, total, text) -> notifications.accept(encodeProgress(progressToken, done, total, text));
+            JsonNode result = toolExecutor.execute(message.sessionId(), id, name, binding.handler(), arguments, progress);
+            byte[] encoded = encode(result);
+            if (cacheKey != null && (result == null || !result.path("isError").asBoolean(false))) {
+                resultCache.put(toolNamespace(name), cacheKey, encoded, binding.cacheTtlNanos());
+            }
+            return JsonRpcResponse.ofResult(id, encoded);
+        } catch (RejectedExecutionException e) {
+            return createJsonRpcError(id, ErrorCode.SERVER_BUSY, e.getMessage(), null);
+        } catch (TimeoutException e) {
+            return createJsonRpcError(id, ErrorCode.REQUEST_TIMEOUT, "Tool call timed out", null);
+        } catch (CancellationException e) {
+            return createJsonRpcError(id, ErrorCode.REQUEST_CANCELLED, "Tool call cancelled", null);
+        } catch (ToolExecutor.DuplicateRequestException e) {
+            return createJsonRpcError(id, ErrorCode.INVALID_REQUEST, e.getMessage(), null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return createJsonRpcError(id, ErrorCode.REQUEST_CANCELLED, "Tool call cancelled", null);
+        } catch (ExecutionException e) {
+            // Tool failures are reported in the result so the model can see them
+            ObjectNode result = objectMapper.createObjectNode();
+            result.putArray("content").addObject()
+                    .put("type", "text")
+                    .put("text", String.valueOf(e.getCause().getMessage()));
+            result.put("isError", true);
+            return createJsonRpcResponse(id, result);
+        }
+    }
+
+    /**
+     * Streams a resource range into the response. Text is escaped and blobs are
+     * base64-encoded as they are written, straight from the provider's buffer,
+     * so the content never has to fit in a heap array. Optional {@code offset}
+     * and {@code length} params select a range; the {@code _meta} member tells
+     * the client where the range ended and how large the resource is.
+     */
+    private JsonRpcResponse readResource(JsonRpcRequest message) throws IOException {
+        String id = message.id();
+        JsonNode params = message.params(objectMapper);
+        String uri = params.path("uri").asText(null);
+        Resource resource = uri == null ? null : resources.get(uri);
+        ResourceBinding binding = uri == null ? null : resourceProviders.get(uri);
+        if (resource == null || binding == null) {
+            return createJsonRpcError(id, ErrorCode.RESOURCE_NOT_FOUND, "Resource not found: " + uri, null);
+        }
+
+        long offset = params.path("offset").asLong(0);
+        long length = params.path("length").asLong(Long.MAX_VALUE);
+        if (offset < 0 || length < 0) {
+            return createJsonRpcError(id, ErrorCode.INVALID_PARAMS,
+                    (offset < 0 ? "offset" : "length") + " must not be negative", null);
+        }
+        int maxLength = (int) Math.min(length, config.maxResourceReadBytes());
+        String cacheKey = null;
+        if (binding.cacheTtlNanos() > 0) {
+            cacheKey = resourceNamespace(uri) + '#' + offset + ':' + maxLength;
+            byte[] cached = resultCache.get(cacheKey);
+            if (cached != null) {
+                return JsonRpcResponse.ofResult(id, cached);
+            }
+        }
+
+        ResourceContents contents;
+        try {
+            contents = binding.provider().read(offset, maxLength);
+        } catch (IllegalArgumentException e) {
+            return createJsonRpcError(id, ErrorCode.INVALID_PARAMS, e.getMessage(), null);
+        }
+
+        JsonRpcResponse.MemberWriter writer = resourceWriter(resource, contents);
+        // Small ranges of cacheable resources are materialized once and served from the cache
+        if (cacheKey != null && contents.length() <= config.resultCacheMaxBytes() / 64) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(contents.length() + 256);
+            writer.writeTo(encoded);
+            byte[] result = encoded.toByteArray();
+            resultCache.put(resourceNamespace(uri), cacheKey, result, binding.cacheTtlNanos());
+            return JsonRpcResponse.ofResult(id, result);
+        }
+        return JsonRpcResponse.ofStreamedResult(id, writer);
+    }
+
+    private JsonRpcResponse.MemberWriter resourceWriter(Resource resource, ResourceContents contents) {
+        return out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("contents");
+                generator.writeStartObject();
+                generator.writeStringField("uri", resource.uri());
+                generator.writeStringField("mimeType", resource.mimeType());
+                if (isTextMimeType(resource.mimeType())) {
+                    generator.writeFieldName("text");
+                    generator.writeString(new InputStreamReader(contents.newInputStream(), StandardCharsets.UTF_8), -1);
+                } else {
+                    generator.writeFieldName("blob");
+                    generator.writeBinary(Base64Variants.MIME_NO_LINEFEEDS, contents.newInputStream(), contents.length());
+                }
+                generator.writeEndObject();
+                generator.writeEndArray();
+                generator.writeObjectFieldStart("_meta");
+                generator.writeNumberField("offset", contents.offset());
+                generator.writeNumberField("length", contents.length());
+                generator.writeNumberField("totalLength", contents.totalLength());
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+        };
+    }
+
+    private static boolean isTextMimeType(String mimeType) {
+        return mimeType != null && (mimeType.startsWith("text/")
+                || mimeType.endsWith("json")
+                || mimeType.endsWith("xml")
+                || mimeType.endsWith("yaml")
+                || mimeType.equals("application/javascript"));
+    }
+
+    private byte[] encodeResources(List<Resource> entries, String nextCursor) {
+        ObjectNode result = objectMapper.createObjectNode();
+        var resourceArray = result.putArray("resources");
+        entries.forEach(resource -> {
+            var resourceNode = resourceArray.addObject();
+            resourceNode.put("uri", resource.uri());
+            resourceNode.put("name", resource.name());
+            resourceNode.put("mimeType", resource.mimeType());
+            if (resource.description() != null) {
+                resourceNode.put("description", resource.description());
+            }
+        });
+        if (nextCursor != null) {
+            result.put("nextCursor", nextCursor);
+        }
+        return encode(result);
+    }
+
+    private byte[] encodeTools(List<Tool> entries, String nextCursor) {
+        ObjectNode result = objectMapper.createObjectNode();
+        var toolsArray = result.putArray("tools");
+        entries.forEach(tool -> {
+            var toolNode = toolsArray.addObject();
+            toolNode.put("name", tool.name());
+            toolNode.put("description", tool.description());
+            toolNode.set("inputSchema", tool.inputSchema());
+        });
+        if (nextCursor != null) {
+            result.put("nextCursor", nextCursor);
+        }
+        return encode(result);
+    }
+
+    private byte[] encodeProgress(JsonNode progressToken, double progress, Double total, String message) {
+        ObjectNode notification = objectMapper.createObjectNode();
+        notification.put("jsonrpc", "2.0");
+        notification.put("method", "notifications/progress");
+        ObjectNode params = notification.putObject("params");
+        params.set("progressToken", progressToken);
+        params.put("progress", progress);
+        if (total != null) {
+            params.put("total", total);
+        }
+        if (message != null) {
+            params.put("message", message);
+        }
+        return encode(notification);
+    }
+
+    private byte[] encode(JsonNode node) {
+        try {
+            return objectMapper.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     private void sendError(HttpExchange exchange, int code, String message, JsonNode data) throws IOException {
-        ObjectNode errorResponse = createJsonRpcError("null", code, message, data);  // Changed null to "null"
-        byte[] responseBytes = objectMapper.writeValueAsBytes(errorResponse);
-        
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(200, responseBytes.length);
-        exchange.getResponseBody().write(responseBytes);
-        exchange.getResponseBody().close();
+        sendResponse(exchange, createJsonRpcError(null, code, message, data));
+    }
+
+    private void sendResponse(HttpExchange exchange, JsonRpcResponse response) throws IOException {
+        long start = System.nanoTime();
+        ContentCoding coding = ContentCoding.negotiate(exchange);
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (response instanceof JsonRpcResponse.Encoded encoded) {
+            if (coding != null && encoded.member().length >= config.compressionMinBytes()) {
+                sendBytes(exchange, coding.encode(response), coding);
+            } else {
+                sendBytes(exchange, response.toByteArray(), null);
+            }
+        } else {
+            // Length is unknown up front, so stream it chunked
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            if (coding != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", coding.token());
+            }
+            exchange.sendResponseHeaders(200, 0);
+            try (var out = coding == null ? exchange.getResponseBody() : coding.wrap(exchange.getResponseBody())) {
+                response.writeTo(out);
+            }
+        }
+        metrics.serializeLatency().recordSince(start);
+    }
+
+    private void sendBatchResponse(HttpExchange exchange, List<JsonRpcResponse> responses) throws IOException {
+        long start = System.nanoTime();
+        ByteArrayOutputStream out = encodeBatch(responses);
+        ContentCoding coding = ContentCoding.negotiate(exchange);
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (coding != null && out.size() >= config.compressionMinBytes()) {
+            sendBytes(exchange, coding.encode(out.toByteArray()), coding);
+        } else {
+            sendBytes(exchange, out.toByteArray(), null);
+        }
+        metrics.serializeLatency().recordSince(start);
     }
 
-    private void sendResponse(HttpExchange exchange, String id, JsonNode result) throws IOException {
-        ObjectNode response = createJsonRpcResponse(id, result);
-        byte[] responseBytes = objectMapper.writeValueAsBytes(response);
-        
+    private static ByteArrayOutputStream encodeBatch(List<JsonRpcResponse> responses) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('[');
+        for (int i = 0; i < responses.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            responses.get(i).writeTo(out);
+        }
+        out.write(']');
+        return out;
+    }
+
+    private void sendAccepted(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(202, -1);
+        exchange.close();
+    }
+
+    private void sendBytes(HttpExchange exchange, byte[] responseBytes, ContentCoding coding) throws IOException {
         exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (coding != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", coding.token());
+        }
         exchange.sendResponseHeaders(200, responseBytes.length);
         exchange.getResponseBody().write(responseBytes);
         exchange.getResponseBody().close();
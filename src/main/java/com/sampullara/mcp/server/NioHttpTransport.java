@@ -0,0 +1,1097 @@
+package com.sampullara.mcp.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpPrincipal;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Selector-based HTTP/1.1 transport. One platform thread accepts and reads
+ * every connection; complete requests are handed to the server executor as
+ * ordinary {@link HttpExchange}s. Responses are copied into pooled direct
+ * buffers and written with gathering writes, straight from the handler's
+ * thread when the socket can take them and from the selector otherwise, so an
+ * idle SSE stream costs a registered key rather than a parked thread.
+ *
+ * <p>Keep-alive and pipelining are supported: pipelined requests are answered
+ * strictly in order, one exchange at a time per connection. A connection
+ * whose client stops reading for longer than
+ * {@link McpServerConfig#writeTimeout()} is closed, and writers block once
+ * {@link #HIGH_WATER_BYTES} are queued for a slow client.
+ *
+ * <p>Like the JDK server, it accepts chunked request bodies, answers
+ * {@code Expect: 100-continue} with an interim {@code 100 Continue} before
+ * the body is read, and streams responses
+ * of unknown length to HTTP/1.0 clients, which do not understand chunked
+ * encoding, as raw bytes ended by closing the connection.
+ */
+public class NioHttpTransport implements McpTransport {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_HEADER_BYTES = 64 * 1024;
+    private static final int DIRECT_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 4096;
+    // Buffers flushed in one gathering write when a handler writes a large body
+    private static final int MAX_GATHER = 8;
+    private static final long HIGH_WATER_BYTES = 1024 * 1024;
+    private static final long TIMEOUT_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final InetSocketAddress bindAddress;
+    private final McpServerConfig config;
+    private final ExecutorService executor;
+    private final Map<String, Context> contexts = new ConcurrentHashMap<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledBuffers = new AtomicInteger();
+    private final long writeTimeoutNanos;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    public NioHttpTransport(InetSocketAddress bindAddress, McpServerConfig config, ExecutorService executor) {
+        this.bindAddress = bindAddress;
+        this.config = config;
+        this.executor = executor;
+        this.writeTimeoutNanos = config.writeTimeout().toNanos();
+    }
+
+    @Override
+    public void createContext(String path, HttpHandler handler) {
+        contexts.put(path, new Context(path, handler));
+    }
+
+    @Override
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(bindAddress, 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = Thread.ofPlatform().name("mcp-nio-selector").daemon().start(this::run);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (selector == null) {
+            return;
+        }
+        selector.wakeup();
+        try {
+            selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        connections.forEach(Connection::close);
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing NIO transport: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        try {
+            return serverChannel == null ? bindAddress : (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            return bindAddress;
+        }
+    }
+
+    @Override
+    public boolean supportsDetachedStreams() {
+        return true;
+    }
+
+    private void run() {
+        long lastTimeoutCheck = System.nanoTime();
+        while (running) {
+            try {
+                selector.select(TimeUnit.NANOSECONDS.toMillis(TIMEOUT_CHECK_NANOS));
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handleKey(key);
+                }
+                long now = System.nanoTime();
+                if (now - lastTimeoutCheck >= TIMEOUT_CHECK_NANOS) {
+                    lastTimeoutCheck = now;
+                    for (Connection connection : connections) {
+                        connection.checkWriteTimeout(now);
+                    }
+                }
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("NIO selector error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            if (key.isWritable()) {
+                connection.flushPending();
+            }
+            if (key.isValid() && key.isReadable()) {
+                connection.read();
+            }
+        } catch (CancelledKeyException e) {
+            // The connection was closed by another thread
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel;
+        try {
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, config.socketSendBufferSize());
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, config.socketReceiveBufferSize());
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connections.add(connection);
+            }
+        } catch (IOException e) {
+            System.err.println("Error accepting connection: " + e.getMessage());
+        }
+    }
+
+    private Context findContext(String path) {
+        Context found = null;
+        for (Context context : contexts.values()) {
+            String prefix = context.getPath();
+            if (path.startsWith(prefix) && (found == null || prefix.length() > found.getPath().length())) {
+                found = context;
+            }
+        }
+        return found;
+    }
+
+    private ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+        }
+        pooledBuffers.decrementAndGet();
+        return buffer;
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        if (buffer.isDirect() && pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            bufferPool.offer(buffer.clear());
+        } else if (buffer.isDirect()) {
+            pooledBuffers.decrementAndGet();
+        }
+    }
+
+    /**
+     * One client socket. The read side is only touched by the selector thread;
+     * the write side is shared with handler threads and guarded by the
+     * connection's lock.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        private long pendingBytes;
+        private long blockedSince;
+        private boolean readPaused;
+        private boolean closeWhenFlushed;
+        // Whether the request being read has been told to go ahead with its body
+        private boolean continueSent;
+        private volatile boolean closed;
+        private volatile Exchange active;
+        // Not a monitor: writers park on it, and a virtual thread parked in a monitor pins its carrier
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition drained = lock.newCondition();
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() {
+            try {
+                if (channel.read(readBuffer) < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (active == null) {
+                parse();
+            }
+            if (!readBuffer.hasRemaining() && active != null) {
+                // A pipelining client has sent more than we buffer; wait for the current exchange
+                lock.lock();
+                try {
+                    readPaused = true;
+                    updateInterest();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Parses the next complete request out of the read buffer, if there is
+         * one, and dispatches it. Runs on the selector thread.
+         */
+        void parse() {
+            if (closed || active != null) {
+                return;
+            }
+            lock.lock();
+            try {
+                if (readPaused) {
+                    readPaused = false;
+                    updateInterest();
+                }
+            } finally {
+                lock.unlock();
+            }
+            int buffered = readBuffer.position();
+            byte[] data = readBuffer.array();
+            int headerEnd = indexOf(data, 0, buffered, HEADER_END);
+            if (headerEnd < 0) {
+                if (buffered >= MAX_HEADER_BYTES) {
+                    reject(431, "Request Header Fields Too Large");
+                } else if (!readBuffer.hasRemaining()) {
+                    readBuffer = grow(readBuffer, readBuffer.capacity() * 2);
+                }
+                return;
+            }
+
+            String head = new String(data, 0, headerEnd, StandardCharsets.ISO_8859_1);
+            String[] lines = head.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3) {
+                reject(400, "Bad Request");
+                return;
+            }
+            Headers headers = new Headers();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    headers.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+                }
+            }
+            String transferEncoding = headers.getFirst("Transfer-Encoding");
+            if (transferEncoding != null && !transferEncoding.equalsIgnoreCase("chunked")) {
+                reject(501, "Not Implemented");
+                return;
+            }
+            if (transferEncoding != null && headers.containsKey("Content-Length")) {
+                // Two framings for one body is how requests get smuggled past a proxy
+                reject(400, "Bad Request");
+                return;
+            }
+            int bodyStart = headerEnd + HEADER_END.length;
+            String protocol = requestLine[2];
+            byte[] body;
+            int requestEnd;
+            if (transferEncoding != null) {
+                try {
+                    Chunks chunks = walkChunks(data, bodyStart, buffered, null);
+                    // Chunk framing may double the size of a body sent in small pieces, but no more
+                    if (chunks.length() > config.maxRequestBytes()
+                            || buffered - bodyStart > 2L * config.maxRequestBytes() + MAX_HEADER_BYTES) {
+                        reject(413, "Content Too Large");
+                        return;
+                    }
+                    if (chunks.end() < 0) {
+                        if (!readBuffer.hasRemaining()) {
+                            readBuffer = grow(readBuffer, readBuffer.capacity() * 2);
+                        }
+                        expectContinue(headers, protocol);
+                        return;
+                    }
+                    body = new byte[(int) chunks.length()];
+                    walkChunks(data, bodyStart, buffered, body);
+                    requestEnd = chunks.end();
+                } catch (ProtocolException e) {
+                    reject(400, "Bad Request");
+                    return;
+                }
+            } else {
+                long contentLength;
+                try {
+                    String value = headers.getFirst("Content-Length");
+                    contentLength = value == null ? 0 : Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    reject(400, "Bad Request");
+                    return;
+                }
+                if (contentLength < 0 || contentLength > config.maxRequestBytes()) {
+                    reject(413, "Content Too Large");
+                    return;
+                }
+                requestEnd = bodyStart + (int) contentLength;
+                if (buffered < requestEnd) {
+                    if (readBuffer.capacity() < requestEnd) {
+                        readBuffer = grow(readBuffer, requestEnd);
+                    }
+                    expectContinue(headers, protocol);
+                    return;
+                }
+                body = new byte[(int) contentLength];
+                System.arraycopy(data, bodyStart, body, 0, body.length);
+            }
+            continueSent = false;
+
+            URI uri;
+            try {
+                uri = new URI(requestLine[1]);
+            } catch (URISyntaxException e) {
+                reject(400, "Bad Request");
+                return;
+            }
+            readBuffer.flip().position(requestEnd);
+            readBuffer.compact();
+
+            String connectionHeader = headers.getFirst("Connection");
+            boolean keepAlive = protocol.equals("HTTP/1.1")
+                    ? !"close".equalsIgnoreCase(connectionHeader)
+                    : "keep-alive".equalsIgnoreCase(connectionHeader);
+            Context context = findContext(uri.getPath());
+            Exchange exchange = new Exchange(this, context, requestLine[0], uri, protocol, headers, body, keepAlive);
+            active = exchange;
+            dispatch(exchange);
+        }
+
+        /**
+         * Tells an HTTP/1.1 client that asked to wait for it to go ahead and
+         * send the rest of its body.
+         */
+        private void expectContinue(Headers headers, String protocol) {
+            if (!continueSent && protocol.equals("HTTP/1.1")
+                    && "100-continue".equalsIgnoreCase(headers.getFirst("Expect"))) {
+                continueSent = true;
+                try {
+                    write(new ByteBuffer[]{ByteBuffer.wrap(CONTINUE)}, false);
+                } catch (IOException e) {
+                    close();
+                }
+            }
+        }
+
+        private void dispatch(Exchange exchange) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        if (exchange.context == null) {
+                            exchange.sendResponseHeaders(404, -1);
+                        } else {
+                            exchange.context.handle(exchange);
+                        }
+                    } catch (Throwable t) {
+                        // Like the JDK server, a failed handler costs the connection
+                        close();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                close();
+            }
+        }
+
+        /**
+         * Answers a request that cannot be parsed and drops the connection.
+         */
+        private void reject(int code, String reason) {
+            byte[] response = ("HTTP/1.1 " + code + " " + reason + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            try {
+                write(new ByteBuffer[]{ByteBuffer.wrap(response)}, true);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Called once the active exchange has written its whole response.
+         */
+        void finished(Exchange exchange) {
+            if (!exchange.keepAlive) {
+                lock.lock();
+                try {
+                    closeWhenFlushed = true;
+                    if (pending.isEmpty()) {
+                        close();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            active = null;
+            selectorTasks.add(this::parse);
+            selector.wakeup();
+        }
+
+        /**
+         * Queues buffers for the client, writing as much as the socket takes
+         * right away with one gathering write. Blocks while more than
+         * {@link #HIGH_WATER_BYTES} are waiting for a slow client.
+         */
+        void write(ByteBuffer[] buffers, boolean last) throws IOException {
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new IOException("Connection closed");
+                }
+                if (pending.isEmpty()) {
+                    channel.write(buffers);
+                }
+                for (ByteBuffer buffer : buffers) {
+                    if (buffer.hasRemaining()) {
+                        pending.add(buffer);
+                        pendingBytes += buffer.remaining();
+                    } else {
+                        releaseBuffer(buffer);
+                    }
+                }
+                if (last && !exchangeKeepsConnection()) {
+                    closeWhenFlushed = true;
+                }
+                if (pending.isEmpty()) {
+                    if (closeWhenFlushed) {
+                        close();
+                    }
+                    return;
+                }
+                if (blockedSince == 0) {
+                    blockedSince = System.nanoTime();
+                }
+                updateInterest();
+                selector.wakeup();
+                while (pendingBytes > HIGH_WATER_BYTES && !closed) {
+                    try {
+                        drained.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while writing");
+                    }
+                }
+                if (closed) {
+                    throw new IOException("Connection closed");
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean exchangeKeepsConnection() {
+            Exchange exchange = active;
+            return exchange != null && exchange.keepAlive;
+        }
+
+        /**
+         * Writes queued buffers once the socket is writable again. Runs on the
+         * selector thread.
+         */
+        void flushPending() {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                try {
+                    channel.write(pending.toArray(ByteBuffer[]::new));
+                } catch (IOException e) {
+                    close();
+                    return;
+                }
+                while (!pending.isEmpty() && !pending.peekFirst().hasRemaining()) {
+                    releaseBuffer(pending.pollFirst());
+                }
+                pendingBytes = 0;
+                for (ByteBuffer buffer : pending) {
+                    pendingBytes += buffer.remaining();
+                }
+                blockedSince = pending.isEmpty() ? 0 : System.nanoTime();
+                drained.signalAll();
+                if (pending.isEmpty() && closeWhenFlushed) {
+                    close();
+                    return;
+                }
+                updateInterest();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void checkWriteTimeout(long now) {
+            lock.lock();
+            try {
+                if (blockedSince != 0 && now - blockedSince > writeTimeoutNanos) {
+                    close();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void updateInterest() {
+            if (closed || !key.isValid()) {
+                return;
+            }
+            int ops = (readPaused ? 0 : SelectionKey.OP_READ) | (pending.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+            try {
+                key.interestOps(ops);
+            } catch (CancelledKeyException e) {
+                // Closed concurrently
+            }
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                pending.forEach(NioHttpTransport.this::releaseBuffer);
+                pending.clear();
+                pendingBytes = 0;
+                drained.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            connections.remove(this);
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing more to do for a connection that is going away
+            }
+        }
+    }
+
+    /**
+     * The decoded length of a chunked body and the offset just past its
+     * trailers, or an end of -1 while the body has not fully arrived.
+     */
+    private record Chunks(long length, int end) {
+    }
+
+    /**
+     * Walks a chunked body from {@code from}, copying the chunk data into
+     * {@code into} when it is not null. Chunk extensions and trailers are
+     * skipped. Stops early, with the length seen so far, while the body is
+     * incomplete or once it is too long for an array.
+     */
+    private static Chunks walkChunks(byte[] data, int from, int buffered, byte[] into) throws ProtocolException {
+        long length = 0;
+        int position = from;
+        while (true) {
+            int lineEnd = indexOf(data, position, buffered, CRLF);
+            if (lineEnd < 0) {
+                if (buffered - position > MAX_HEADER_BYTES) {
+                    throw new ProtocolException("Chunk size line too long");
+                }
+                return new Chunks(length, -1);
+            }
+            String line = new String(data, position, lineEnd - position, StandardCharsets.ISO_8859_1);
+            int extension = line.indexOf(';');
+            String digits = (extension < 0 ? line : line.substring(0, extension)).strip();
+            if (digits.isEmpty() || digits.length() > 8 || !digits.chars().allMatch(HexFormat::isHexDigit)) {
+                throw new ProtocolException("Bad chunk size: " + digits);
+            }
+            long size = HexFormat.fromHexDigitsToLong(digits);
+            position = lineEnd + CRLF.length;
+            if (size == 0) {
+                // The last chunk is followed by trailer fields up to an empty line
+                while (true) {
+                    int trailerEnd = indexOf(data, position, buffered, CRLF);
+                    if (trailerEnd < 0) {
+                        return new Chunks(length, -1);
+                    }
+                    if (trailerEnd == position) {
+                        return new Chunks(length, trailerEnd + CRLF.length);
+                    }
+                    position = trailerEnd + CRLF.length;
+                }
+            }
+            length += size;
+            if (length > Integer.MAX_VALUE - 8 || buffered - position < size + CRLF.length) {
+                return new Chunks(length, -1);
+            }
+            int dataEnd = position + (int) size;
+            if (data[dataEnd] != '\r' || data[dataEnd + 1] != '\n') {
+                throw new ProtocolException("Chunk not ended by CRLF");
+            }
+            if (into != null) {
+                System.arraycopy(data, position, into, (int) (length - size), (int) size);
+            }
+            position = dataEnd + CRLF.length;
+        }
+    }
+
+    private static int indexOf(byte[] data, int from, int length, byte[] pattern) {
+        outer:
+        for (int i = from; i <= length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    private static String reasonPhrase(int code) {
+        return switch (code) {
+            case 200 -> "OK";
+            case 202 -> "Accepted";
+            case 204 -> "No Content";
+            case 400 -> "Bad Request";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 413 -> "Content Too Large";
+            case 429 -> "Too Many Requests";
+            case 500 -> "Internal Server Error";
+            case 503 -> "Service Unavailable";
+            default -> "Status " + code;
+        };
+    }
+
+    /**
+     * A path registered with {@link #createContext}. As with the JDK server,
+     * a request is checked by the context's authenticator, if it has one,
+     * and then passed through its filters to the handler. There is no
+     * {@link HttpServer} behind this transport, so {@link #getServer()} is
+     * null.
+     */
+    private static final class Context extends HttpContext {
+        private final String path;
+        private volatile HttpHandler handler;
+        private volatile Authenticator authenticator;
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        private final List<Filter> filters = new CopyOnWriteArrayList<>();
+
+        Context(String path, HttpHandler handler) {
+            this.path = path;
+            this.handler = handler;
+        }
+
+        void handle(Exchange exchange) throws IOException {
+            Authenticator authenticator = this.authenticator;
+            if (authenticator != null) {
+                Authenticator.Result result = authenticator.authenticate(exchange);
+                if (result instanceof Authenticator.Success success) {
+                    exchange.principal = success.getPrincipal();
+                } else {
+                    int code = result instanceof Authenticator.Retry retry ? retry.getResponseCode()
+                            : result instanceof Authenticator.Failure failure ? failure.getResponseCode() : 401;
+                    exchange.sendResponseHeaders(code, -1);
+                    exchange.close();
+                    return;
+                }
+            }
+            new Filter.Chain(filters, handler).doFilter(exchange);
+        }
+
+        @Override
+        public HttpHandler getHandler() {
+            return handler;
+        }
+
+        @Override
+        public void setHandler(HttpHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public HttpServer getServer() {
+            return null;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public List<Filter> getFilters() {
+            return filters;
+        }
+
+        @Override
+        public Authenticator setAuthenticator(Authenticator authenticator) {
+            Authenticator previous = this.authenticator;
+            this.authenticator = authenticator;
+            return previous;
+        }
+
+        @Override
+        public Authenticator getAuthenticator() {
+            return authenticator;
+        }
+    }
+
+    /**
+     * An exchange on a {@link Connection}. The request body is fully buffered;
+     * the response is fixed-length or chunked depending on the length passed
+     * to {@link #sendResponseHeaders}, exactly as with the JDK server.
+     */
+    private final class Exchange extends HttpExchange {
+        private final Connection connection;
+        private final Context context;
+        private final String method;
+        private final URI uri;
+        private final String protocol;
+        private final Headers requestHeaders;
+        private final Headers responseHeaders = new Headers();
+        private final Map<String, Object> attributes = new HashMap<>();
+        private volatile boolean keepAlive;
+        private volatile HttpPrincipal principal;
+        private InputStream requestBody;
+        private OutputStream responseBody;
+        private final ResponseBody output = new ResponseBody();
+        private volatile int responseCode = -1;
+
+        Exchange(Connection connection, Context context, String method, URI uri, String protocol,
+                 Headers requestHeaders, byte[] body, boolean keepAlive) {
+            this.connection = connection;
+            this.context = context;
+            this.method = method;
+            this.uri = uri;
+            this.protocol = protocol;
+            this.requestHeaders = requestHeaders;
+            this.keepAlive = keepAlive;
+            this.requestBody = new ByteArrayInputStream(body);
+            this.responseBody = output;
+        }
+
+        @Override
+        public Headers getRequestHeaders() {
+            return requestHeaders;
+        }
+
+        @Override
+        public Headers getResponseHeaders() {
+            return responseHeaders;
+        }
+
+        @Override
+        public URI getRequestURI() {
+            return uri;
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return method;
+        }
+
+        @Override
+        public HttpContext getHttpContext() {
+            return context;
+        }
+
+        @Override
+        public void close() {
+            try {
+                requestBody.close();
+                responseBody.close();
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            return requestBody;
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            return responseBody;
+        }
+
+        @Override
+        public void sendResponseHeaders(int code, long length) throws IOException {
+            if (responseCode != -1) {
+                throw new IOException("Headers already sent");
+            }
+            responseCode = code;
+            StringBuilder head = new StringBuilder(256);
+            head.append("HTTP/1.1 ").append(code).append(' ').append(reasonPhrase(code)).append("\r\n");
+            responseHeaders.forEach((name, values) -> values.forEach(value ->
+                    head.append(name).append(": ").append(value).append("\r\n")));
+            boolean noBody = length < 0 || code == 204 || code == 304;
+            if (length == 0 && !noBody) {
+                if (protocol.equals("HTTP/1.1")) {
+                    head.append("Transfer-Encoding: chunked\r\n");
+                    output.chunked = true;
+                } else {
+                    // An older client learns where the body ends from the connection closing
+                    keepAlive = false;
+                }
+            } else if (code != 204 && code != 304) {
+                head.append("Content-Length: ").append(Math.max(0, length)).append("\r\n");
+            }
+            if (!keepAlive) {
+                head.append("Connection: close\r\n");
+            }
+            head.append("\r\n");
+            ByteBuffer headBuffer = ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+            if (noBody) {
+                output.closed = true;
+                connection.write(new ByteBuffer[]{headBuffer}, true);
+                connection.finished(this);
+            } else {
+                connection.write(new ByteBuffer[]{headBuffer}, false);
+            }
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            try {
+                return (InetSocketAddress) connection.channel.getRemoteAddress();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            try {
+                return (InetSocketAddress) connection.channel.getLocalAddress();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String getProtocol() {
+            return protocol;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void setStreams(InputStream input, OutputStream output) {
+            if (input != null) {
+                requestBody = input;
+            }
+            if (output != null) {
+                responseBody = output;
+            }
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal() {
+            return principal;
+        }
+
+        /**
+         * Copies the handler's bytes into pooled direct buffers. Each flush
+         * becomes one chunk (or one run of raw bytes) sent as a single
+         * gathering write of header, data buffers and trailer.
+         */
+        private final class ResponseBody extends OutputStream {
+            private final List<ByteBuffer> filled = new ArrayList<>(MAX_GATHER);
+            private ByteBuffer current;
+            private boolean chunked;
+            private volatile boolean closed;
+            private final ReentrantLock lock = new ReentrantLock();
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                lock.lock();
+                try {
+                    writeLocked(bytes, offset, length);
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            private void writeLocked(byte[] bytes, int offset, int length) throws IOException {
+                if (closed) {
+                    throw new IOException("Response body is closed");
+                }
+                if (responseCode == -1) {
+                    throw new IOException("sendResponseHeaders() has not been called");
+                }
+                while (length > 0) {
+                    if (current == null) {
+                        current = acquireBuffer();
+                    }
+                    int n = Math.min(length, current.remaining());
+                    current.put(bytes, offset, n);
+                    offset += n;
+                    length -= n;
+                    if (!current.hasRemaining()) {
+                        filled.add(current.flip());
+                        current = null;
+                        if (filled.size() == MAX_GATHER) {
+                            send(false);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                lock.lock();
+                try {
+                    if (!closed) {
+                        send(false);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                lock.lock();
+                try {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    if (responseCode == -1) {
+                        // Closed without a response: the client cannot be answered on this connection
+                        connection.close();
+                        return;
+                    }
+                    try {
+                        send(true);
+                    } finally {
+                        connection.finished(Exchange.this);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            private void send(boolean last) throws IOException {
+                if (current != null && current.position() > 0) {
+                    filled.add(current.flip());
+                    current = null;
+                }
+                if (filled.isEmpty() && !(last && chunked)) {
+                    if (last) {
+                        connection.write(new ByteBuffer[0], true);
+                    }
+                    return;
+                }
+                long size = 0;
+                for (ByteBuffer buffer : filled) {
+                    size += buffer.remaining();
+                }
+                List<ByteBuffer> buffers = new ArrayList<>(filled.size() + 3);
+                if (chunked && size > 0) {
+                    buffers.add(ByteBuffer.wrap((Long.toHexString(size) + "\r\n").getBytes(StandardCharsets.US_ASCII)));
+                    buffers.addAll(filled);
+                    buffers.add(ByteBuffer.wrap(CRLF));
+                } else {
+                    buffers.addAll(filled);
+                }
+                if (last && chunked) {
+                    buffers.add(ByteBuffer.wrap(LAST_CHUNK));
+                }
+                filled.clear();
+                connection.write(buffers.toArray(ByteBuffer[]::new), last);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.sampullara.mcp.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of named entries kept in a sorted concurrent index, so lookups and
+ * registration are logarithmic and listings come back in a stable key order.
+ *
+ * <p>Listings are paged. A cursor is an opaque encoding of the last key of the
+ * previous page and the next page starts strictly after it, so a client that
+ * walks the cursors while entries are being registered sees every entry that
+ * existed throughout exactly once. The first page, which is what most clients
+ * ask for, is encoded once per version and shared until the next change.
+ */
+public class Registry<T> {
+    private static final String CURSOR_PREFIX = "k:";
+
+    private final ConcurrentSkipListMap<String, T> entries = new ConcurrentSkipListMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final PageEncoder<T> encoder;
+    private final int pageSize;
+    private volatile FirstPage firstPage;
+
+    /**
+     * Encodes one page of entries as a list result.
+     */
+    @FunctionalInterface
+    public interface PageEncoder<T> {
+        /**
+         * @param nextCursor the cursor for the following page, or {@code null}
+         *                   on the last page
+         */
+        byte[] encode(List<T> entries, String nextCursor);
+    }
+
+    private record FirstPage(long version, SharedPayload payload) {}
+
+    public Registry(PageEncoder<T> encoder, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        this.encoder = encoder;
+        this.pageSize = pageSize;
+    }
+
+    public void register(String key, T value) {
+        entries.put(key, value);
+        // Bumped after the write so a first page built concurrently is never kept
+        version.incrementAndGet();
+    }
+
+    public T get(String key) {
+        return entries.get(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Changes on every registration.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Returns the encoded page that follows {@code cursor}, or the first page
+     * if it is {@code null}.
+     *
+     * @throws IllegalArgumentException if the cursor was not issued by a registry
+     */
+    public SharedPayload page(String cursor) {
+        if (cursor != null) {
+            return new SharedPayload(encodePage(entries.tailMap(decodeCursor(cursor), false)));
+        }
+        long current = version.get();
+        FirstPage cached = firstPage;
+        if (cached == null || cached.version() != current) {
+            // Racing threads may both encode it; either result is correct for this version
+            cached = new FirstPage(current, new SharedPayload(encodePage(entries)));
+            firstPage = cached;
+        }
+        return cached.payload();
+    }
+
+    private byte[] encodePage(Map<String, T> from) {
+        List<T> page = new ArrayList<>(Math.min(pageSize, 64));
+        String lastKey = null;
+        Iterator<Map.Entry<String, T>> iterator = from.entrySet().iterator();
+        while (page.size() < pageSize && iterator.hasNext()) {
+            Map.Entry<String, T> entry = iterator.next();
+            page.add(entry.getValue());
+            lastKey = entry.getKey();
+        }
+        return encoder.encode(page, iterator.hasNext() ? encodeCursor(lastKey) : null);
+    }
+
+    private static String encodeCursor(String key) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((CURSOR_PREFIX + key).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        if (!decoded.startsWith(CURSOR_PREFIX)) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return decoded.substring(CURSOR_PREFIX.length());
+    }
+}
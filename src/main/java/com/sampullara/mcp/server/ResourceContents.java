@@ -0,0 +1,49 @@
+package com.sampullara.mcp.server;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * One range of a resource's content. {@code data} is typically a read-only
+ * memory-mapped buffer, and is only ever streamed into a response, never
+ * copied into a heap array.
+ */
+public record ResourceContents(ByteBuffer data, long offset, long totalLength) {
+
+    public int length() {
+        return data.remaining();
+    }
+
+    public boolean isComplete() {
+        return offset + length() >= totalLength;
+    }
+
+    /**
+     * Returns a stream over the remaining bytes of {@code data}. Each call
+     * starts from the buffer's current position without moving it.
+     */
+    public InputStream newInputStream() {
+        ByteBuffer buffer = data.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] bytes, int off, int len) {
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.get(bytes, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+        };
+    }
+}
@@ -0,0 +1,19 @@
+package com.sampullara.mcp.server;
+
+import java.io.IOException;
+
+/**
+ * Supplies the content behind a registered {@link MessageHandler.Resource} for
+ * {@code resources/read}. Content is read in ranges so that resources larger
+ * than a single response can be paged through.
+ */
+@FunctionalInterface
+public interface ResourceProvider {
+    /**
+     * Returns up to {@code maxLength} bytes of content starting at
+     * {@code offset}.
+     *
+     * @throws IllegalArgumentException if {@code offset} is past the end
+     */
+    ResourceContents read(long offset, int maxLength) throws IOException;
+}
@@ -0,0 +1,121 @@
+package com.sampullara.mcp.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Index from resource URI to the sessions subscribed to it, with a reverse
+ * index so a session's subscriptions go away with the session.
+ *
+ * <p>{@link #publish} encodes the {@code notifications/resources/updated}
+ * frame once and hands the same bytes to every subscriber's emitter. The
+ * notification only names the resource, so updates are coalesced per
+ * subscription: while one is still queued for a slow client, further updates
+ * to the same URI are dropped for that client, and it re-reads the resource
+ * once either way. Once the writer has taken the notification off the queue,
+ * the client may already have read the resource, so the next update is sent
+ * again.
+ */
+public class ResourceSubscriptions {
+    private final ObjectMapper objectMapper;
+    private final Map<String, Map<String, Subscription>> byUri = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> bySession = new ConcurrentHashMap<>();
+
+    private record Subscription(SseEmitter emitter, AtomicBoolean pending) {}
+
+    public ResourceSubscriptions(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public void subscribe(String sessionId, SseEmitter emitter, String uri) {
+        bySession.computeIfAbsent(sessionId, _ -> ConcurrentHashMap.newKeySet()).add(uri);
+        // Added under the URI's bin lock so a concurrent removal cannot drop the map we add to
+        byUri.compute(uri, (_, subscribers) -> {
+            Map<String, Subscription> result = subscribers == null ? new ConcurrentHashMap<>() : subscribers;
+            result.putIfAbsent(sessionId, new Subscription(emitter, new AtomicBoolean()));
+            return result;
+        });
+        if (emitter.isClosed()) {
+            // The session may have been removed while we were subscribing it
+            removeSession(sessionId);
+        }
+    }
+
+    public void unsubscribe(String sessionId, String uri) {
+        Set<String> uris = bySession.get(sessionId);
+        if (uris != null) {
+            uris.remove(uri);
+        }
+        remove(uri, sessionId);
+    }
+
+    /**
+     * Drops every subscription of a session that has gone away.
+     */
+    public void removeSession(String sessionId) {
+        Set<String> uris = bySession.remove(sessionId);
+        if (uris != null) {
+            uris.forEach(uri -> remove(uri, sessionId));
+        }
+    }
+
+    private void remove(String uri, String sessionId) {
+        byUri.computeIfPresent(uri, (_, subscribers) -> {
+            subscribers.remove(sessionId);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    public int subscriberCount(String uri) {
+        Map<String, Subscription> subscribers = byUri.get(uri);
+        return subscribers == null ? 0 : subscribers.size();
+    }
+
+    /**
+     * Notifies every subscriber of {@code uri} that it changed. Returns the
+     * number of notifications queued; subscribers that still have one queued
+     * for this URI are skipped.
+     */
+    public int publish(String uri) {
+        Map<String, Subscription> subscribers = byUri.get(uri);
+        if (subscribers == null || subscribers.isEmpty()) {
+            return 0;
+        }
+        byte[] frame = SseEmitter.frame("message", encodeUpdated(uri));
+        // Only the latest update per URI matters to a client that is behind
+        String key = "notifications/resources/updated " + uri;
+        int queued = 0;
+        for (Subscription subscription : subscribers.values()) {
+            if (!subscription.pending().compareAndSet(false, true)) {
+                continue;
+            }
+            try {
+                subscription.emitter().emitFrame(frame, key, () -> subscription.pending().set(false));
+                queued++;
+            } catch (IOException e) {
+                // Closed stream; the session's removal cleans up the subscription
+                subscription.pending().set(false);
+            }
+        }
+        return queued;
+    }
+
+    private String encodeUpdated(String uri) {
+        ObjectNode notification = objectMapper.createObjectNode();
+        notification.put("jsonrpc", "2.0");
+        notification.put("method", "notifications/resources/updated");
+        notification.putObject("params").put("uri", uri);
+        try {
+            return objectMapper.writeValueAsString(notification);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
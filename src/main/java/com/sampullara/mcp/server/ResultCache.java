@@ -0,0 +1,332 @@
+package com.sampullara.mcp.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingJsonFactory;
+
+/**
+ * Byte-bounded cache of already-serialized results, evicting with W-TinyLFU:
+ * new entries land in a small LRU window, and when the window overflows its
+ * oldest entry only displaces the main region's LRU victim if a frequency
+ * sketch says it has been requested more often. The main region is a
+ * segmented LRU whose protected segment holds entries hit more than once.
+ * Entries are grouped by namespace (a tool or resource) for invalidation.
+ */
+public class ResultCache {
+    private static final JsonFactory JSON_FACTORY = new MappingJsonFactory();
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final long maxBytes;
+    private final long windowMaxBytes;
+    private final long protectedMaxBytes;
+    private final Map<String, Node> data = new HashMap<>();
+    private final Queue window = new Queue();
+    private final Queue probation = new Queue();
+    private final Queue protectedQueue = new Queue();
+    private final FrequencySketch sketch;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public record Stats(long hits, long misses, long evictions, long bytes, int entries) {}
+
+    private static final class Node {
+        final String key;
+        final String namespace;
+        byte[] value;
+        long expiresAt;
+        int queue;
+        Node prev;
+        Node next;
+
+        Node(String key, String namespace) {
+            this.key = key;
+            this.namespace = namespace;
+        }
+    }
+
+    private static final class Queue {
+        Node head;
+        Node tail;
+        long bytes;
+
+        void addLast(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            bytes += node.value.length;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            bytes -= node.value.length;
+        }
+    }
+
+    public ResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.windowMaxBytes = Math.max(1, maxBytes / 100);
+        this.protectedMaxBytes = (maxBytes - windowMaxBytes) * 4 / 5;
+        // Size the sketch for entries of a few KB on average
+        this.sketch = new FrequencySketch((int) Math.min(1 << 24, Math.max(64, maxBytes / 4096)));
+    }
+
+    /**
+     * Builds a key from a namespace and JSON arguments. Object fields are
+     * hashed in sorted order so that equivalent arguments map to one key no
+     * matter how the client ordered them.
+     */
+    public static String key(String namespace, JsonNode arguments) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(
+                    new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+                writeCanonical(generator, arguments);
+            }
+            return namespace + '#' + Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeCanonical(JsonGenerator generator, JsonNode node) throws IOException {
+        if (node.isObject()) {
+            List<String> names = new ArrayList<>();
+            node.fieldNames().forEachRemaining(names::add);
+            names.sort(null);
+            generator.writeStartObject();
+            for (String name : names) {
+                generator.writeFieldName(name);
+                writeCanonical(generator, node.get(name));
+            }
+            generator.writeEndObject();
+        } else if (node.isArray()) {
+            generator.writeStartArray();
+            for (JsonNode element : node) {
+                writeCanonical(generator, element);
+            }
+            generator.writeEndArray();
+        } else {
+            generator.writeTree(node);
+        }
+    }
+
+    public synchronized byte[] get(String key) {
+        sketch.increment(key.hashCode());
+        Node node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (System.nanoTime() - node.expiresAt > 0) {
+            removeNode(node);
+            misses.increment();
+            return null;
+        }
+        onHit(node);
+        hits.increment();
+        return node.value;
+    }
+
+    public synchronized void put(String namespace, String key, byte[] value, long ttlNanos) {
+        if (value.length > maxBytes) {
+            return;
+        }
+        Node node = data.get(key);
+        if (node != null) {
+            queueOf(node).remove(node);
+            node.value = value;
+            node.expiresAt = System.nanoTime() + ttlNanos;
+            queueOf(node).addLast(node);
+        } else {
+            node = new Node(key, namespace);
+            node.value = value;
+            node.expiresAt = System.nanoTime() + ttlNanos;
+            node.queue = WINDOW;
+            data.put(key, node);
+            window.addLast(node);
+        }
+        evict();
+    }
+
+    /**
+     * Drops every entry of a namespace, e.g. when a tool is re-registered.
+     */
+    public synchronized void invalidate(String namespace) {
+        for (Iterator<Node> iterator = data.values().iterator(); iterator.hasNext(); ) {
+            Node node = iterator.next();
+            if (node.namespace.equals(namespace)) {
+                queueOf(node).remove(node);
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(),
+                window.bytes + probation.bytes + protectedQueue.bytes, data.size());
+    }
+
+    private Queue queueOf(Node node) {
+        return switch (node.queue) {
+            case WINDOW -> window;
+            case PROBATION -> probation;
+            default -> protectedQueue;
+        };
+    }
+
+    private void onHit(Node node) {
+        Queue queue = queueOf(node);
+        queue.remove(node);
+        if (node.queue == PROBATION) {
+            // A second hit promotes into the protected segment, demoting its LRU entry if full
+            node.queue = PROTECTED;
+            protectedQueue.addLast(node);
+            while (protectedQueue.bytes > protectedMaxBytes && protectedQueue.head != node) {
+                Node demoted = protectedQueue.head;
+                protectedQueue.remove(demoted);
+                demoted.queue = PROBATION;
+                probation.addLast(demoted);
+            }
+        } else {
+            queue.addLast(node);
+        }
+    }
+
+    private void removeNode(Node node) {
+        queueOf(node).remove(node);
+        data.remove(node.key);
+    }
+
+    private void evict() {
+        // Window overflow becomes candidates at the MRU end of probation
+        Node firstCandidate = null;
+        while (window.bytes > windowMaxBytes && window.head != null) {
+            Node candidate = window.head;
+            window.remove(candidate);
+            candidate.queue = PROBATION;
+            probation.addLast(candidate);
+            if (firstCandidate == null) {
+                firstCandidate = candidate;
+            }
+        }
+
+        while (window.bytes + probation.bytes + protectedQueue.bytes > maxBytes) {
+            Node victim = probation.head;
+            Node candidate = firstCandidate;
+            if (victim == null) {
+                victim = protectedQueue.head != null ? protectedQueue.head : window.head;
+                evictNode(victim);
+                continue;
+            }
+            if (candidate == null || candidate == victim) {
+                if (candidate != null) {
+                    firstCandidate = candidate.next;
+                }
+                evictNode(victim);
+                continue;
+            }
+            // TinyLFU admission: the candidate only displaces a victim that is requested less often
+            if (sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+                evictNode(victim);
+            } else {
+                firstCandidate = candidate.next;
+                evictNode(candidate);
+            }
+        }
+    }
+
+    private void evictNode(Node node) {
+        removeNode(node);
+        evictions.increment();
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, four per item, packed sixteen to a
+     * long. All counters are halved periodically so old popularity decays.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private final long[] table;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int size = Integer.highestOneBit(Math.max(expectedEntries, 16) - 1) << 1;
+            this.table = new long[size];
+            this.sampleSize = 10 * size;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                long h = rehash(hash, i);
+                int index = (int) ((h >>> 4) & (table.length - 1));
+                int shift = (int) (h & 15) << 2;
+                if (((table[index] >>> shift) & 0xfL) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int i = 0; i < 4; i++) {
+                long h = rehash(hash, i);
+                int index = (int) ((h >>> 4) & (table.length - 1));
+                int shift = (int) (h & 15) << 2;
+                frequency = Math.min(frequency, (int) ((table[index] >>> shift) & 0xfL));
+            }
+            return frequency;
+        }
+
+        private static long rehash(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            return h ^ (h >>> 32);
+        }
+    }
+}
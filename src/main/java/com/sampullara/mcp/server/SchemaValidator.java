@@ -0,0 +1,645 @@
+package com.sampullara.mcp.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A JSON Schema compiled into a tree of nodes, one per subschema, for checking
+ * tool arguments. Compiling does everything that does not depend on the
+ * value: property schemas go into hash maps, patterns are compiled, enums
+ * become sets and type and enum messages are built up front. Checking a
+ * value only walks the value, and stops at the first violation.
+ *
+ * <p>Covers the validation keywords of drafts 4 to 2020-12 that tool schemas
+ * use: {@code type}, {@code enum}, {@code const}, numeric and length bounds,
+ * {@code pattern}, {@code properties}, {@code patternProperties},
+ * {@code additionalProperties}, {@code required}, {@code items},
+ * {@code prefixItems}, {@code uniqueItems}, {@code allOf}, {@code anyOf},
+ * {@code oneOf}, {@code not} and local {@code $ref}s. Other keywords, such as
+ * {@code format}, are ignored. Patterns keep their ECMA-262 meaning where it
+ * differs from Java's: {@code $} only matches at the very end of the string,
+ * not before a trailing newline. A compiled validator is immutable and may be
+ * shared between threads.
+ */
+public final class SchemaValidator {
+    /** Accepts any value, for tools without a schema. */
+    public static final SchemaValidator ACCEPT_ALL = new SchemaValidator(new Node());
+
+    private static final int NULL = 1;
+    private static final int BOOLEAN = 1 << 1;
+    private static final int OBJECT = 1 << 2;
+    private static final int ARRAY = 1 << 3;
+    private static final int NUMBER = 1 << 4;
+    private static final int INTEGER = 1 << 5;
+    private static final int STRING = 1 << 6;
+
+    private final Node root;
+
+    /**
+     * Where in the value a check failed, as a JSON Pointer, and why.
+     */
+    public record Violation(String path, String message) {
+        @Override
+        public String toString() {
+            return path.isEmpty() ? message : path + ": " + message;
+        }
+    }
+
+    private SchemaValidator(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles {@code schema}. A {@code null} schema accepts everything.
+     *
+     * @throws IllegalArgumentException if the schema has an invalid pattern
+     *                                  or a {@code $ref} that does not resolve
+     */
+    public static SchemaValidator compile(JsonNode schema) {
+        if (schema == null || (schema.isObject() && schema.isEmpty())) {
+            return ACCEPT_ALL;
+        }
+        return new SchemaValidator(new Compiler(schema).compileRoot());
+    }
+
+    /**
+     * Checks {@code value}, returning the first violation or {@code null} if
+     * it is valid.
+     */
+    public Violation validate(JsonNode value) {
+        return root.check(value);
+    }
+
+    private static int typeOf(JsonNode value) {
+        return switch (value.getNodeType()) {
+            case NULL -> NULL;
+            case BOOLEAN -> BOOLEAN;
+            case OBJECT -> OBJECT;
+            case ARRAY -> ARRAY;
+            case STRING -> STRING;
+            case NUMBER -> value.isIntegralNumber() || isWhole(value.doubleValue()) ? NUMBER | INTEGER : NUMBER;
+            default -> 0;
+        };
+    }
+
+    private static boolean isWhole(double value) {
+        return !Double.isInfinite(value) && value == Math.rint(value);
+    }
+
+    private static String child(String name, Violation violation) {
+        return "/" + name.replace("~", "~0").replace("/", "~1") + violation.path();
+    }
+
+    /**
+     * One compiled subschema. Unused keywords are left at values that make
+     * their checks pass without looking at the value.
+     */
+    private static final class Node {
+        boolean never;
+        Node ref;
+        int types;
+        String typeMessage;
+        Set<String> stringEnum;
+        Set<JsonNode> valueEnum;
+        String enumMessage;
+        JsonNode constant;
+
+        double minimum = Double.NaN;
+        double maximum = Double.NaN;
+        double exclusiveMinimum = Double.NaN;
+        double exclusiveMaximum = Double.NaN;
+        double multipleOf = Double.NaN;
+
+        int minLength;
+        int maxLength = Integer.MAX_VALUE;
+        Pattern pattern;
+        String patternSource;
+        // Set instead of running the pattern when it only says which ASCII characters may appear
+        boolean[] patternChars;
+        boolean patternAllowsEmpty;
+
+        Map<String, Node> properties;
+        Pattern[] patternKeys;
+        Node[] patternNodes;
+        Node additionalProperties;
+        boolean closed;
+        String[] required;
+        int minProperties;
+        int maxProperties = Integer.MAX_VALUE;
+
+        Node[] prefixItems;
+        Node items;
+        int minItems;
+        int maxItems = Integer.MAX_VALUE;
+        boolean uniqueItems;
+
+        Node[] allOf;
+        Node[] anyOf;
+        Node[] oneOf;
+        Node not;
+
+        Violation check(JsonNode value) {
+            if (never) {
+                return new Violation("", "no value is allowed here");
+            }
+            if (ref != null) {
+                Violation violation = ref.check(value);
+                if (violation != null) {
+                    return violation;
+                }
+            }
+            if (types != 0 && (types & typeOf(value)) == 0) {
+                return new Violation("", typeMessage);
+            }
+            if (stringEnum != null ? !value.isTextual() || !stringEnum.contains(value.textValue())
+                    : valueEnum != null && !valueEnum.contains(value)) {
+                return new Violation("", enumMessage);
+            }
+            if (constant != null && !constant.equals(value)) {
+                return new Violation("", "must be " + constant);
+            }
+            Violation violation = switch (value.getNodeType()) {
+                case STRING -> checkString(value.textValue());
+                case NUMBER -> checkNumber(value);
+                case OBJECT -> checkObject(value);
+                case ARRAY -> checkArray(value);
+                default -> null;
+            };
+            return violation != null ? violation : checkComposition(value);
+        }
+
+        private Violation checkString(String text) {
+            if (minLength > 0 || maxLength < Integer.MAX_VALUE) {
+                int length = text.codePointCount(0, text.length());
+                if (length < minLength) {
+                    return new Violation("", "must be at least " + minLength + " characters long");
+                }
+                if (length > maxLength) {
+                    return new Violation("", "must be at most " + maxLength + " characters long");
+                }
+            }
+            if (pattern != null && !(patternChars != null ? matchesChars(text) : pattern.matcher(text).find())) {
+                return new Violation("", "must match " + patternSource);
+            }
+            return null;
+        }
+
+        private boolean matchesChars(String text) {
+            if (text.isEmpty()) {
+                return patternAllowsEmpty;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c >= patternChars.length || !patternChars[c]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Violation checkNumber(JsonNode value) {
+            double number = value.doubleValue();
+            // Comparisons with NaN are false, so absent bounds never fail
+            if (number < minimum) {
+                return new Violation("", "must be at least " + format(minimum));
+            }
+            if (number > maximum) {
+                return new Violation("", "must be at most " + format(maximum));
+            }
+            if (number <= exclusiveMinimum) {
+                return new Violation("", "must be greater than " + format(exclusiveMinimum));
+            }
+            if (number >= exclusiveMaximum) {
+                return new Violation("", "must be less than " + format(exclusiveMaximum));
+            }
+            if (!Double.isNaN(multipleOf)) {
+                double quotient = number / multipleOf;
+                if (Math.abs(quotient - Math.rint(quotient)) > 1e-9 * Math.max(1, Math.abs(quotient))) {
+                    return new Violation("", "must be a multiple of " + format(multipleOf));
+                }
+            }
+            return null;
+        }
+
+        private Violation checkObject(JsonNode object) {
+            int size = object.size();
+            if (size < minProperties) {
+                return new Violation("", "must have at least " + minProperties + " properties");
+            }
+            if (size > maxProperties) {
+                return new Violation("", "must have at most " + maxProperties + " properties");
+            }
+            if (required != null) {
+                for (String name : required) {
+                    if (object.get(name) == null) {
+                        return new Violation("", "missing required property \"" + name + "\"");
+                    }
+                }
+            }
+            if (properties == null && patternNodes == null && additionalProperties == null && !closed) {
+                return null;
+            }
+            for (Iterator<Map.Entry<String, JsonNode>> fields = object.fields(); fields.hasNext(); ) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                String name = field.getKey();
+                Node property = properties == null ? null : properties.get(name);
+                boolean matched = property != null;
+                if (matched) {
+                    Violation violation = property.check(field.getValue());
+                    if (violation != null) {
+                        return new Violation(child(name, violation), violation.message());
+                    }
+                }
+                if (patternNodes != null) {
+                    for (int i = 0; i < patternNodes.length; i++) {
+                        if (patternKeys[i].matcher(name).find()) {
+                            matched = true;
+                            Violation violation = patternNodes[i].check(field.getValue());
+                            if (violation != null) {
+                                return new Violation(child(name, violation), violation.message());
+                            }
+                        }
+                    }
+                }
+                if (!matched) {
+                    if (closed) {
+                        return new Violation("", "unexpected property \"" + name + "\"");
+                    }
+                    if (additionalProperties != null) {
+                        Violation violation = additionalProperties.check(field.getValue());
+                        if (violation != null) {
+                            return new Violation(child(name, violation), violation.message());
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        private Violation checkArray(JsonNode array) {
+            int size = array.size();
+            if (size < minItems) {
+                return new Violation("", "must have at least " + minItems + " items");
+            }
+            if (size > maxItems) {
+                return new Violation("", "must have at most " + maxItems + " items");
+            }
+            int prefix = prefixItems == null ? 0 : Math.min(prefixItems.length, size);
+            for (int i = 0; i < size; i++) {
+                Node node = i < prefix ? prefixItems[i] : items;
+                if (node == null) {
+                    break;
+                }
+                Violation violation = node.check(array.get(i));
+                if (violation != null) {
+                    return new Violation("/" + i + violation.path(), violation.message());
+                }
+            }
+            if (uniqueItems && size > 1) {
+                Set<JsonNode> seen = new HashSet<>();
+                for (int i = 0; i < size; i++) {
+                    if (!seen.add(array.get(i))) {
+                        return new Violation("/" + i, "duplicates an earlier item");
+                    }
+                }
+            }
+            return null;
+        }
+
+        private Violation checkComposition(JsonNode value) {
+            if (allOf != null) {
+                for (Node node : allOf) {
+                    Violation violation = node.check(value);
+                    if (violation != null) {
+                        return violation;
+                    }
+                }
+            }
+            if (anyOf != null) {
+                Violation first = null;
+                for (Node node : anyOf) {
+                    Violation violation = node.check(value);
+                    if (violation == null) {
+                        first = null;
+                        break;
+                    }
+                    if (first == null) {
+                        first = violation;
+                    }
+                }
+                if (first != null) {
+                    return new Violation(first.path(), "matches none of the allowed schemas (" + first.message() + ")");
+                }
+            }
+            if (oneOf != null) {
+                int matches = 0;
+                for (Node node : oneOf) {
+                    if (node.check(value) == null && ++matches > 1) {
+                        return new Violation("", "matches more than one of the allowed schemas");
+                    }
+                }
+                if (matches == 0) {
+                    return new Violation("", "matches none of the allowed schemas");
+                }
+            }
+            if (not != null && not.check(value) == null) {
+                return new Violation("", "matches a schema it must not");
+            }
+            return null;
+        }
+
+        private static String format(double value) {
+            return isWhole(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+        }
+    }
+
+    /**
+     * Compiles one root schema. {@code $ref}s are resolved once the tree is
+     * built, against subschemas compiled only once each, so recursive schemas
+     * become cycles in the tree rather than endless descent.
+     */
+    private static final class Compiler {
+        private final JsonNode root;
+        private final Map<String, Node> byPointer = new HashMap<>();
+        private final List<Map.Entry<Node, String>> refs = new ArrayList<>();
+
+        Compiler(JsonNode root) {
+            this.root = root;
+        }
+
+        Node compileRoot() {
+            Node node = compile(root);
+            byPointer.put("", node);
+            // Resolving a ref may compile a subschema that has refs of its own
+            for (int i = 0; i < refs.size(); i++) {
+                Map.Entry<Node, String> ref = refs.get(i);
+                ref.getKey().ref = resolve(ref.getValue());
+            }
+            return node;
+        }
+
+        private Node resolve(String ref) {
+            if (!ref.startsWith("#")) {
+                throw new IllegalArgumentException("Only local $refs are supported: " + ref);
+            }
+            String pointer = ref.substring(1);
+            Node node = byPointer.get(pointer);
+            if (node == null) {
+                JsonNode target = root.at(pointer);
+                if (target.isMissingNode()) {
+                    throw new IllegalArgumentException("Unresolvable $ref: " + ref);
+                }
+                node = compile(target);
+                byPointer.put(pointer, node);
+            }
+            return node;
+        }
+
+        private Node compile(JsonNode schema) {
+            Node node = new Node();
+            if (schema.isBoolean()) {
+                node.never = !schema.booleanValue();
+                return node;
+            }
+            if (!schema.isObject()) {
+                throw new IllegalArgumentException("Schema must be an object or a boolean: " + schema);
+            }
+            JsonNode ref = schema.get("$ref");
+            if (ref != null && ref.isTextual()) {
+                refs.add(Map.entry(node, ref.textValue()));
+            }
+            compileType(node, schema.get("type"));
+            compileEnum(node, schema.get("enum"));
+            node.constant = schema.get("const");
+
+            node.minimum = number(schema, "minimum");
+            node.maximum = number(schema, "maximum");
+            JsonNode exclusiveMinimum = schema.get("exclusiveMinimum");
+            if (exclusiveMinimum != null && exclusiveMinimum.isBoolean()) {
+                // Draft 4: a flag that makes "minimum" exclusive
+                if (exclusiveMinimum.booleanValue()) {
+                    node.exclusiveMinimum = node.minimum;
+                    node.minimum = Double.NaN;
+                }
+            } else {
+                node.exclusiveMinimum = number(schema, "exclusiveMinimum");
+            }
+            JsonNode exclusiveMaximum = schema.get("exclusiveMaximum");
+            if (exclusiveMaximum != null && exclusiveMaximum.isBoolean()) {
+                if (exclusiveMaximum.booleanValue()) {
+                    node.exclusiveMaximum = node.maximum;
+                    node.maximum = Double.NaN;
+                }
+            } else {
+                node.exclusiveMaximum = number(schema, "exclusiveMaximum");
+            }
+            node.multipleOf = number(schema, "multipleOf");
+
+            node.minLength = schema.path("minLength").asInt(0);
+            node.maxLength = schema.path("maxLength").asInt(Integer.MAX_VALUE);
+            if (schema.has("pattern")) {
+                node.patternSource = schema.get("pattern").asText();
+                node.pattern = pattern(node.patternSource);
+                node.patternChars = characterClass(node.patternSource);
+                node.patternAllowsEmpty = node.patternSource.endsWith("*$");
+            }
+
+            JsonNode properties = schema.get("properties");
+            if (properties != null && properties.isObject()) {
+                node.properties = new HashMap<>();
+                properties.fields().forEachRemaining(field -> node.properties.put(field.getKey(), compile(field.getValue())));
+            }
+            JsonNode patternProperties = schema.get("patternProperties");
+            if (patternProperties != null && patternProperties.isObject() && !patternProperties.isEmpty()) {
+                node.patternKeys = new Pattern[patternProperties.size()];
+                node.patternNodes = new Node[patternProperties.size()];
+                int i = 0;
+                for (Iterator<Map.Entry<String, JsonNode>> fields = patternProperties.fields(); fields.hasNext(); i++) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    node.patternKeys[i] = pattern(field.getKey());
+                    node.patternNodes[i] = compile(field.getValue());
+                }
+            }
+            JsonNode additionalProperties = schema.get("additionalProperties");
+            if (additionalProperties != null) {
+                if (additionalProperties.isBoolean()) {
+                    node.closed = !additionalProperties.booleanValue();
+                } else {
+                    node.additionalProperties = compile(additionalProperties);
+                }
+            }
+            JsonNode required = schema.get("required");
+            if (required != null && required.isArray() && !required.isEmpty()) {
+                node.required = new String[required.size()];
+                for (int i = 0; i < required.size(); i++) {
+                    node.required[i] = required.get(i).asText();
+                }
+            }
+            node.minProperties = schema.path("minProperties").asInt(0);
+            node.maxProperties = schema.path("maxProperties").asInt(Integer.MAX_VALUE);
+
+            JsonNode prefixItems = schema.get("prefixItems");
+            JsonNode items = schema.get("items");
+            if (prefixItems != null && prefixItems.isArray()) {
+                node.prefixItems = compileAll(prefixItems);
+            } else if (items != null && items.isArray()) {
+                // Before 2020-12, an array of item schemas was a tuple
+                node.prefixItems = compileAll(items);
+                items = schema.get("additionalItems");
+            }
+            if (items != null && !items.isArray()) {
+                node.items = compile(items);
+            }
+            node.minItems = schema.path("minItems").asInt(0);
+            node.maxItems = schema.path("maxItems").asInt(Integer.MAX_VALUE);
+            node.uniqueItems = schema.path("uniqueItems").asBoolean(false);
+
+            node.allOf = compileAll(schema.get("allOf"));
+            node.anyOf = compileAll(schema.get("anyOf"));
+            node.oneOf = compileAll(schema.get("oneOf"));
+            if (schema.has("not")) {
+                node.not = compile(schema.get("not"));
+            }
+            return node;
+        }
+
+        private Node[] compileAll(JsonNode schemas) {
+            if (schemas == null || !schemas.isArray() || schemas.isEmpty()) {
+                return null;
+            }
+            Node[] nodes = new Node[schemas.size()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = compile(schemas.get(i));
+            }
+            return nodes;
+        }
+
+        private static void compileType(Node node, JsonNode type) {
+            if (type == null) {
+                return;
+            }
+            StringJoiner names = new StringJoiner(" or ");
+            for (JsonNode name : type.isArray() ? type : List.of(type)) {
+                node.types |= switch (name.asText()) {
+                    case "null" -> NULL;
+                    case "boolean" -> BOOLEAN;
+                    case "object" -> OBJECT;
+                    case "array" -> ARRAY;
+                    case "number" -> NUMBER;
+                    case "integer" -> INTEGER;
+                    case "string" -> STRING;
+                    default -> throw new IllegalArgumentException("Unknown type: " + name.asText());
+                };
+                names.add(name.asText());
+            }
+            node.typeMessage = "must be " + (type.isArray() ? "one of " : "") + names;
+        }
+
+        private static void compileEnum(Node node, JsonNode values) {
+            if (values == null || !values.isArray()) {
+                return;
+            }
+            boolean allText = true;
+            Set<JsonNode> set = new HashSet<>();
+            for (JsonNode value : values) {
+                set.add(value);
+                allText &= value.isTextual();
+            }
+            if (allText) {
+                Set<String> text = new HashSet<>();
+                set.forEach(value -> text.add(value.textValue()));
+                node.stringEnum = Set.copyOf(text);
+            } else {
+                node.valueEnum = Set.copyOf(set);
+            }
+            node.enumMessage = "must be one of " + values;
+        }
+
+        /**
+         * The characters allowed by a pattern of the form {@code ^[...]+$} or
+         * {@code ^[...]*$} whose class holds only ASCII letters, digits,
+         * ranges of them and punctuation other than {@code \}, {@code ^}
+         * and {@code [}, or {@code null} for any other pattern.
+         */
+        private static boolean[] characterClass(String regex) {
+            if (!regex.startsWith("^[") || !(regex.endsWith("]+$") || regex.endsWith("]*$")) || regex.length() < 6) {
+                return null;
+            }
+            String members = regex.substring(2, regex.length() - 3);
+            boolean[] chars = new boolean[128];
+            for (int i = 0; i < members.length(); i++) {
+                char c = members.charAt(i);
+                if (c >= 128 || c == '\\' || c == '^' || c == '[' || c == ']' || c == '&') {
+                    return null;
+                }
+                // A dash between two characters is a range; first or last it is itself
+                if (i + 2 < members.length() && members.charAt(i + 1) == '-') {
+                    char end = members.charAt(i + 2);
+                    if (end >= 128 || end < c || end == '\\' || end == ']') {
+                        return null;
+                    }
+                    for (char member = c; member <= end; member++) {
+                        chars[member] = true;
+                    }
+                    i += 2;
+                } else {
+                    chars[c] = true;
+                }
+            }
+            return chars;
+        }
+
+        private static double number(JsonNode schema, String keyword) {
+            JsonNode value = schema.get(keyword);
+            return value != null && value.isNumber() ? value.doubleValue() : Double.NaN;
+        }
+
+        private static Pattern pattern(String regex) {
+            try {
+                return Pattern.compile(ecmaAnchors(regex));
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Invalid pattern in schema: " + regex, e);
+            }
+        }
+
+        /**
+         * Rewrites each {@code $} anchor as {@code \z}. In Java {@code $} also
+         * matches before a final line terminator, which an ECMA-262 pattern
+         * without the multiline flag does not.
+         */
+        private static String ecmaAnchors(String regex) {
+            if (regex.indexOf('$') < 0) {
+                return regex;
+            }
+            StringBuilder rewritten = new StringBuilder(regex.length() + 4);
+            boolean inClass = false;
+            for (int i = 0; i < regex.length(); i++) {
+                char c = regex.charAt(i);
+                if (c == '\\' && i + 1 < regex.length()) {
+                    rewritten.append(c).append(regex.charAt(++i));
+                } else if (inClass) {
+                    inClass = c != ']';
+                    rewritten.append(c);
+                } else if (c == '[') {
+                    inClass = true;
+                    rewritten.append(c);
+                } else if (c == '$') {
+                    rewritten.append("\\z");
+                } else {
+                    rewritten.append(c);
+                }
+            }
+            return rewritten.toString();
+        }
+    }
+}
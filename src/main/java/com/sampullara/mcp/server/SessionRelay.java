@@ -0,0 +1,67 @@
+package com.sampullara.mcp.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Connects the server processes that share the sessions of one deployment.
+ * Each process is a node with its own id, and every session id it hands out
+ * starts with that id, so any process can tell which node owns a session. A
+ * {@code /message} POST that lands on a process that does not own its session
+ * is forwarded over the relay as the raw request body and answered with
+ * whatever the owner replies.
+ *
+ * <p>{@link MappedRingRelay} links processes on one host through shared
+ * memory. A relay across hosts only has to carry the same bytes over the
+ * network, and may override {@link #ownerOf} if it keeps a real directory of
+ * sessions instead of relying on the id prefix.
+ */
+public interface SessionRelay extends Closeable {
+    /** Separates the owning node from the rest of a session id. */
+    char NODE_SEPARATOR = '.';
+
+    /**
+     * Answers a request body forwarded from another node.
+     */
+    @FunctionalInterface
+    interface Handler {
+        /**
+         * @return the encoded response, or {@code null} if the request is
+         *         answered with {@code 202 Accepted}
+         */
+        byte[] handle(byte[] body) throws IOException;
+    }
+
+    /**
+     * The owner of a session is not, or is no longer, part of the group.
+     */
+    class UnknownNodeException extends IOException {
+        public UnknownNodeException(String nodeId) {
+            super("Unknown node: " + nodeId);
+        }
+    }
+
+    String nodeId();
+
+    /**
+     * Joins the group and starts answering requests forwarded to this node.
+     */
+    void start(Handler handler) throws IOException;
+
+    /**
+     * Sends a request body to {@code nodeId}. The future completes with the
+     * owner's reply, {@code null} for {@code 202 Accepted}, or exceptionally
+     * with {@link UnknownNodeException} if there is no such node.
+     */
+    CompletableFuture<byte[]> forward(String nodeId, byte[] body);
+
+    /**
+     * The node that owns {@code sessionId}, or {@code null} if the id does not
+     * name one.
+     */
+    default String ownerOf(String sessionId) {
+        int separator = sessionId.indexOf(NODE_SEPARATOR);
+        return separator <= 0 ? null : sessionId.substring(0, separator);
+    }
+}
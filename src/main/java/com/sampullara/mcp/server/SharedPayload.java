@@ -0,0 +1,34 @@
+package com.sampullara.mcp.server;
+
+/**
+ * An encoded result member that is shared by many responses, such as a
+ * registry's list payload. Its deflated form is built the first time a client
+ * asks for a compressed response and then reused, so each compressed response
+ * only costs a checksum pass instead of a fresh deflate.
+ */
+public final class SharedPayload {
+    private final byte[] bytes;
+    private volatile byte[] deflated;
+
+    public SharedPayload(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * Raw deflate blocks for {@link #bytes()}, ending on a byte boundary
+     * without a final block, so they can be spliced into any deflate stream.
+     * Racing threads may both build it; the results are identical.
+     */
+    byte[] deflated() {
+        byte[] result = deflated;
+        if (result == null) {
+            result = ContentCoding.deflateFragment(bytes);
+            deflated = result;
+        }
+        return result;
+    }
+}
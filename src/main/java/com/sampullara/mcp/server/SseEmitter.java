@@ -1,97 +1,668 @@
 package com.sampullara.mcp.server;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.CountDownLatch;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sampullara.mcp.server.McpServerConfig.SseOverflowPolicy;
+
+/**
+ * Server-sent events stream for one session. Producers never touch the output
+ * stream: {@link #emit} encodes the frame and enqueues it on a lock-free queue,
+ * and a single virtual-thread writer drains everything queued so far into one
+ * buffered write and one flush. The writer only exists while there is work to
+ * do, so an idle stream holds no thread of its own.
+ *
+ * <p>A session's emitter is created with an {@link SseReplayBuffer}. Its
+ * events are then numbered and retained, and the emitter outlives any single
+ * connection: when a write fails it detaches, keeps numbering and retaining
+ * events, and a later {@link #attach} replays the ones the client missed
+ * before carrying on. Replay is ordered with live events because the attach
+ * itself goes through the queue and is handled by the writer.
+ *
+ * <p>The queue is bounded by {@link Limits}. A client that stops reading
+ * stalls only this stream's writer; producers never wait for it. Once the
+ * queue goes over its limits the overflow policy drops or coalesces queued
+ * notifications, frames emitted with a key, or ends the session with an
+ * {@code error} event. Frames without a key, such as responses, are never
+ * dropped.
+ */
 public class SseEmitter {
-    private final CountDownLatch latch = new CountDownLatch(1);
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final Queue<Frame> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final McpMetrics metrics;
+    // Only touched by the thread that currently owns the draining flag
+    private final ByteArrayOutputStream batch = new ByteArrayOutputStream(8192);
+    private boolean released;
     private volatile OutputStream outputStream;
-    private final Object outputStreamLock = new Object();
     private volatile boolean closed = false;
+    private volatile long lastWriteNanos = System.nanoTime();
+    private volatile HashedTimerWheel.Timeout keepAlive;
+    private final SseReplayBuffer replay;
+    private final AtomicInteger generation = new AtomicInteger();
+    private final Limits limits;
+    private final AtomicInteger queuedEvents = new AtomicInteger();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    // Latest queued frame per key, for the COALESCE policy
+    private final Map<String, Frame> queuedByKey = new ConcurrentHashMap<>();
+    private final AtomicBoolean closing = new AtomicBoolean();
+    private volatile Thread writer;
+    // Zero unless the writer is inside a write
+    private volatile long writeStartedNanos;
+    // Held to start or end a write and to interrupt one, so an abort only ever lands on the write it was meant for
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // The end of the current connection; only replaced by the writer
+    private volatile CompletableFuture<Void> connection = new CompletableFuture<>();
+
+    /**
+     * A frame to write, or, if {@code attach} is set, a switch to a new
+     * connection. Frames with a {@code key} may be dropped by the overflow
+     * policy.
+     */
+    private record Frame(byte[] bytes, CompletableFuture<Void> written, boolean numbered, String key, Runnable onDequeue,
+            Attach attach) {}
+
+    private record Attach(OutputStream out, long afterSequence, CompletableFuture<Void> ended) {}
+
+    public SseEmitter() {
+        this(new McpMetrics());
+    }
+
+    public SseEmitter(McpMetrics metrics) {
+        this(metrics, null, Limits.UNBOUNDED);
+    }
+
+    /**
+     * @param replay numbers and retains events so the stream can be resumed,
+     *               or {@code null} for a stream that ends with its connection
+     * @param limits bounds on what may be queued for a client that is not
+     *               keeping up
+     */
+    public SseEmitter(McpMetrics metrics, SseReplayBuffer replay, Limits limits) {
+        this.metrics = metrics;
+        this.replay = replay;
+        this.limits = limits;
+    }
+
+    /**
+     * Bounds on the frames queued for one stream, and what to do when they
+     * are exceeded.
+     */
+    public record Limits(int maxQueuedEvents, long maxQueuedBytes, SseOverflowPolicy overflowPolicy) {
+        public static final Limits UNBOUNDED = new Limits(Integer.MAX_VALUE, Long.MAX_VALUE, SseOverflowPolicy.DISCONNECT);
+
+        public static Limits of(McpServerConfig config) {
+            return new Limits(config.sseMaxQueuedEvents(), config.sseMaxQueuedBytes(), config.sseOverflowPolicy());
+        }
+    }
 
     public void setOutputStream(OutputStream outputStream) {
         this.outputStream = outputStream;
     }
 
-    public void emit(String event, String data) throws IOException {
+    /**
+     * Attaches the pending keep-alive timer for this stream so that it is
+     * cancelled as soon as the emitter completes.
+     */
+    public void setKeepAlive(HashedTimerWheel.Timeout keepAlive) {
+        this.keepAlive = keepAlive;
         if (closed) {
+            keepAlive.cancel();
+        }
+    }
+
+    /**
+     * Sends {@code frame} as a transient event whenever nothing has been
+     * written for {@code intervalNanos}, until the emitter completes. Besides
+     * keeping proxies from timing the stream out, this is how a client that
+     * has gone away is noticed while nothing else is being sent.
+     */
+    public void keepAlive(HashedTimerWheel timerWheel, byte[] frame, long intervalNanos) {
+        scheduleKeepAlive(timerWheel, frame, intervalNanos, intervalNanos);
+    }
+
+    private void scheduleKeepAlive(HashedTimerWheel timerWheel, byte[] frame, long intervalNanos, long delayNanos) {
+        setKeepAlive(timerWheel.schedule(() -> {
+            if (closed) {
+                return;
+            }
+            // Skip the ping if real traffic went out within the interval
+            long idle = System.nanoTime() - lastWriteNanos;
+            if (idle < intervalNanos) {
+                scheduleKeepAlive(timerWheel, frame, intervalNanos, intervalNanos - idle);
+                return;
+            }
+            try {
+                emitTransientFrame(frame, "ping");
+                scheduleKeepAlive(timerWheel, frame, intervalNanos, intervalNanos);
+            } catch (IOException e) {
+                // Stream is closed; whoever is waiting on it cleans up
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * {@link System#nanoTime()} of the last successful flush to the client.
+     */
+    public long lastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    /**
+     * Queues an event for delivery. The returned future completes once the
+     * frame has been flushed to the client, or exceptionally if the stream
+     * fails or closes first.
+     */
+    public CompletableFuture<Void> emit(String event, String data) throws IOException {
+        checkOpen();
+        return enqueue(frame(event, data), true, null);
+    }
+
+    /**
+     * Queues an event whose data is generated as JSON straight into the
+     * frame, with no intermediate string.
+     */
+    public CompletableFuture<Void> emit(String event, SseFrameEncoder.JsonWriter data) throws IOException {
+        checkOpen();
+        return enqueue(SseFrameEncoder.frame(event, data), true, null);
+    }
+
+    public CompletableFuture<Void> emit(String event, JsonNode data) throws IOException {
+        return emit(event, generator -> generator.writeTree(data));
+    }
+
+    /**
+     * Queues an event carrying a JSON-RPC response, encoded straight into the
+     * frame.
+     */
+    public CompletableFuture<Void> emit(String event, JsonRpcResponse response) throws IOException {
+        checkOpen();
+        return enqueue(SseFrameEncoder.frame(event, response), true, null);
+    }
+
+    /**
+     * Queues an event that is neither numbered nor kept for replay, such as a
+     * keep-alive ping. It is dropped if the stream is detached, and counts as
+     * a notification keyed by its event name.
+     */
+    public CompletableFuture<Void> emitTransient(String event, String data) throws IOException {
+        return emitTransientFrame(frame(event, data), event);
+    }
+
+    /**
+     * Queues a prebuilt transient frame, such as a ping that is encoded once
+     * and sent to every stream.
+     */
+    public CompletableFuture<Void> emitTransientFrame(byte[] frame, String key) throws IOException {
+        checkOpen();
+        return enqueue(frame, false, key);
+    }
+
+    /**
+     * Queues a frame built by {@link #frame}. The same array may be handed to
+     * any number of emitters; it is never modified.
+     */
+    public CompletableFuture<Void> emitFrame(byte[] frame) throws IOException {
+        return emitFrame(frame, null);
+    }
+
+    /**
+     * Queues a notification frame that the overflow policy may drop. A newer
+     * frame with the same {@code key} supersedes it. A dropped frame's future
+     * completes normally without it being written.
+     */
+    public CompletableFuture<Void> emitFrame(byte[] frame, String key) throws IOException {
+        return emitFrame(frame, key, null);
+    }
+
+    /**
+     * Like {@link #emitFrame(byte[], String)}, running {@code onDequeue} as
+     * soon as the frame leaves the queue, whether the writer took it or it was
+     * dropped. Anything that happens after that needs a frame of its own.
+     */
+    public CompletableFuture<Void> emitFrame(byte[] frame, String key, Runnable onDequeue) throws IOException {
+        checkOpen();
+        return enqueue(frame, true, key, onDequeue);
+    }
+
+    /**
+     * Encodes one event as an SSE frame, for fanning the same bytes out to
+     * many streams without encoding the event once per stream.
+     */
+    public static byte[] frame(String event, String data) {
+        return SseFrameEncoder.frame(event, data);
+    }
+
+    public CompletableFuture<Void> emitError(String errorMessage) throws IOException {
+        return emit("error", errorMessage);
+    }
+
+    public CompletableFuture<Void> emitRetry(int milliseconds) throws IOException {
+        checkOpen();
+        return enqueue(("retry: " + milliseconds + "\n\n").getBytes(StandardCharsets.UTF_8), false, null);
+    }
+
+    /**
+     * Switches the stream to a new connection and first sends it every
+     * retained event after {@code afterSequence}. Any previous connection is
+     * closed. If those events are no longer all retained the emitter
+     * completes instead, so the client starts over with a new session.
+     *
+     * @return completes when this connection ends, whether it fails, is
+     *         replaced by a later attach or the emitter completes
+     */
+    public CompletableFuture<Void> attach(OutputStream out, long afterSequence) throws IOException {
+        if (closed || closing.get()) {
             throw new IOException("SSE connection is closed");
         }
-        
-        if (outputStream == null) {
-            throw new IllegalStateException("OutputStream not set");
+        generation.incrementAndGet();
+        CompletableFuture<Void> ended = new CompletableFuture<>();
+        queue.offer(new Frame(null, new CompletableFuture<>(), false, null, null, new Attach(out, afterSequence, ended)));
+        metrics.sseQueued(1);
+        startDrain();
+        return ended;
+    }
+
+    /**
+     * Counts {@link #attach} calls, so a cleanup scheduled for one connection
+     * can tell whether the client has come back since.
+     */
+    public int generation() {
+        return generation.get();
+    }
+
+    /**
+     * Whether a client that saw events up to {@code sequence} can pick up
+     * where it left off.
+     */
+    public boolean canResumeAfter(long sequence) {
+        return replay != null && !closed && replay.canReplayAfter(sequence);
+    }
+
+    public SseReplayBuffer replayBuffer() {
+        return replay;
+    }
+
+    /**
+     * Aborts the write in progress if it has been blocked for longer than
+     * {@code timeoutNanos}, because the client stopped reading. The stream
+     * then fails as if the connection had dropped.
+     *
+     * @return whether a write was aborted
+     */
+    public boolean abortIfStalled(long nowNanos, long timeoutNanos) {
+        writeLock.lock();
+        try {
+            long started = writeStartedNanos;
+            if (started == 0 || nowNanos - started < timeoutNanos) {
+                return false;
+            }
+            metrics.sseWriteTimedOut();
+            abortWrite();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void abortWrite() {
+        writeLock.lock();
+        try {
+            if (writeStartedNanos != 0) {
+                // Blocking socket writes give up on interrupt, closing the channel
+                writer.interrupt();
+            }
+        } finally {
+            writeLock.unlock();
         }
+    }
 
-        // Format the SSE message according to the SSE specification
-        StringBuilder message = new StringBuilder();
-        if (event != null && !event.isEmpty()) {
-            message.append("event: ").append(event).append("\n");
+    private void startWrite() {
+        writeLock.lock();
+        try {
+            writeStartedNanos = System.nanoTime();
+        } finally {
+            writeLock.unlock();
         }
-        
-        // Split data by newlines and prefix each line with "data: "
-        String[] lines = data.split("\n");
-        for (String line : lines) {
-            message.append("data: ").append(line).append("\n");
+    }
+
+    /**
+     * Marks the write over. An abort either interrupted it before this, and
+     * the interrupt is cleared here, or sees no write and does nothing.
+     */
+    private void endWrite() {
+        writeLock.lock();
+        try {
+            writeStartedNanos = 0;
+            Thread.interrupted();
+        } finally {
+            writeLock.unlock();
         }
-        message.append("\n"); // Empty line to terminate the message
+    }
 
-        // Write the message to the output stream
-        synchronized (outputStreamLock) {
-            try {
-                outputStream.write(message.toString().getBytes(StandardCharsets.UTF_8));
-                outputStream.flush();
-            } catch (IOException e) {
-                closed = true;
-                throw e;
+    private void checkOpen() throws IOException {
+        if (closed || closing.get()) {
+            throw new IOException("SSE connection is closed");
+        }
+
+        if (outputStream == null && replay == null) {
+            throw new IllegalStateException("OutputStream not set");
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(byte[] bytes, boolean numbered, String key) {
+        return enqueue(bytes, numbered, key, null);
+    }
+
+    private CompletableFuture<Void> enqueue(byte[] bytes, boolean numbered, String key, Runnable onDequeue) {
+        Frame frame = new Frame(bytes, new CompletableFuture<>(), numbered, key, onDequeue, null);
+        Frame superseded = key != null && limits.overflowPolicy() == SseOverflowPolicy.COALESCE
+                ? queuedByKey.put(key, frame) : null;
+        offer(frame);
+        if (overLimits()) {
+            overflow(superseded);
+        }
+        startDrain();
+        return frame.written();
+    }
+
+    private void offer(Frame frame) {
+        queuedEvents.incrementAndGet();
+        queuedBytes.addAndGet(frame.bytes().length);
+        queue.offer(frame);
+        metrics.sseQueued(1);
+    }
+
+    private boolean overLimits() {
+        return queuedEvents.get() > limits.maxQueuedEvents() || queuedBytes.get() > limits.maxQueuedBytes();
+    }
+
+    private void overflow(Frame superseded) {
+        switch (limits.overflowPolicy()) {
+            case COALESCE -> {
+                if (superseded != null && unqueue(superseded)) {
+                    metrics.sseCoalesced();
+                    superseded.written().complete(null);
+                }
+            }
+            case DROP_OLDEST -> {
+                for (Frame queued : queue) {
+                    if (!overLimits()) {
+                        break;
+                    }
+                    if (queued.key() != null && unqueue(queued)) {
+                        metrics.sseDropped();
+                        queued.written().complete(null);
+                    }
+                }
             }
+            case DISCONNECT -> {
+            }
+        }
+        if (overLimits()) {
+            disconnect();
         }
     }
 
-    public void emitError(String errorMessage) throws IOException {
-        emit("error", errorMessage);
+    /**
+     * Takes a frame back out of the queue, unless the writer got to it first.
+     */
+    private boolean unqueue(Frame frame) {
+        if (!queue.remove(frame)) {
+            return false;
+        }
+        metrics.sseQueued(-1);
+        dequeued(frame);
+        return true;
+    }
+
+    private void dequeued(Frame frame) {
+        queuedEvents.decrementAndGet();
+        queuedBytes.addAndGet(-frame.bytes().length);
+        if (frame.key() != null) {
+            queuedByKey.remove(frame.key(), frame);
+        }
+        if (frame.onDequeue() != null) {
+            frame.onDequeue().run();
+        }
+    }
+
+    /**
+     * Ends a stream whose client cannot keep up: nothing more is accepted, an
+     * {@code error} event goes out after what is already queued, and the
+     * emitter completes once it is written or fails. A write that is blocked
+     * on the client is aborted rather than waited for.
+     */
+    private void disconnect() {
+        if (!closing.compareAndSet(false, true)) {
+            return;
+        }
+        metrics.sseOverflowDisconnect();
+        Frame error = new Frame(frame("error", "{\"message\": \"Client is not keeping up with the event stream\"}"),
+                new CompletableFuture<>(), false, null, null, null);
+        error.written().whenComplete((_, _) -> complete());
+        offer(error);
+        abortWrite();
     }
 
-    public void emitRetry(int milliseconds) throws IOException {
+    private void startDrain() {
+        if (draining.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("mcp-sse-writer").start(this::drain);
+        }
+    }
+
+    /**
+     * Runs while holding the draining flag. Once the emitter is closed the
+     * holder releases the replay buffer and fails whatever is queued, so that
+     * nothing is appended to the buffer after it has been cleared.
+     */
+    private void drain() {
+        List<Frame> frames = new ArrayList<>();
+        do {
+            if (closed) {
+                release();
+                draining.set(false);
+                continue;
+            }
+            writer = Thread.currentThread();
+            Frame frame;
+            int polled = 0;
+            while (!closed && (frame = queue.poll()) != null) {
+                polled++;
+                if (frame.attach() != null) {
+                    // Everything before the switch belongs to the old connection
+                    write(frames);
+                    frames.clear();
+                    switchTo(frame.attach());
+                    continue;
+                }
+                dequeued(frame);
+                byte[] idLine = replay != null && frame.numbered() && !closed ? replay.append(frame.bytes()) : null;
+                if (outputStream == null) {
+                    // Detached: numbered frames wait in the replay buffer for the client to return
+                    if (idLine != null) {
+                        frame.written().complete(null);
+                    } else {
+                        frame.written().completeExceptionally(new IOException("SSE stream is detached"));
+                    }
+                    continue;
+                }
+                if (idLine != null) {
+                    SseReplayBuffer.writeNumbered(batch, idLine, frame.bytes());
+                } else {
+                    batch.writeBytes(frame.bytes());
+                }
+                frames.add(frame);
+            }
+            metrics.sseQueued(-polled);
+            write(frames);
+            frames.clear();
+            draining.set(false);
+            // A producer may have enqueued, or the emitter completed, after the last poll but before the flag was
+            // cleared
+        } while ((!queue.isEmpty() || closed && !released) && draining.compareAndSet(false, true));
+    }
+
+    private void switchTo(Attach attach) {
         if (closed) {
-            throw new IOException("SSE connection is closed");
+            closeQuietly(attach.out());
+            attach.ended().complete(null);
+            return;
         }
-        
-        if (outputStream == null) {
-            throw new IllegalStateException("OutputStream not set");
+        OutputStream previous = outputStream;
+        if (previous != null) {
+            closeQuietly(previous);
+            connection.complete(null);
+        }
+        connection = attach.ended();
+        outputStream = attach.out();
+        if (replay != null) {
+            if (!replay.canReplayAfter(attach.afterSequence())) {
+                complete();
+                return;
+            }
+            replay.replayAfter(attach.afterSequence(), batch);
         }
+        write(List.of());
+    }
 
-        synchronized (outputStreamLock) {
-            try {
-                String message = "retry: " + milliseconds + "\n\n";
-                outputStream.write(message.getBytes(StandardCharsets.UTF_8));
-                outputStream.flush();
-            } catch (IOException e) {
-                closed = true;
-                throw e;
+    /**
+     * Writes and flushes the batch. Frames were already numbered and retained
+     * for replay, so on failure a resumable stream only detaches.
+     */
+    private void write(List<Frame> frames) {
+        if (batch.size() == 0) {
+            return;
+        }
+        try {
+            if (closed) {
+                throw new IOException("SSE connection is closed");
+            }
+            startWrite();
+            batch.writeTo(outputStream);
+            outputStream.flush();
+            lastWriteNanos = System.nanoTime();
+            metrics.sseWritten(frames.size(), batch.size());
+            frames.forEach(frame -> frame.written().complete(null));
+        } catch (IOException e) {
+            metrics.sseWriteFailed();
+            if (replay != null && !closed) {
+                frames.forEach(frame -> {
+                    if (frame.numbered()) {
+                        frame.written().complete(null);
+                    } else {
+                        frame.written().completeExceptionally(e);
+                    }
+                });
+                detach();
+            } else {
+                frames.forEach(frame -> frame.written().completeExceptionally(e));
+                complete();
             }
+        } finally {
+            endWrite();
+            batch.reset();
+        }
+    }
+
+    private void detach() {
+        OutputStream previous = outputStream;
+        outputStream = null;
+        closeQuietly(previous);
+        connection.complete(null);
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // The connection is already broken
         }
     }
 
     public void complete() {
         closed = true;
-        if (outputStream != null) {
+        HashedTimerWheel.Timeout timeout = keepAlive;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        OutputStream out = outputStream;
+        if (out != null) {
             try {
-                outputStream.close();
+                out.close();
             } catch (IOException e) {
                 // Log error but don't throw as we're closing anyway
                 System.err.println("Error closing SSE connection: " + e.getMessage());
             }
         }
-        latch.countDown();
+        // The writer may be appending to the replay buffer; whoever holds the draining flag releases it
+        if (draining.compareAndSet(false, true)) {
+            drain();
+        }
+    }
+
+    /**
+     * Clears the replay buffer and fails everything still queued, then tells
+     * whatever is waiting on the emitter that it has ended. Only called by
+     * the holder of the draining flag once the emitter is closed.
+     */
+    private void release() {
+        if (!released) {
+            released = true;
+            // Released before anything waiting on this emitter is told it has ended
+            if (replay != null) {
+                replay.clear();
+            }
+        }
+        Frame frame;
+        while ((frame = queue.poll()) != null) {
+            metrics.sseQueued(-1);
+            if (frame.attach() != null) {
+                closeQuietly(frame.attach().out());
+                frame.attach().ended().complete(null);
+            } else {
+                dequeued(frame);
+                frame.written().completeExceptionally(new IOException("SSE connection is closed"));
+            }
+        }
+        connection.complete(null);
+        completion.complete(null);
     }
 
     public void await() throws InterruptedException {
-        latch.await();
+        try {
+            completion.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Runs {@code action} once the stream completes, or right away if it
+     * already has. Used instead of {@link #await} when the transport keeps the
+     * stream open without a thread.
+     */
+    public void onComplete(Runnable action) {
+        completion.thenRun(action);
     }
 
     public boolean isClosed() {
         return closed;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,226 @@
+package com.sampullara.mcp.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Encodes server-sent event frames without building the payload as a string
+ * first. JSON is generated straight into a pooled buffer, and the
+ * {@code data: } prefix is inserted in the byte stream after every line
+ * break as it is written, so the only allocation per frame is the finished
+ * frame itself, which the emitter queues and may keep for replay.
+ *
+ * <p>Encoders, each a growable buffer with a Jackson generator bound to it,
+ * are kept in a small lock-free pool rather than in thread locals, since
+ * most callers run on short-lived virtual threads.
+ */
+public final class SseFrameEncoder {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final byte[] EVENT = "event: ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DATA = "data: ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LINE_BREAK = "\ndata: ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] END = "\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final int INITIAL_BUFFER = 1024;
+    // Buffers that grew past this for one large event are not pooled
+    private static final int MAX_POOLED_BUFFER = 64 * 1024;
+    private static final AtomicReferenceArray<Encoder> POOL =
+            new AtomicReferenceArray<>(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    /**
+     * Writes one event's data as JSON.
+     */
+    @FunctionalInterface
+    public interface JsonWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private SseFrameEncoder() {
+    }
+
+    /**
+     * Encodes an event whose data is written by {@code data} through a JSON
+     * generator.
+     */
+    public static byte[] frame(String event, JsonWriter data) {
+        Encoder encoder = acquire();
+        try {
+            encoder.begin(event);
+            data.write(encoder.generator);
+            encoder.generator.flush();
+            byte[] frame = encoder.end();
+            release(encoder);
+            return frame;
+        } catch (IOException e) {
+            // The generator may be left mid-value, so this encoder is not pooled again
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encodes an event whose data is already-encoded JSON, or any other text
+     * in UTF-8.
+     */
+    public static byte[] frame(String event, byte[] data) {
+        Encoder encoder = acquire();
+        encoder.begin(event);
+        encoder.write(data, 0, trimmedLength(data));
+        byte[] frame = encoder.end();
+        release(encoder);
+        return frame;
+    }
+
+    /**
+     * Encodes an event whose data is a JSON-RPC response, written straight
+     * from its envelope and member.
+     */
+    public static byte[] frame(String event, JsonRpcResponse response) {
+        Encoder encoder = acquire();
+        try {
+            encoder.begin(event);
+            response.writeTo(encoder);
+            byte[] frame = encoder.end();
+            release(encoder);
+            return frame;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encodes an event with string data. Each line becomes its own
+     * {@code data:} field; trailing line breaks are dropped.
+     */
+    public static byte[] frame(String event, String data) {
+        int length = data.length();
+        while (length > 0 && data.charAt(length - 1) == '\n') {
+            length--;
+        }
+        Encoder encoder = acquire();
+        try {
+            encoder.begin(event);
+            // The generator encodes the characters as UTF-8 straight into the buffer
+            encoder.generator.writeRaw(data, 0, length);
+            encoder.generator.flush();
+            byte[] frame = encoder.end();
+            release(encoder);
+            return frame;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int trimmedLength(byte[] data) {
+        int length = data.length;
+        while (length > 0 && data[length - 1] == '\n') {
+            length--;
+        }
+        return length;
+    }
+
+    private static Encoder acquire() {
+        for (int i = 0; i < POOL.length(); i++) {
+            Encoder encoder = POOL.getAndSet(i, null);
+            if (encoder != null) {
+                return encoder;
+            }
+        }
+        return new Encoder();
+    }
+
+    private static void release(Encoder encoder) {
+        if (encoder.buffer.length > MAX_POOLED_BUFFER) {
+            return;
+        }
+        for (int i = 0; i < POOL.length(); i++) {
+            if (POOL.compareAndSet(i, null, encoder)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * A growable buffer that turns every line break written to it into a
+     * line break followed by a {@code data: } prefix.
+     */
+    private static final class Encoder extends OutputStream {
+        private final JsonGenerator generator;
+        private byte[] buffer = new byte[INITIAL_BUFFER];
+        private int size;
+
+        Encoder() {
+            try {
+                generator = MAPPER.getFactory().createGenerator(this);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // Values are written one per frame, with nothing between them
+            generator.setRootValueSeparator(null);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        void begin(String event) {
+            size = 0;
+            if (event != null && !event.isEmpty()) {
+                append(EVENT, 0, EVENT.length);
+                for (int i = 0; i < event.length(); i++) {
+                    // Event names are ASCII tokens
+                    append((byte) event.charAt(i));
+                }
+                append((byte) '\n');
+            }
+            append(DATA, 0, DATA.length);
+        }
+
+        byte[] end() {
+            append(END, 0, END.length);
+            return Arrays.copyOf(buffer, size);
+        }
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                append(LINE_BREAK, 0, LINE_BREAK.length);
+            } else {
+                append((byte) b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            int end = off + len;
+            int start = off;
+            for (int i = off; i < end; i++) {
+                if (b[i] == '\n') {
+                    append(b, start, i - start);
+                    append(LINE_BREAK, 0, LINE_BREAK.length);
+                    start = i + 1;
+                }
+            }
+            append(b, start, end - start);
+        }
+
+        private void append(byte b) {
+            ensureCapacity(1);
+            buffer[size++] = b;
+        }
+
+        private void append(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buffer, size, len);
+            size += len;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+}
@@ -1,17 +1,54 @@
 package com.sampullara.mcp.server;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import com.sampullara.mcp.server.McpSessionManager.McpSession;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
+/**
+ * Serves the SSE stream of the {@code /sse} + {@code /message} transport. A
+ * GET opens a new session, unless it carries a {@code Last-Event-ID} from a
+ * session that is still within its reconnect grace period: then the stream is
+ * reattached to that session and only the events the client missed are sent.
+ */
 public class SseHandler implements HttpHandler {
     private final McpSessionManager sessionManager;
+    private final HashedTimerWheel timerWheel;
+    private final boolean detachStreams;
+    private final long reconnectGraceNanos;
     private static final int KEEP_ALIVE_INTERVAL = 30000; // 30 seconds
+    private static final long KEEP_ALIVE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(KEEP_ALIVE_INTERVAL);
+    // Every ping is the same, so it is encoded once
+    private static final byte[] PING_FRAME = SseEmitter.frame("ping", "{}");
 
-    public SseHandler(McpSessionManager sessionManager) {
+    public SseHandler(McpSessionManager sessionManager, HashedTimerWheel timerWheel) {
+        this(sessionManager, timerWheel, false);
+    }
+
+    public SseHandler(McpSessionManager sessionManager, HashedTimerWheel timerWheel, boolean detachStreams) {
+        this(sessionManager, timerWheel, detachStreams, new McpServerConfig().sseReconnectGrace());
+    }
+
+    /**
+     * @param detachStreams  return as soon as the stream is set up and clean up
+     *                       when the connection ends, instead of parking the
+     *                       handler thread for the life of the stream; only for
+     *                       transports that {@linkplain McpTransport#supportsDetachedStreams() support it}
+     * @param reconnectGrace how long a session waits for its client to
+     *                       reconnect after the stream drops
+     */
+    public SseHandler(McpSessionManager sessionManager, HashedTimerWheel timerWheel, boolean detachStreams,
+                      Duration reconnectGrace) {
         this.sessionManager = sessionManager;
+        this.timerWheel = timerWheel;
+        this.detachStreams = detachStreams;
+        this.reconnectGraceNanos = reconnectGrace.toNanos();
     }
 
     @Override
@@ -22,70 +59,119 @@ public class SseHandler implements HttpHandler {
             return;
         }
 
+        // Pick up an existing session where the client left off, if we still can
+        SseReplayBuffer.LastEventId lastEventId =
+                SseReplayBuffer.parse(exchange.getRequestHeaders().getFirst("Last-Event-ID"));
+        McpSession session = lastEventId == null ? null : resumableSession(lastEventId);
+        boolean resumed = session != null;
+
+        // Otherwise create a new session, turning the client away quickly if we are at capacity
+        if (!resumed) {
+            session = sessionManager.createSession();
+        }
+        if (session == null) {
+            try (exchange) {
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf(KEEP_ALIVE_INTERVAL / 1000));
+                exchange.sendResponseHeaders(503, -1);
+            }
+            return;
+        }
+
         // Set SSE headers
         exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
         exchange.getResponseHeaders().add("Cache-Control", "no-cache, no-transform");
         exchange.getResponseHeaders().add("Connection", "keep-alive");
         exchange.getResponseHeaders().add("X-Accel-Buffering", "no");
-        
-        // Create new session
-        var session = sessionManager.createSession();
-        
-        // Set up the SSE emitter with the response output stream
-        session.emitter().setOutputStream(exchange.getResponseBody());
+
+        // Compress with one context for the whole stream; each batch the emitter flushes is sync-flushed
+        ContentCoding coding = ContentCoding.negotiate(exchange);
+        exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+        if (coding != null) {
+            exchange.getResponseHeaders().add("Content-Encoding", coding.token());
+        }
 
         // Send response headers to start the SSE stream
         exchange.sendResponseHeaders(200, 0);
 
-        // Start keep-alive timer
-        CompletableFuture<Void> keepAlive = startKeepAlive(session.emitter());
-
+        // Attach the stream; a resumed session first replays what the client missed
+        SseEmitter emitter = session.emitter();
+        OutputStream out = coding == null ? exchange.getResponseBody() : coding.wrap(exchange.getResponseBody());
+        CompletableFuture<Void> connection;
         try {
-            // Send initial connection message with session ID
-            session.emitter().emit("connected", String.format("{\"sessionId\": \"%s\"}", session.id()));
-            
-            // Send initial retry interval
-            session.emitter().emitRetry(KEEP_ALIVE_INTERVAL);
-            
-            // Keep connection open until client disconnects or session expires
-            session.emitter().await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            try {
-                session.emitter().emitError("Connection interrupted");
-            } catch (IOException ignored) {
-                // Ignore as we're closing anyway
-            }
+            connection = emitter.attach(out, resumed ? lastEventId.sequence() : 0);
         } catch (IOException e) {
-            System.err.println("Error sending SSE message: " + e.getMessage());
+            // Removed while we were setting up
+            exchange.close();
+            return;
+        }
+        int generation = emitter.generation();
+        session.touch();
+
+        if (!resumed) {
+            // Start keep-alive timer; it is cancelled when the emitter completes
+            emitter.keepAlive(timerWheel, PING_FRAME, KEEP_ALIVE_INTERVAL_NANOS);
             try {
-                session.emitter().emitError("Internal server error");
-            } catch (IOException ignored) {
-                // Ignore as we're closing anyway
+                // Send initial connection message with session ID, then the retry interval
+                String sessionId = session.id();
+                emitter.emit("connected", generator -> {
+                    generator.writeStartObject();
+                    generator.writeStringField("sessionId", sessionId);
+                    generator.writeEndObject();
+                });
+                emitter.emitRetry(KEEP_ALIVE_INTERVAL);
+            } catch (IOException e) {
+                System.err.println("Error sending SSE message: " + e.getMessage());
             }
+        }
+
+        McpSession attached = session;
+        if (detachStreams) {
+            connection.whenComplete((_, _) -> connectionEnded(exchange, attached, generation));
+            return;
+        }
+
+        // Keep connection open until client disconnects or session expires
+        try {
+            connection.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            emitter.complete();
+        } catch (ExecutionException e) {
+            System.err.println("Error in SSE stream: " + e.getCause().getMessage());
         } finally {
-            try (exchange) {
-                keepAlive.cancel(true);
-                session.emitter().complete();
-                sessionManager.removeSession(session.id());
-            }
+            connectionEnded(exchange, attached, generation);
         }
     }
 
-    private CompletableFuture<Void> startKeepAlive(SseEmitter emitter) {
-        return CompletableFuture.runAsync(() -> {
-            while (!emitter.isClosed()) {
-                try {
-                    //noinspection BusyWait
-                    Thread.sleep(KEEP_ALIVE_INTERVAL);
-                    emitter.emit("ping", "{}");
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                } catch (IOException e) {
-                    break;
-                }
+    private McpSession resumableSession(SseReplayBuffer.LastEventId lastEventId) {
+        McpSession session = sessionManager.getSession(lastEventId.sessionId());
+        if (session == null) {
+            return null;
+        }
+        if (!session.emitter().canResumeAfter(lastEventId.sequence())) {
+            // Events the client never saw are gone; it has to start over
+            sessionManager.removeSession(session.id());
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Closes the exchange of a connection that has ended. The session itself
+     * stays for the reconnect grace period unless it was closed for good; if
+     * the client has not reattached by then it is removed.
+     */
+    private void connectionEnded(HttpExchange exchange, McpSession session, int generation) {
+        exchange.close();
+        SseEmitter emitter = session.emitter();
+        if (emitter.isClosed() || timerWheel == null) {
+            sessionManager.removeSession(session.id());
+            return;
+        }
+        timerWheel.schedule(() -> {
+            if (emitter.generation() == generation) {
+                sessionManager.removeSession(session.id());
             }
-        });
+        }, reconnectGraceNanos, TimeUnit.NANOSECONDS);
     }
 }
@@ -0,0 +1,163 @@
+package com.sampullara.mcp.server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Numbers the events of one session's stream and keeps the most recent ones
+ * so a client that reconnects with {@code Last-Event-ID} can be sent exactly
+ * the events it missed.
+ *
+ * <p>Event ids have the form {@code <sessionId>:<sequence>}, so the id alone
+ * identifies the session to resume. The buffer holds references to the
+ * encoded frames rather than copies: a frame fanned out to many sessions is
+ * kept once on the heap however many buffers retain it. Each buffer is capped
+ * at its own byte limit and all buffers share a {@link Budget}; a buffer that
+ * appends while the budget is exhausted evicts its own oldest events, always
+ * keeping the newest one.
+ */
+public class SseReplayBuffer {
+    // Deque node, id line and array headers, roughly
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final String sessionId;
+    private final String idPrefix;
+    private final int maxBytes;
+    private final Budget budget;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private long nextSequence = 1;
+    private long bytes;
+
+    private record Entry(long sequence, byte[] idLine, byte[] frame) {
+        int size() {
+            return idLine.length + frame.length + ENTRY_OVERHEAD;
+        }
+    }
+
+    /**
+     * Byte budget shared by every replay buffer of a server.
+     */
+    public static final class Budget {
+        private final long maxBytes;
+        private final AtomicLong used = new AtomicLong();
+
+        public Budget(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        public long used() {
+            return used.get();
+        }
+
+        boolean exhausted() {
+            return used.get() > maxBytes;
+        }
+    }
+
+    public record LastEventId(String sessionId, long sequence) {}
+
+    public SseReplayBuffer(String sessionId, int maxBytes, Budget budget) {
+        this.sessionId = sessionId;
+        this.idPrefix = "id: " + sessionId + ":";
+        this.maxBytes = maxBytes;
+        this.budget = budget;
+    }
+
+    /**
+     * Splits a {@code Last-Event-ID} into the session id and the sequence of
+     * the last event the client saw, or returns {@code null} if it was not
+     * issued by a replay buffer.
+     */
+    public static LastEventId parse(String lastEventId) {
+        if (lastEventId == null) {
+            return null;
+        }
+        int colon = lastEventId.lastIndexOf(':');
+        if (colon <= 0) {
+            return null;
+        }
+        try {
+            long sequence = Long.parseLong(lastEventId.substring(colon + 1).trim());
+            return sequence < 0 ? null : new LastEventId(lastEventId.substring(0, colon).trim(), sequence);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public String sessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Numbers a frame and retains it. Returns the {@code id:} line to write
+     * with it.
+     */
+    synchronized byte[] append(byte[] frame) {
+        long sequence = nextSequence++;
+        Entry entry = new Entry(sequence, (idPrefix + sequence + "\n").getBytes(StandardCharsets.UTF_8), frame);
+        entries.addLast(entry);
+        bytes += entry.size();
+        budget.used.addAndGet(entry.size());
+        while (entries.size() > 1 && (bytes > maxBytes || budget.exhausted())) {
+            evict(entries.removeFirst());
+        }
+        return entry.idLine();
+    }
+
+    /**
+     * Whether every event after {@code sequence} is still held.
+     */
+    public synchronized boolean canReplayAfter(long sequence) {
+        if (sequence >= nextSequence) {
+            return false;
+        }
+        return entries.isEmpty() ? sequence == nextSequence - 1 : sequence >= entries.peekFirst().sequence() - 1;
+    }
+
+    /**
+     * Writes every retained event after {@code sequence}, with its id line.
+     * Returns the number of events written.
+     */
+    synchronized int replayAfter(long sequence, ByteArrayOutputStream out) {
+        int replayed = 0;
+        for (Entry entry : entries) {
+            if (entry.sequence() > sequence) {
+                writeNumbered(out, entry.idLine(), entry.frame());
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Writes a frame with its {@code id:} line as the last field, just before
+     * the blank line that ends the event, so the frame's own fields still
+     * come first.
+     */
+    static void writeNumbered(ByteArrayOutputStream out, byte[] idLine, byte[] frame) {
+        out.write(frame, 0, frame.length - 1);
+        out.writeBytes(idLine);
+        out.write('\n');
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Drops everything and returns its bytes to the budget, once the session
+     * is gone for good.
+     */
+    synchronized void clear() {
+        while (!entries.isEmpty()) {
+            evict(entries.removeFirst());
+        }
+    }
+
+    private void evict(Entry entry) {
+        bytes -= entry.size();
+        budget.used.addAndGet(-entry.size());
+    }
+}
@@ -0,0 +1,234 @@
+package com.sampullara.mcp.server;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Phaser;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sampullara.mcp.server.MessageHandler.ErrorCode;
+
+/**
+ * Newline-delimited JSON-RPC over stdin/stdout, for servers launched as a
+ * subprocess of their client. It carries messages without HTTP, so it sits
+ * beside {@link McpServer} rather than under {@link McpTransport}, but it
+ * dispatches through the same {@link MessageHandler#call}.
+ *
+ * <p>Input is read through a channel into one reusable buffer and split by
+ * scanning the raw bytes for {@code '\n'}; each line is decoded in place
+ * without being turned into a {@code String}. Every message runs on its own
+ * executor task so slow calls never hold up fast ones; the calls of a batch
+ * run concurrently, as batches posted over HTTP do. Responses are
+ * written in completion order by a single writer thread that flushes once per
+ * burst of finished responses. The whole stream is one client, identified by
+ * {@link #SESSION_ID} for tool cancellation.
+ */
+public class StdioTransport {
+    public static final String SESSION_ID = "stdio";
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final Outgoing END = new Outgoing(List.of(), false);
+
+    private final MessageHandler messageHandler;
+    private final JsonRpcDecoder decoder;
+    private final McpServerConfig config;
+    private final ExecutorService executor;
+    private final BlockingQueue<Outgoing> outgoing = new LinkedBlockingQueue<>();
+    private final Phaser inFlight = new Phaser(1);
+
+    private record Outgoing(List<JsonRpcResponse> responses, boolean batch) {}
+
+    public StdioTransport(MessageHandler messageHandler, ObjectMapper objectMapper, McpServerConfig config,
+                          ExecutorService executor) {
+        this.messageHandler = messageHandler;
+        this.decoder = new JsonRpcDecoder(objectMapper);
+        this.config = config;
+        this.executor = executor;
+    }
+
+    /**
+     * Serves the process's stdin and stdout until stdin is closed.
+     */
+    public void run() throws IOException, InterruptedException {
+        run(new FileInputStream(FileDescriptor.in).getChannel(), new FileOutputStream(FileDescriptor.out));
+    }
+
+    /**
+     * Serves messages from {@code in} until end of stream, then waits for the
+     * calls still running and flushes their responses before returning.
+     */
+    public void run(ReadableByteChannel in, OutputStream out) throws IOException, InterruptedException {
+        Thread writer = Thread.ofPlatform().name("mcp-stdio-writer").daemon().start(() -> writeLoop(out));
+        try {
+            readLoop(in);
+        } finally {
+            inFlight.arriveAndAwaitAdvance();
+            outgoing.add(END);
+            writer.join();
+        }
+    }
+
+    private void readLoop(ReadableByteChannel in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        // Bytes before this offset are known not to contain a newline
+        int scanned = 0;
+        boolean discarding = false;
+        while (in.read(buffer) >= 0) {
+            byte[] data = buffer.array();
+            int end = buffer.position();
+            int lineStart = 0;
+            for (int i = scanned; i < end; i++) {
+                if (data[i] == '\n') {
+                    if (!discarding) {
+                        handleLine(data, lineStart, i - lineStart);
+                    }
+                    discarding = false;
+                    lineStart = i + 1;
+                }
+            }
+            buffer.flip().position(lineStart);
+            buffer.compact();
+            scanned = buffer.position();
+
+            if (!buffer.hasRemaining()) {
+                if (discarding || buffer.capacity() >= config.maxRequestBytes()) {
+                    // Drop the rest of an oversized line and answer it once
+                    if (!discarding) {
+                        enqueue(messageHandler.error(null, ErrorCode.INVALID_REQUEST, "Message too large"));
+                    }
+                    discarding = true;
+                    buffer.clear();
+                    scanned = 0;
+                } else {
+                    ByteBuffer grown = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, config.maxRequestBytes()));
+                    buffer = grown.put(buffer.flip());
+                }
+            }
+        }
+        if (buffer.position() > 0 && !discarding) {
+            handleLine(buffer.array(), 0, buffer.position());
+        }
+    }
+
+    private void handleLine(byte[] data, int offset, int length) {
+        while (length > 0 && Character.isWhitespace(data[offset + length - 1])) {
+            length--;
+        }
+        if (length == 0) {
+            return;
+        }
+
+        JsonRpcDecoder.Decoded decoded;
+        try {
+            decoded = decoder.decode(data, offset, length, config.maxBatchSize());
+        } catch (JsonProcessingException e) {
+            enqueue(messageHandler.error(null, ErrorCode.PARSE_ERROR, "Invalid JSON"));
+            return;
+        } catch (IOException e) {
+            enqueue(messageHandler.error(null, ErrorCode.INTERNAL_ERROR, "Internal error: " + e.getMessage()));
+            return;
+        }
+
+        List<JsonRpcRequest> requests = decoded.requests();
+        if (decoded.batch() && requests.isEmpty()) {
+            enqueue(messageHandler.error(null, ErrorCode.INVALID_REQUEST, "Empty batch"));
+            return;
+        }
+        if (requests.size() > config.maxBatchSize()) {
+            enqueue(messageHandler.error(null, ErrorCode.INVALID_REQUEST,
+                    "Batch exceeds " + config.maxBatchSize() + " requests"));
+            return;
+        }
+
+        // The stream, not the body, says which client this is
+        List<JsonRpcRequest> calls = new ArrayList<>(requests.size());
+        for (JsonRpcRequest request : requests) {
+            calls.add(new JsonRpcRequest(request.jsonrpc(), request.method(), request.id(), SESSION_ID,
+                    request.params()));
+        }
+
+        inFlight.register();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (!decoded.batch()) {
+                        JsonRpcResponse response = messageHandler.call(calls.getFirst(), SESSION_ID, _ -> {});
+                        if (response != null) {
+                            enqueue(response);
+                        }
+                        return;
+                    }
+                    List<JsonRpcResponse> responses;
+                    try {
+                        responses = messageHandler.callBatch(calls, SESSION_ID);
+                    } catch (IOException e) {
+                        enqueue(messageHandler.error(null, ErrorCode.INTERNAL_ERROR,
+                                "Internal error: " + e.getMessage()));
+                        return;
+                    }
+                    if (!responses.isEmpty()) {
+                        outgoing.add(new Outgoing(responses, true));
+                    }
+                } finally {
+                    inFlight.arriveAndDeregister();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.arriveAndDeregister();
+            throw e;
+        }
+    }
+
+    private void enqueue(JsonRpcResponse response) {
+        outgoing.add(new Outgoing(List.of(response), false));
+    }
+
+    private void writeLoop(OutputStream out) {
+        BufferedOutputStream buffered = new BufferedOutputStream(out, WRITE_BUFFER_SIZE);
+        try {
+            while (true) {
+                Outgoing next = outgoing.take();
+                // Everything that finished while we were writing goes out with one flush
+                while (next != null && next != END) {
+                    write(buffered, next);
+                    next = outgoing.poll();
+                }
+                buffered.flush();
+                if (next == END) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to stdout: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void write(OutputStream out, Outgoing message) throws IOException {
+        if (message.batch()) {
+            out.write('[');
+        }
+        for (int i = 0; i < message.responses().size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            message.responses().get(i).writeTo(out);
+        }
+        if (message.batch()) {
+            out.write(']');
+        }
+        out.write('\n');
+    }
+}
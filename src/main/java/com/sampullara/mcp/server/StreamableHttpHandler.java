@@ -0,0 +1,365 @@
+package com.sampullara.mcp.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sampullara.mcp.server.MessageHandler.ErrorCode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * The single-endpoint "streamable HTTP" mode. Each POST carries one message
+ * or batch and is answered on its own response: with plain JSON when the call
+ * finishes quickly, or, if the client accepts {@code text/event-stream}, by
+ * upgrading the response to an event stream that carries progress
+ * notifications and then the result.
+ *
+ * <p>Clients never hold a GET open, so an idle client costs nothing. The
+ * {@value #SESSION_HEADER} header scopes tool cancellation and the per-session
+ * rate limits. Ids are issued by the server and signed with a key of its own,
+ * so one client cannot pick another's id: a client that sends no id, or one
+ * the server did not issue, is assigned a fresh id in the response and rate
+ * limited by its address until it uses it. Apart from the rate limit buckets
+ * of recently active clients, nothing is kept per session on the server.
+ *
+ * <p>An upgraded stream gets a keep-alive comment whenever it has been quiet
+ * for {@link #KEEP_ALIVE_INTERVAL_NANOS}, so a client that has gone away is
+ * noticed, and its call cancelled, even while the call reports nothing.
+ */
+public class StreamableHttpHandler implements HttpHandler {
+    public static final String SESSION_HEADER = "Mcp-Session-Id";
+    private static final long KEEP_ALIVE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // A comment rather than an event, so clients that only expect messages skip it
+    private static final byte[] KEEP_ALIVE_FRAME = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final int NONCE_BYTES = 16;
+    private static final int SIGNATURE_BYTES = 16;
+
+    private final MessageHandler messageHandler;
+    private final JsonRpcDecoder decoder;
+    private final McpServerConfig config;
+    private final ExecutorService executor;
+    private final McpMetrics metrics;
+    private final HashedTimerWheel timerWheel;
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKeySpec sessionKey;
+
+    public StreamableHttpHandler(MessageHandler messageHandler, ObjectMapper objectMapper, McpServerConfig config,
+                                 ExecutorService executor, McpMetrics metrics, HashedTimerWheel timerWheel) {
+        this.messageHandler = messageHandler;
+        this.decoder = new JsonRpcDecoder(objectMapper);
+        this.config = config;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.timerWheel = timerWheel;
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        this.sessionKey = new SecretKeySpec(key, "HmacSHA256");
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            try (exchange) {
+                exchange.getResponseHeaders().add("Allow", "POST");
+                exchange.sendResponseHeaders(405, -1);
+            }
+            return;
+        }
+
+        String sessionId = exchange.getRequestHeaders().getFirst(SESSION_HEADER);
+        String client;
+        if (sessionId == null || !isIssued(sessionId)) {
+            sessionId = issueSessionId();
+            // A fresh id per request would be a fresh rate limit per request
+            client = "address " + exchange.getRemoteAddress().getAddress().getHostAddress();
+        } else {
+            client = "session " + sessionId;
+        }
+        exchange.getResponseHeaders().set(SESSION_HEADER, sessionId);
+
+        JsonRpcDecoder.Decoded decoded;
+        long parseStart = System.nanoTime();
+        try (InputStream body = exchange.getRequestBody()) {
+            decoded = decoder.decode(body, config.maxBatchSize());
+            metrics.parseLatency().recordSince(parseStart);
+        } catch (JsonProcessingException e) {
+            sendResponse(exchange, messageHandler.error(null, ErrorCode.PARSE_ERROR, "Invalid JSON"));
+            return;
+        }
+
+        // The header, not the body, says which client this is
+        List<JsonRpcRequest> requests = new ArrayList<>(decoded.requests().size());
+        for (JsonRpcRequest request : decoded.requests()) {
+            requests.add(new JsonRpcRequest(request.jsonrpc(), request.method(), request.id(), sessionId,
+                    request.params()));
+        }
+
+        if (!decoded.batch()) {
+            JsonRpcRequest request = requests.getFirst();
+            if (request.isNotification() || !acceptsEventStream(exchange)) {
+                sendResponse(exchange, messageHandler.call(request, client, _ -> {}));
+            } else {
+                callStreaming(exchange, request, client);
+            }
+            return;
+        }
+
+        if (requests.isEmpty()) {
+            sendResponse(exchange, messageHandler.error(null, ErrorCode.INVALID_REQUEST, "Empty batch"));
+            return;
+        }
+        if (requests.size() > config.maxBatchSize()) {
+            sendResponse(exchange, messageHandler.error(null, ErrorCode.INVALID_REQUEST,
+                    "Batch exceeds " + config.maxBatchSize() + " requests"));
+            return;
+        }
+
+        List<JsonRpcResponse> responses = messageHandler.callBatch(requests, client);
+        if (responses.isEmpty()) {
+            sendAccepted(exchange);
+            return;
+        }
+        long start = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('[');
+        for (int i = 0; i < responses.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            responses.get(i).writeTo(out);
+        }
+        out.write(']');
+        ContentCoding coding = ContentCoding.negotiate(exchange);
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (coding != null && out.size() >= config.compressionMinBytes()) {
+            sendJson(exchange, coding.encode(out.toByteArray()), coding);
+        } else {
+            sendJson(exchange, out.toByteArray(), null);
+        }
+        metrics.serializeLatency().recordSince(start);
+    }
+
+    /**
+     * A new session id: a random nonce followed by its signature, both
+     * base64url-encoded.
+     */
+    private String issueSessionId() {
+        byte[] nonce = new byte[NONCE_BYTES];
+        random.nextBytes(nonce);
+        return sessionId(nonce);
+    }
+
+    /**
+     * Whether {@code sessionId} was issued by this server. It has to match
+     * exactly, not just decode to the same bytes, so that a client has one
+     * id and one set of rate limits.
+     */
+    private boolean isIssued(String sessionId) {
+        int nonceChars = (NONCE_BYTES * 4 + 2) / 3;
+        if (sessionId.length() != nonceChars + (SIGNATURE_BYTES * 4 + 2) / 3) {
+            return false;
+        }
+        byte[] nonce;
+        try {
+            nonce = Base64.getUrlDecoder().decode(sessionId.substring(0, nonceChars));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return MessageDigest.isEqual(sessionId(nonce).getBytes(StandardCharsets.US_ASCII),
+                sessionId.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private String sessionId(byte[] nonce) {
+        byte[] signature;
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(sessionKey);
+            signature = Arrays.copyOf(mac.doFinal(nonce), SIGNATURE_BYTES);
+        } catch (GeneralSecurityException e) {
+            // Every JDK ships HmacSHA256
+            throw new IllegalStateException(e);
+        }
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(nonce) + encoder.encodeToString(signature);
+    }
+
+    private static boolean acceptsEventStream(HttpExchange exchange) {
+        List<String> accept = exchange.getRequestHeaders().get("Accept");
+        return accept != null && accept.stream().anyMatch(value -> value.contains("text/event-stream"));
+    }
+
+    /**
+     * Runs the call in the background and gives it {@link
+     * McpServerConfig#streamUpgradeDelay()} to finish. If it does, and has not
+     * reported progress, the result goes back as plain JSON; otherwise the
+     * response becomes an event stream.
+     */
+    private void callStreaming(HttpExchange exchange, JsonRpcRequest request, String client) throws IOException {
+        Upgrade upgrade = new Upgrade();
+        CompletableFuture<JsonRpcResponse> result = CompletableFuture.supplyAsync(
+                () -> messageHandler.call(request, client, upgrade::notification), executor);
+        try {
+            CompletableFuture.anyOf(result, upgrade.firstNotification)
+                    .get(config.streamUpgradeDelay().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Still running: stream it
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            messageHandler.cancelCall(request.sessionId(), request.id());
+            exchange.close();
+            return;
+        } catch (ExecutionException e) {
+            // Surfaced below when the result is joined
+        }
+
+        SseEmitter emitter = upgrade.start(exchange, result);
+        if (emitter == null) {
+            sendResponse(exchange, result.join());
+            return;
+        }
+        emitter.keepAlive(timerWheel, KEEP_ALIVE_FRAME, KEEP_ALIVE_INTERVAL_NANOS);
+
+        // A client that goes away before the result cancels the call
+        emitter.onComplete(() -> {
+            if (!result.isDone()) {
+                messageHandler.cancelCall(request.sessionId(), request.id());
+            }
+        });
+        try {
+            JsonRpcResponse response = result.join();
+            CompletableFuture<Void> written;
+            try {
+                written = emitter.emit("message", response);
+            } catch (UncheckedIOException e) {
+                // A streamed result failed part way; send an error in its place
+                written = emitter.emit("message", messageHandler.error(response.id(), ErrorCode.INTERNAL_ERROR,
+                        "Internal error: " + e.getCause().getMessage()));
+            }
+            written.get();
+        } catch (IOException | ExecutionException e) {
+            // The stream is already closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            emitter.complete();
+            exchange.close();
+        }
+    }
+
+    /**
+     * Holds notifications that arrive before the response is committed and
+     * forwards the rest straight to the stream once it is.
+     */
+    private final class Upgrade {
+        final CompletableFuture<Void> firstNotification = new CompletableFuture<>();
+        private final List<byte[]> buffered = new ArrayList<>();
+        private SseEmitter emitter;
+
+        synchronized void notification(byte[] message) {
+            if (emitter == null) {
+                buffered.add(message);
+                firstNotification.complete(null);
+                return;
+            }
+            try {
+                emitter.emitFrame(SseFrameEncoder.frame("message", message));
+            } catch (IOException e) {
+                // The client is gone; the completion hook cancels the call
+            }
+        }
+
+        /**
+         * Commits the response as an event stream and replays the buffered
+         * notifications, or returns {@code null} if the call finished without
+         * any and can be answered inline.
+         */
+        synchronized SseEmitter start(HttpExchange exchange, CompletableFuture<JsonRpcResponse> result)
+                throws IOException {
+            if (result.isDone() && buffered.isEmpty()) {
+                return null;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache, no-transform");
+            exchange.getResponseHeaders().set("X-Accel-Buffering", "no");
+            ContentCoding coding = ContentCoding.negotiate(exchange);
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+            if (coding != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", coding.token());
+            }
+            emitter = new SseEmitter(metrics, null, SseEmitter.Limits.of(config));
+            emitter.setOutputStream(coding == null ? exchange.getResponseBody() : coding.wrap(exchange.getResponseBody()));
+            exchange.sendResponseHeaders(200, 0);
+            for (byte[] message : buffered) {
+                emitter.emitFrame(SseFrameEncoder.frame("message", message));
+            }
+            buffered.clear();
+            return emitter;
+        }
+    }
+
+    private void sendResponse(HttpExchange exchange, JsonRpcResponse response) throws IOException {
+        if (response == null) {
+            sendAccepted(exchange);
+            return;
+        }
+        long start = System.nanoTime();
+        ContentCoding coding = ContentCoding.negotiate(exchange);
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (response instanceof JsonRpcResponse.Encoded encoded) {
+            if (coding != null && encoded.member().length >= config.compressionMinBytes()) {
+                sendJson(exchange, coding.encode(response), coding);
+            } else {
+                sendJson(exchange, response.toByteArray(), null);
+            }
+        } else {
+            try (exchange) {
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                if (coding != null) {
+                    exchange.getResponseHeaders().set("Content-Encoding", coding.token());
+                }
+                exchange.sendResponseHeaders(200, 0);
+                try (var out = coding == null ? exchange.getResponseBody() : coding.wrap(exchange.getResponseBody())) {
+                    response.writeTo(out);
+                }
+            }
+        }
+        metrics.serializeLatency().recordSince(start);
+    }
+
+    private static void sendAccepted(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.sendResponseHeaders(202, -1);
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, byte[] body, ContentCoding coding) throws IOException {
+        try (exchange) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            if (coding != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", coding.token());
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+}
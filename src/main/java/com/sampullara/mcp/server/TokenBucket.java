@@ -0,0 +1,52 @@
+package com.sampullara.mcp.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket. Rather than a token count and a refill timestamp,
+ * which would have to be updated together, it keeps a single value: the time
+ * at which the bucket will next be full (the generic cell rate algorithm).
+ * Taking a token pushes that time one interval further out, and is refused
+ * if it would land more than {@code burst} intervals in the future, so one
+ * compare-and-set decides each request.
+ */
+public class TokenBucket {
+    private final long intervalNanos;
+    private final long burstNanos;
+    // When the bucket is full again; anything earlier than now means it already is
+    private final AtomicLong fullAt;
+
+    /**
+     * @param permitsPerSecond sustained rate
+     * @param burst            tokens that can be taken at once after the bucket
+     *                         has been idle
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0) || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive: " + permitsPerSecond + ", " + burst);
+        }
+        this.intervalNanos = Math.max(1, (long) (1e9 / permitsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+        this.fullAt = new AtomicLong(System.nanoTime() - burstNanos);
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @return 0 if a token was taken, otherwise how many nanoseconds until
+     *         the next one will be
+     */
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            long overdraft = next - nowNanos - burstNanos;
+            if (overdraft > 0) {
+                return overdraft;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
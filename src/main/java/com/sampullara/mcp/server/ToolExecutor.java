@@ -0,0 +1,181 @@
+package com.sampullara.mcp.server;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Runs tool calls on the server's virtual-thread executor. Calls are admitted
+ * against a global and a per-tool concurrency limit without queueing, bounded
+ * by a deadline, and can be cancelled individually or for a whole session.
+ * Permits are held until the tool body actually returns, so handlers that
+ * ignore interruption still count against the limits.
+ */
+public class ToolExecutor {
+    private final ExecutorService executor;
+    private final Semaphore globalPermits;
+    private final int maxCallsPerTool;
+    private final long timeoutNanos;
+    private final Map<String, Semaphore> toolPermits = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Call>> inFlight = new ConcurrentHashMap<>();
+
+    private static final class Call {
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final Runnable release;
+        private volatile boolean cancelled;
+        private volatile Future<JsonNode> future;
+
+        private Call(Runnable release) {
+            this.release = release;
+        }
+
+        void cancel() {
+            cancelled = true;
+            Future<JsonNode> submitted = future;
+            if (submitted != null) {
+                submitted.cancel(true);
+            }
+            // If the body never ran it will not release its permits itself
+            if (started.compareAndSet(false, true)) {
+                release.run();
+            }
+        }
+    }
+
+    /**
+     * Thrown when a session starts a call with the request id of one it
+     * already has in flight.
+     */
+    public static final class DuplicateRequestException extends Exception {
+        public DuplicateRequestException(String requestId) {
+            super("Request ID " + requestId + " is already in use");
+        }
+    }
+
+    public ToolExecutor(McpServerConfig config, ExecutorService executor) {
+        this.executor = executor;
+        this.globalPermits = new Semaphore(config.maxConcurrentToolCalls());
+        this.maxCallsPerTool = config.maxConcurrentCallsPerTool();
+        this.timeoutNanos = config.toolCallTimeout().toNanos();
+    }
+
+    /**
+     * Runs a tool call and waits for its result.
+     *
+     * @throws RejectedExecutionException if a concurrency limit is reached
+     * @throws DuplicateRequestException if the session already has a call with this request id in flight
+     * @throws TimeoutException if the call does not finish before its deadline
+     * @throws CancellationException if the call was cancelled by the client
+     * @throws ExecutionException if the tool itself failed
+     */
+    public JsonNode execute(String sessionId, String requestId, String toolName, ToolHandler handler, JsonNode arguments)
+            throws ExecutionException, TimeoutException, InterruptedException, DuplicateRequestException {
+        return execute(sessionId, requestId, toolName, handler, arguments, ToolProgress.NONE);
+    }
+
+    /**
+     * Runs a tool call that may report progress through {@code progress}.
+     *
+     * @see #execute(String, String, String, ToolHandler, JsonNode)
+     */
+    public JsonNode execute(String sessionId, String requestId, String toolName, ToolHandler handler, JsonNode arguments,
+                            ToolProgress progress)
+            throws ExecutionException, TimeoutException, InterruptedException, DuplicateRequestException {
+        Semaphore permits = toolPermits.computeIfAbsent(toolName, _ -> new Semaphore(maxCallsPerTool));
+        if (!globalPermits.tryAcquire()) {
+            throw new RejectedExecutionException("Server is at its tool call limit");
+        }
+        if (!permits.tryAcquire()) {
+            globalPermits.release();
+            throw new RejectedExecutionException("Tool " + toolName + " is at its concurrency limit");
+        }
+
+        Call call = new Call(() -> {
+            permits.release();
+            globalPermits.release();
+        });
+        // Track the call before it starts so a cancellation can never miss it
+        if (sessionId != null && requestId != null) {
+            Map<String, Call> sessionCalls = inFlight.compute(sessionId, (_, calls) -> {
+                Map<String, Call> result = calls == null ? new ConcurrentHashMap<>() : calls;
+                result.putIfAbsent(requestId, call);
+                return result;
+            });
+            // Replacing the other call would leave it impossible to cancel
+            if (sessionCalls.get(requestId) != call) {
+                call.release.run();
+                throw new DuplicateRequestException(requestId);
+            }
+        }
+        try {
+            call.future = executor.submit(() -> {
+                if (!call.started.compareAndSet(false, true)) {
+                    return null;
+                }
+                try {
+                    return handler.call(arguments, progress);
+                } finally {
+                    call.release.run();
+                }
+            });
+            if (call.cancelled) {
+                call.future.cancel(true);
+            }
+        } catch (RejectedExecutionException e) {
+            untrack(sessionId, requestId, call);
+            call.release.run();
+            throw e;
+        }
+
+        try {
+            return call.future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | InterruptedException e) {
+            call.cancel();
+            throw e;
+        } finally {
+            untrack(sessionId, requestId, call);
+        }
+    }
+
+    private void untrack(String sessionId, String requestId, Call call) {
+        if (sessionId != null && requestId != null) {
+            inFlight.computeIfPresent(sessionId, (_, calls) -> {
+                calls.remove(requestId, call);
+                return calls.isEmpty() ? null : calls;
+            });
+        }
+    }
+
+    /**
+     * Cancels one in-flight call, as requested by {@code notifications/cancelled}.
+     */
+    public boolean cancel(String sessionId, String requestId) {
+        Map<String, Call> sessionCalls = inFlight.get(sessionId);
+        Call call = sessionCalls == null ? null : sessionCalls.get(requestId);
+        if (call == null) {
+            return false;
+        }
+        call.cancel();
+        return true;
+    }
+
+    /**
+     * Cancels every in-flight call of a session whose stream has gone away.
+     */
+    public void cancelSession(String sessionId) {
+        Map<String, Call> sessionCalls = inFlight.remove(sessionId);
+        if (sessionCalls != null) {
+            sessionCalls.values().forEach(Call::cancel);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.sampullara.mcp.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Implementation behind a registered {@link MessageHandler.Tool}. Calls run on
+ * their own virtual thread and are interrupted when they time out or are
+ * cancelled, so long-running handlers should respond to interruption.
+ */
+@FunctionalInterface
+public interface ToolHandler {
+    /**
+     * Runs the tool and returns the {@code tools/call} result object, e.g.
+     * {@code {"content": [{"type": "text", "text": "..."}]}}. Any exception is
+     * reported to the client as a tool error result.
+     */
+    JsonNode call(JsonNode arguments) throws Exception;
+
+    /**
+     * Runs the tool with a way to report progress. Handlers that do not report
+     * progress only need to implement {@link #call(JsonNode)}.
+     */
+    default JsonNode call(JsonNode arguments, ToolProgress progress) throws Exception {
+        return call(arguments);
+    }
+
+    /**
+     * Body of a tool that reports progress, see {@link #withProgress}.
+     */
+    @FunctionalInterface
+    interface WithProgress {
+        JsonNode call(JsonNode arguments, ToolProgress progress) throws Exception;
+    }
+
+    /**
+     * Adapts a progress-reporting body to a {@link ToolHandler}.
+     */
+    static ToolHandler withProgress(WithProgress body) {
+        return new ToolHandler() {
+            @Override
+            public JsonNode call(JsonNode arguments) throws Exception {
+                return body.call(arguments, ToolProgress.NONE);
+            }
+
+            @Override
+            public JsonNode call(JsonNode arguments, ToolProgress progress) throws Exception {
+                return body.call(arguments, progress);
+            }
+        };
+    }
+}
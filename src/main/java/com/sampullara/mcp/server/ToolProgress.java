@@ -0,0 +1,19 @@
+package com.sampullara.mcp.server;
+
+/**
+ * Lets a running tool report how far along it is. Reports become
+ * {@code notifications/progress} messages when the client asked for them
+ * with a {@code progressToken} and the transport can deliver them before the
+ * result; otherwise they are dropped.
+ */
+@FunctionalInterface
+public interface ToolProgress {
+    ToolProgress NONE = (progress, total, message) -> {};
+
+    /**
+     * @param progress increasing amount of work done so far
+     * @param total    total amount of work, or {@code null} if unknown
+     * @param message  optional human-readable status, may be {@code null}
+     */
+    void report(double progress, Double total, String message);
+}
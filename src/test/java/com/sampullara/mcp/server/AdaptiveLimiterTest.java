@@ -0,0 +1,51 @@
+package com.sampullara.mcp.server;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveLimiterTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    void testRefusesOverLimitWithoutQueueing() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        limiter.release(FAST, false);
+        assertTrue(limiter.tryAcquire());
+        assertEquals(2, limiter.inFlight());
+    }
+
+    @Test
+    void testBacksOffOnSlowCallsAndRecovers() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(100);
+        // A wave of slow calls cuts the limit once, not once per call
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        for (int i = 0; i < 50; i++) {
+            limiter.release(SLOW, true);
+        }
+        assertEquals(90, limiter.limit());
+
+        // Calls within target grow it back while it is in use
+        int calls = 0;
+        while (limiter.limit() < 100) {
+            for (int i = 0; i < 60; i++) {
+                limiter.tryAcquire();
+            }
+            for (int i = 0; i < 60; i++) {
+                limiter.release(FAST, false);
+            }
+            calls += 60;
+        }
+        assertTrue(calls >= 900, "grew too fast: " + calls);
+        assertEquals(100, limiter.limit());
+    }
+}
@@ -0,0 +1,24 @@
+package com.sampullara.mcp.server;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+class ClientRateLimitsTest {
+    private static final McpServerConfig.RateLimit LIMIT = new McpServerConfig.RateLimit(1, 1);
+
+    @Test
+    void testLeastRecentlySeenClientIsForgottenAtCapacity() {
+        ClientRateLimits limits = new ClientRateLimits(new McpServerConfig().maxSessions(2));
+        TokenBucket a = limits.bucket("a", "", LIMIT);
+        TokenBucket b = limits.bucket("b", "", LIMIT);
+        assertSame(a, limits.bucket("a", "", LIMIT));
+
+        // b is the least recently seen, so c takes its place; nobody shares a bucket
+        TokenBucket c = limits.bucket("c", "", LIMIT);
+        assertNotSame(a, c);
+        assertNotSame(b, c);
+        assertSame(a, limits.bucket("a", "", LIMIT));
+        assertNotSame(b, limits.bucket("b", "", LIMIT));
+    }
+}
@@ -0,0 +1,79 @@
+package com.sampullara.mcp.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class ContentCodingTest {
+
+    @Test
+    void testNegotiation() {
+        assertNull(ContentCoding.negotiate((String) null));
+        assertNull(ContentCoding.negotiate("identity"));
+        assertNull(ContentCoding.negotiate("gzip;q=0, deflate;q=0"));
+        assertEquals(ContentCoding.GZIP, ContentCoding.negotiate("gzip, deflate, br"));
+        assertEquals(ContentCoding.DEFLATE, ContentCoding.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(ContentCoding.DEFLATE, ContentCoding.negotiate("gzip;q=0, *"));
+        assertEquals(ContentCoding.GZIP, ContentCoding.negotiate("*;q=0.1"));
+    }
+
+    @Test
+    void testSharedPayloadIsSplicedIntoEachResponse() throws IOException {
+        StringBuilder tools = new StringBuilder("{\"tools\":[");
+        for (int i = 0; i < 5000; i++) {
+            tools.append(i == 0 ? "" : ",").append("{\"name\":\"tool").append(i).append("\",\"inputSchema\":{}}");
+        }
+        SharedPayload payload = new SharedPayload(tools.append("]}").toString().getBytes(StandardCharsets.UTF_8));
+
+        for (String id : new String[]{"1", "a-much-longer-request-id"}) {
+            JsonRpcResponse response = JsonRpcResponse.ofResult(id, payload);
+            byte[] gzip = ContentCoding.GZIP.encode(response);
+            byte[] deflate = ContentCoding.DEFLATE.encode(response);
+            assertArrayEquals(response.toByteArray(), new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes());
+            assertArrayEquals(response.toByteArray(),
+                    new InflaterInputStream(new ByteArrayInputStream(deflate)).readAllBytes());
+            assertTrue(gzip.length < payload.bytes().length / 10);
+        }
+        // Built once and reused
+        assertSame(payload.deflated(), payload.deflated());
+    }
+
+    @Test
+    void testStreamFlushesEachBatch() throws Exception {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        OutputStream out = ContentCoding.DEFLATE.wrap(sink);
+        Inflater inflater = new Inflater();
+        byte[] buffer = new byte[4096];
+        for (int i = 0; i < 3; i++) {
+            byte[] event = ("event: message\ndata: {\"n\":" + i + "}\n\n").getBytes(StandardCharsets.UTF_8);
+            int before = sink.size();
+            out.write(event);
+            out.flush();
+            // Everything written so far can be decoded before the stream ends
+            byte[] flushed = sink.toByteArray();
+            inflater.setInput(flushed, before, flushed.length - before);
+            int n = inflater.inflate(buffer);
+            assertArrayEquals(event, Arrays.copyOf(buffer, n));
+        }
+        out.close();
+        inflater.end();
+
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(sink.toByteArray()))) {
+            assertTrue(new String(in.readAllBytes(), StandardCharsets.UTF_8).endsWith("{\"n\":2}\n\n"));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.sampullara.mcp.server;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class HashedTimerWheelTest {
+
+    @Test
+    void testTimeoutsFireAcrossRounds() throws InterruptedException {
+        try (HashedTimerWheel wheel = new HashedTimerWheel(5, TimeUnit.MILLISECONDS, 8)) {
+            CountDownLatch fired = new CountDownLatch(3);
+            long start = System.nanoTime();
+            wheel.schedule(fired::countDown, 0, TimeUnit.MILLISECONDS);
+            wheel.schedule(fired::countDown, 20, TimeUnit.MILLISECONDS);
+            // Longer than one rotation of the wheel (8 * 5ms)
+            wheel.schedule(fired::countDown, 100, TimeUnit.MILLISECONDS);
+
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        }
+    }
+
+    @Test
+    void testCancelledTimeoutDoesNotFire() throws InterruptedException {
+        try (HashedTimerWheel wheel = new HashedTimerWheel(5, TimeUnit.MILLISECONDS, 8)) {
+            AtomicInteger cancelledRuns = new AtomicInteger();
+            CountDownLatch fired = new CountDownLatch(1);
+            HashedTimerWheel.Timeout timeout = wheel.schedule(cancelledRuns::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+            wheel.schedule(fired::countDown, 60, TimeUnit.MILLISECONDS);
+
+            assertTrue(timeout.cancel());
+            assertFalse(timeout.cancel());
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+            assertEquals(0, cancelledRuns.get());
+        }
+    }
+}
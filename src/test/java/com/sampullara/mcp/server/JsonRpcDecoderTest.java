@@ -0,0 +1,99 @@
+package com.sampullara.mcp.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class JsonRpcDecoderTest {
+
+    private ObjectMapper objectMapper;
+    private JsonRpcDecoder decoder;
+
+    @BeforeEach
+    void setUp() {
+        objectMapper = new ObjectMapper();
+        decoder = new JsonRpcDecoder(objectMapper);
+    }
+
+    @Test
+    void testDecodeEnvelopeInAnyOrder() throws IOException {
+        JsonRpcRequest request = decode("""
+            {
+                "params": {"name": "echo", "arguments": {"text": "hi", "list": [1, 2, 3]}},
+                "sessionId": "abc",
+                "extra": {"ignored": [true]},
+                "method": "tools/call",
+                "id": 7,
+                "jsonrpc": "2.0"
+            }
+            """);
+
+        assertTrue(request.isValid());
+        assertEquals("tools/call", request.method());
+        assertEquals("7", request.id());
+        assertEquals("abc", request.sessionId());
+
+        JsonNode params = request.params(objectMapper);
+        assertEquals("echo", params.get("name").asText());
+        assertEquals(3, params.get("arguments").get("list").size());
+    }
+
+    @Test
+    void testMissingFieldsAreInvalid() throws IOException {
+        assertTrue(decode("{\"jsonrpc\": \"2.0\", \"method\": \"notifications/initialized\"}").isNotification());
+        assertFalse(decode("{\"jsonrpc\": \"1.0\", \"method\": \"tools/list\", \"id\": 1}").isValid());
+        assertFalse(decode("{\"jsonrpc\": \"2.0\", \"method\": {}, \"id\": 1}").isValid());
+    }
+
+    @Test
+    void testNonObjectAndMalformedBodies() throws IOException {
+        assertFalse(decode("\"just a string\"").isValid());
+        assertThrows(JsonProcessingException.class, () -> decode("{\"jsonrpc\": "));
+        // Only whitespace may follow the message
+        assertTrue(decode("{\"jsonrpc\": \"2.0\", \"method\": \"tools/list\", \"id\": 1}\n ").isValid());
+        assertThrows(JsonProcessingException.class,
+                () -> decode("{\"jsonrpc\": \"2.0\", \"method\": \"tools/list\", \"id\": 1}{}"));
+        assertThrows(JsonProcessingException.class, () -> decodeAll("[] garbage", 10));
+    }
+
+    @Test
+    void testDecodeBatch() throws IOException {
+        JsonRpcDecoder.Decoded decoded = decodeAll("""
+            [
+                {"jsonrpc": "2.0", "id": "1", "method": "tools/list"},
+                42,
+                {"jsonrpc": "2.0", "method": "notifications/initialized"}
+            ]
+            """, 10);
+
+        assertTrue(decoded.batch());
+        assertEquals(3, decoded.requests().size());
+        assertTrue(decoded.requests().get(0).isValid());
+        assertFalse(decoded.requests().get(1).isValid());
+        assertTrue(decoded.requests().get(2).isNotification());
+
+        // Oversized batches stop decoding one element past the cap
+        assertEquals(3, decodeAll("[{}, {}, {}, {}, {}]", 2).requests().size());
+    }
+
+    private JsonRpcRequest decode(String body) throws IOException {
+        JsonRpcDecoder.Decoded decoded = decodeAll(body, 10);
+        assertFalse(decoded.batch());
+        return decoded.requests().getFirst();
+    }
+
+    private JsonRpcDecoder.Decoded decodeAll(String body, int maxBatchSize) throws IOException {
+        return decoder.decode(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), maxBatchSize);
+    }
+}
@@ -0,0 +1,244 @@
+package com.sampullara.mcp.server;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class MappedRingRelayTest {
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<MappedRingRelay> relays = new ArrayList<>();
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (MappedRingRelay relay : relays) {
+            relay.close();
+        }
+        executor.shutdown();
+    }
+
+    private MappedRingRelay start(String nodeId, int ringBytes, SessionRelay.Handler handler) throws IOException {
+        return start(nodeId, ringBytes, 5_000, handler);
+    }
+
+    private MappedRingRelay start(String nodeId, int ringBytes, long stallMillis, SessionRelay.Handler handler) throws IOException {
+        MappedRingRelay relay = new MappedRingRelay(directory, nodeId, ringBytes, executor, stallMillis);
+        relays.add(relay);
+        relay.start(handler);
+        return relay;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Throwable failure(CompletableFuture<byte[]> reply) {
+        return assertThrows(ExecutionException.class, () -> reply.get(5, TimeUnit.SECONDS)).getCause();
+    }
+
+    @Test
+    void testRequestAndReplyCrossBetweenNodes() throws Exception {
+        MappedRingRelay a = start("a", 64 * 1024, _ -> null);
+        start("b", 64 * 1024, body -> bytes("b:" + new String(body, StandardCharsets.UTF_8)));
+
+        assertArrayEquals(bytes("b:hello"), a.forward("b", bytes("hello")).get(5, TimeUnit.SECONDS));
+        // A handler with nothing to say is an accepted request
+        assertNull(relays.get(1).forward("a", bytes("ping")).get(5, TimeUnit.SECONDS));
+        assertEquals("a", a.ownerOf("a.1234"));
+        assertNull(a.ownerOf("1234"));
+    }
+
+    @Test
+    void testConcurrentSendersWrapTheRingManyTimes() throws Exception {
+        // Both inboxes at the smallest size, so thousands of messages lap them over and over
+        MappedRingRelay a = start("a", 1, _ -> null);
+        start("b", 1, body -> body);
+
+        List<CompletableFuture<byte[]>> replies = new ArrayList<>();
+        List<byte[]> sent = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            byte[] body = bytes(("message " + i + " ").repeat(1 + i % 40));
+            sent.add(body);
+            replies.add(CompletableFuture.supplyAsync(() -> a.forward("b", body), executor)
+                    .thenCompose(reply -> reply));
+        }
+        for (int i = 0; i < replies.size(); i++) {
+            assertArrayEquals(sent.get(i), replies.get(i).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testUnknownAndClosedNodesAreReported() throws Exception {
+        MappedRingRelay a = start("a", 64 * 1024, _ -> null);
+        MappedRingRelay b = start("b", 64 * 1024, body -> body);
+
+        assertInstanceOf(SessionRelay.UnknownNodeException.class, failure(a.forward("c", bytes("x"))));
+        assertInstanceOf(SessionRelay.UnknownNodeException.class, failure(a.forward("../b", bytes("x"))));
+        assertArrayEquals(bytes("x"), a.forward("b", bytes("x")).get(5, TimeUnit.SECONDS));
+
+        b.close();
+        assertInstanceOf(SessionRelay.UnknownNodeException.class, failure(a.forward("b", bytes("x"))));
+    }
+
+    @Test
+    void testHandlerFailuresAndOversizedMessagesFailTheReply() throws Exception {
+        MappedRingRelay a = start("a", 64 * 1024, _ -> null);
+        start("b", 64 * 1024, _ -> {
+            throw new IOException("boom");
+        });
+
+        assertEquals("boom", failure(a.forward("b", bytes("x"))).getMessage());
+        Throwable tooLarge = failure(a.forward("b", new byte[64 * 1024]));
+        assertTrue(tooLarge.getMessage().contains("too large"), tooLarge.getMessage());
+    }
+
+    /**
+     * Claims 64 bytes of a node's inbox the way a sender does, then stops as
+     * if its process died: after marking the claim with {@code pid}, or before
+     * marking it at all if {@code pid} is zero. A writer that got as far as
+     * the header also leaves its correlation id and lengths behind.
+     */
+    private void claimWithoutPublishing(String nodeId, long pid) throws IOException {
+        claimWithoutPublishing(nodeId, pid, false);
+    }
+
+    private void claimWithoutPublishing(String nodeId, long pid, boolean header) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve(nodeId + ".ring"),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            buffer.order(ByteOrder.nativeOrder());
+            long tail = buffer.getLong(0);
+            int start = 192 + (int) (tail & (channel.size() - 192 - 1));
+            buffer.putLong(0, tail + 64);
+            if (pid != 0) {
+                buffer.putLong(start + 24, pid);
+                buffer.putInt(start, -64);
+            }
+            if (header) {
+                // Correlation 1 would be init's pid, which is always alive
+                buffer.putInt(start + 4, 2);
+                buffer.putLong(start + 8, 1);
+                buffer.putInt(start + 16, 1);
+                buffer.putInt(start + 20, 16);
+            }
+        }
+    }
+
+    @Test
+    void testRecordsClaimedByDeadWritersAreSkipped() throws Exception {
+        MappedRingRelay a = start("a", 64 * 1024, _ -> null);
+        start("b", 64 * 1024, 100, body -> body);
+        assertArrayEquals(bytes("before"), a.forward("b", bytes("before")).get(5, TimeUnit.SECONDS));
+
+        Process process = new ProcessBuilder("true").start();
+        process.waitFor();
+        claimWithoutPublishing("b", process.pid());
+        assertArrayEquals(bytes("after"), a.forward("b", bytes("after")).get(5, TimeUnit.SECONDS));
+
+        // Dying while copying the body, after the header is in place
+        claimWithoutPublishing("b", process.pid(), true);
+        assertArrayEquals(bytes("later"), a.forward("b", bytes("later")).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testInboxStuckOnAnUnmarkedClaimIsReplaced() throws Exception {
+        MappedRingRelay a = start("a", 64 * 1024, _ -> null);
+        start("b", 64 * 1024, 100, body -> body);
+        assertArrayEquals(bytes("before"), a.forward("b", bytes("before")).get(5, TimeUnit.SECONDS));
+
+        claimWithoutPublishing("b", 0);
+        // Messages sent into the stuck inbox are lost, but the node comes back with a new one
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try {
+                assertArrayEquals(bytes("after"), a.forward("b", bytes("after")).get(200, TimeUnit.MILLISECONDS));
+                break;
+            } catch (TimeoutException e) {
+                assertTrue(System.nanoTime() < deadline, "Inbox was never replaced");
+            }
+        }
+    }
+
+    @Test
+    void testInboxThatNeverDrainsMeansTheNodeIsGone() throws Exception {
+        MappedRingRelay a = start("a", 1, _ -> null);
+        start("b", 1, 60_000, body -> body);
+
+        claimWithoutPublishing("b", 0);
+        byte[] body = new byte[1024];
+        Throwable error = null;
+        for (int i = 0; i < 10 && error == null; i++) {
+            CompletableFuture<byte[]> reply = a.forward("b", body);
+            if (reply.isCompletedExceptionally()) {
+                error = failure(reply);
+            }
+        }
+        assertInstanceOf(SessionRelay.UnknownNodeException.class, error);
+    }
+
+    @Test
+    void testPostForForeignSessionIsAnsweredByItsOwner() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        McpServer.McpCapabilities capabilities = new McpServer.McpCapabilities(true, false, true, false);
+        McpServer owner = new McpServer(0, capabilities, new McpServerConfig().nodeId("owner").relayDirectory(directory));
+        McpServer other = new McpServer(0, capabilities, new McpServerConfig().nodeId("other").relayDirectory(directory));
+        owner.getMessageHandler().registerTool(new MessageHandler.Tool("echo", "Echo", objectMapper.createObjectNode()));
+        owner.start();
+        other.start();
+        try {
+            String sessionId = owner.getSessionManager().createSession().id();
+            assertTrue(sessionId.startsWith("owner."), sessionId);
+
+            HttpClient client = HttpClient.newHttpClient();
+            String request = "{\"jsonrpc\":\"2.0\",\"id\":\"7\",\"method\":\"tools/list\",\"sessionId\":\"" + sessionId + "\"}";
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                            URI.create("http://127.0.0.1:" + other.getAddress().getPort() + "/message"))
+                    .POST(HttpRequest.BodyPublishers.ofString(request)).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            JsonNode json = objectMapper.readTree(response.body());
+            assertEquals("7", json.get("id").asText());
+            assertEquals("echo", json.get("result").get("tools").get(0).get("name").asText());
+
+            // A session on a node that is not running is as invalid as any unknown session
+            String missing = request.replace(sessionId, "gone." + sessionId.substring("owner.".length()));
+            response = client.send(HttpRequest.newBuilder(
+                            URI.create("http://127.0.0.1:" + other.getAddress().getPort() + "/message"))
+                    .POST(HttpRequest.BodyPublishers.ofString(missing)).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals("Invalid session ID", objectMapper.readTree(response.body()).get("error").get("message").asText());
+        } finally {
+            other.stop();
+            owner.stop();
+        }
+    }
+}
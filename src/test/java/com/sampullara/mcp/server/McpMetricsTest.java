@@ -0,0 +1,56 @@
+package com.sampullara.mcp.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class McpMetricsTest {
+
+    private static String scrape(McpMetrics metrics) {
+        StringBuilder out = new StringBuilder();
+        metrics.writePrometheus(out);
+        return out.toString();
+    }
+
+    @Test
+    void testLabelValuesAreEscaped() {
+        McpMetrics metrics = new McpMetrics();
+        metrics.dispatchLatency("a\"b\\c\nd").record(1_000);
+
+        String text = scrape(metrics);
+        assertTrue(text.contains("mcp_request_dispatch_seconds_count{method=\"a\\\"b\\\\c\\nd\"} 1\n"), text);
+        // Every line is still a comment or a sample
+        for (String line : text.split("\n")) {
+            assertTrue(line.startsWith("#") || line.startsWith("mcp_"), line);
+        }
+    }
+
+    @Test
+    void testUnknownMethodsShareTheOtherSeries() {
+        McpMetrics metrics = new McpMetrics();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        MessageHandler handler = new MessageHandler(new McpSessionManager(), new ObjectMapper(),
+                new McpServerConfig(), executor, metrics);
+        try {
+            for (int i = 0; i < 100; i++) {
+                handler.call(new JsonRpcRequest("2.0", "junk" + i + "\"} 1\nfake_series", String.valueOf(i), "s", null));
+            }
+            handler.call(new JsonRpcRequest("2.0", "tools/list", "x", "s", null));
+        } finally {
+            executor.shutdown();
+        }
+
+        String text = scrape(metrics);
+        assertFalse(text.contains("junk"), text);
+        assertFalse(text.contains("fake_series"), text);
+        assertTrue(text.contains("mcp_request_dispatch_seconds_count{method=\"other\"} 100\n"), text);
+        assertTrue(text.contains("mcp_request_dispatch_seconds_count{method=\"tools/list\"} 1\n"), text);
+        assertEquals(1, text.lines().filter(line -> line.startsWith("# TYPE mcp_request_dispatch_seconds ")).count());
+    }
+}
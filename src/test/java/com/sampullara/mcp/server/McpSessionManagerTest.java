@@ -0,0 +1,57 @@
+package com.sampullara.mcp.server;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class McpSessionManagerTest {
+
+    @Test
+    void testSessionCapacity() {
+        McpSessionManager sessionManager = new McpSessionManager(new McpServerConfig().maxSessions(2), null);
+
+        var first = sessionManager.createSession();
+        assertNotNull(first);
+        assertNotNull(sessionManager.createSession());
+        assertNull(sessionManager.createSession(), "Sessions beyond the cap should be rejected");
+
+        sessionManager.removeSession(first.id());
+        assertEquals(1, sessionManager.getSessionCount());
+        assertNotNull(sessionManager.createSession());
+    }
+
+    @Test
+    void testIdleSessionsExpireOnLookup() {
+        McpSessionManager sessionManager = new McpSessionManager(
+                new McpServerConfig().sessionIdleTimeout(Duration.ofMinutes(1)), null);
+
+        var session = sessionManager.createSession();
+        assertSame(session, sessionManager.getSession(session.id()));
+
+        session.lastActivity().set(System.currentTimeMillis() - Duration.ofMinutes(2).toMillis());
+        assertNull(sessionManager.getSession(session.id()));
+        assertTrue(session.emitter().isClosed());
+        assertEquals(0, sessionManager.getSessionCount());
+    }
+
+    @Test
+    void testWritesToTheStreamDoNotKeepASessionAlive() throws Exception {
+        McpSessionManager sessionManager = new McpSessionManager(
+                new McpServerConfig().sessionIdleTimeout(Duration.ofMinutes(1)), null);
+
+        var session = sessionManager.createSession();
+        session.emitter().setOutputStream(new ByteArrayOutputStream());
+        session.lastActivity().set(System.currentTimeMillis() - Duration.ofMinutes(2).toMillis());
+        // Keep-alives go through even to a half-open peer, so they are not a sign of life
+        session.emitter().emit("ping", "{}").get();
+
+        assertNull(sessionManager.getSession(session.id()));
+        assertTrue(session.emitter().isClosed());
+    }
+}
@@ -4,17 +4,29 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import org.mockito.Mock;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import org.mockito.MockitoAnnotations;
 
@@ -132,6 +144,305 @@ class MessageHandlerTest {
         assertEquals("test_tool", tool.get("name").asText());
     }
     
+    @Test
+    void testListToolsReflectsLaterRegistration() throws IOException {
+        handler.registerTool(new MessageHandler.Tool("first_tool", "First", objectMapper.createObjectNode()));
+
+        String request = """
+            {
+                "jsonrpc": "2.0",
+                "id": "1",
+                "method": "tools/list",
+                "sessionId": "test-session"
+            }
+            """;
+
+        setupExchange(request);
+        handler.handle(exchange);
+        assertEquals(1, objectMapper.readTree(getResponse()).get("result").get("tools").size());
+
+        handler.registerTool(new MessageHandler.Tool("second_tool", "Second", objectMapper.createObjectNode()));
+
+        setupExchange(request.replace("\"1\"", "\"2\""));
+        handler.handle(exchange);
+
+        JsonNode responseJson = objectMapper.readTree(getResponse());
+        assertEquals("2", responseJson.get("id").asText());
+        assertEquals(2, responseJson.get("result").get("tools").size());
+    }
+
+    @Test
+    void testListToolsPagesWithCursors() throws IOException {
+        handler = new MessageHandler(sessionManager, objectMapper, new McpServerConfig().listPageSize(2),
+                Executors.newVirtualThreadPerTaskExecutor());
+        for (String name : new String[]{"delta", "alpha", "echo", "charlie", "bravo"}) {
+            handler.registerTool(new MessageHandler.Tool(name, name, objectMapper.createObjectNode()));
+        }
+
+        StringBuilder listed = new StringBuilder();
+        String cursor = null;
+        int pages = 0;
+        do {
+            String params = cursor == null ? "{}" : "{\"cursor\":\"" + cursor + "\"}";
+            setupExchange("{\"jsonrpc\":\"2.0\",\"id\":\"" + pages + "\",\"method\":\"tools/list\","
+                    + "\"sessionId\":\"test-session\",\"params\":" + params + "}");
+            handler.handle(exchange);
+            JsonNode result = objectMapper.readTree(getResponse()).get("result");
+            assertTrue(result.get("tools").size() <= 2);
+            result.get("tools").forEach(tool -> listed.append(tool.get("name").asText()).append(' '));
+            cursor = result.has("nextCursor") ? result.get("nextCursor").asText() : null;
+            pages++;
+
+            // Registering behind the cursor mid-walk does not disturb the pages still to come
+            if (pages == 1) {
+                handler.registerTool(new MessageHandler.Tool("aardvark", "Aardvark", objectMapper.createObjectNode()));
+            }
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals("alpha bravo charlie delta echo ", listed.toString());
+
+        setupExchange("""
+            {"jsonrpc": "2.0", "id": "9", "method": "tools/list", "sessionId": "test-session",
+             "params": {"cursor": "not a cursor"}}
+            """);
+        handler.handle(exchange);
+        assertEquals(ErrorCode.INVALID_PARAMS,
+                objectMapper.readTree(getResponse()).get("error").get("code").asInt());
+    }
+
+    @Test
+    void testRateLimitIsPerSessionAndMethod() throws IOException {
+        handler = new MessageHandler(sessionManager, objectMapper,
+                new McpServerConfig().sessionRateLimit(0.001, 3).methodRateLimit("tools/list", 0.001, 1),
+                Executors.newVirtualThreadPerTaskExecutor());
+        when(sessionManager.getSession("test-session"))
+                .thenReturn(new McpSession("test-session", sseEmitter, System.currentTimeMillis()));
+
+        String[] methods = {"tools/list", "tools/list", "resources/list", "resources/list", "resources/list",
+                "resources/list"};
+        int[] expected = {0, ErrorCode.RATE_LIMITED, 0, 0, 0, ErrorCode.RATE_LIMITED};
+        for (int i = 0; i < methods.length; i++) {
+            setupExchange("{\"jsonrpc\":\"2.0\",\"id\":\"" + i + "\",\"method\":\"" + methods[i]
+                    + "\",\"sessionId\":\"test-session\"}");
+            handler.handle(exchange);
+            JsonNode responseJson = objectMapper.readTree(getResponse());
+            assertEquals(expected[i], responseJson.path("error").path("code").asInt(), methods[i] + " #" + i);
+            if (expected[i] != 0) {
+                assertTrue(responseJson.get("error").get("data").get("retryAfterMs").asLong() > 0);
+            }
+        }
+    }
+
+    @Test
+    void testCallTool() throws IOException {
+        handler.registerTool(new MessageHandler.Tool("echo", "Echoes its input", objectMapper.createObjectNode()),
+                arguments -> {
+                    ObjectNode result = objectMapper.createObjectNode();
+                    result.putArray("content").addObject()
+                            .put("type", "text")
+                            .put("text", arguments.get("text").asText());
+                    return result;
+                });
+
+        setupExchange("""
+            {
+                "jsonrpc": "2.0",
+                "id": "1",
+                "method": "tools/call",
+                "sessionId": "test-session",
+                "params": {"name": "echo", "arguments": {"text": "hello"}}
+            }
+            """);
+        handler.handle(exchange);
+
+        JsonNode responseJson = objectMapper.readTree(getResponse());
+        assertEquals("hello", responseJson.get("result").get("content").get(0).get("text").asText());
+    }
+
+    @Test
+    void testToolArgumentsAreValidatedBeforeDispatch() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        handler.registerTool(new MessageHandler.Tool("echo", "Echoes its input", objectMapper.readTree("""
+                {"type": "object", "required": ["text"], "properties": {"text": {"type": "string"}}}
+                """)), arguments -> {
+                    calls.incrementAndGet();
+                    return objectMapper.createObjectNode().put("echo", arguments.get("text").asText());
+                });
+
+        String request = """
+            {"jsonrpc": "2.0", "id": "1", "method": "tools/call", "sessionId": "test-session",
+             "params": {"name": "echo", "arguments": %s}}
+            """;
+        setupExchange(request.formatted("{\"text\": 42}"));
+        handler.handle(exchange);
+        JsonNode error = objectMapper.readTree(getResponse()).get("error");
+        assertEquals(ErrorCode.INVALID_PARAMS, error.get("code").asInt());
+        assertEquals("Invalid arguments: /text: must be string", error.get("message").asText());
+        assertEquals("/text", error.get("data").get("path").asText());
+
+        setupExchange(request.formatted("{}"));
+        handler.handle(exchange);
+        assertEquals("Invalid arguments: missing required property \"text\"",
+                objectMapper.readTree(getResponse()).get("error").get("message").asText());
+        assertEquals(0, calls.get());
+
+        setupExchange(request.formatted("{\"text\": \"ok\"}"));
+        handler.handle(exchange);
+        assertEquals("ok", objectMapper.readTree(getResponse()).get("result").get("echo").asText());
+    }
+
+    @Test
+    void testAsyncResponseIsDeliveredOverSse() throws IOException {
+        handler = new MessageHandler(sessionManager, objectMapper, new McpServerConfig().asyncResponses(true),
+                Executors.newVirtualThreadPerTaskExecutor());
+        handler.registerTool(new MessageHandler.Tool("echo", "Echoes its input", objectMapper.createObjectNode()),
+                arguments -> objectMapper.createObjectNode().put("echo", arguments.get("text").asText()));
+
+        setupExchange("""
+            {"jsonrpc": "2.0", "id": "7", "method": "tools/call", "sessionId": "test-session",
+             "params": {"name": "echo", "arguments": {"text": "later"}}}
+            """);
+        handler.handle(exchange);
+
+        verify(exchange).sendResponseHeaders(202, -1);
+        assertEquals("", getResponse());
+        verify(sseEmitter, timeout(5000)).emit(eq("message"), argThat((JsonRpcResponse response) ->
+                new String(response.toByteArray(), StandardCharsets.UTF_8)
+                        .equals("{\"jsonrpc\":\"2.0\",\"id\":\"7\",\"result\":{\"echo\":\"later\"}}")));
+    }
+
+    @Test
+    void testAsyncModeAnswersUnknownSessionInline() throws IOException {
+        handler = new MessageHandler(sessionManager, objectMapper, new McpServerConfig().asyncResponses(true),
+                Executors.newVirtualThreadPerTaskExecutor());
+        when(sessionManager.getSession("gone")).thenReturn(null);
+
+        setupExchange("""
+            {"jsonrpc": "2.0", "id": "1", "method": "tools/list", "sessionId": "gone"}
+            """);
+        handler.handle(exchange);
+
+        assertEquals(ErrorCode.INVALID_REQUEST,
+                objectMapper.readTree(getResponse()).get("error").get("code").asInt());
+        verifyNoInteractions(sseEmitter);
+    }
+
+    @Test
+    void testCachedToolRunsOnce() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        handler.registerTool(new MessageHandler.Tool("add", "Adds numbers", objectMapper.createObjectNode()),
+                arguments -> {
+                    calls.incrementAndGet();
+                    return objectMapper.createObjectNode().put("sum", arguments.get("a").asInt() + arguments.get("b").asInt());
+                }, Duration.ofMinutes(1));
+
+        String request = """
+            {
+                "jsonrpc": "2.0",
+                "id": "%s",
+                "method": "tools/call",
+                "sessionId": "test-session",
+                "params": {"name": "add", "arguments": %s}
+            }
+            """;
+
+        setupExchange(request.formatted("1", "{\"a\": 1, \"b\": 2}"));
+        handler.handle(exchange);
+        assertEquals(3, objectMapper.readTree(getResponse()).get("result").get("sum").asInt());
+
+        // Same arguments in a different order hit the cache
+        setupExchange(request.formatted("2", "{\"b\": 2, \"a\": 1}"));
+        handler.handle(exchange);
+        JsonNode responseJson = objectMapper.readTree(getResponse());
+        assertEquals("2", responseJson.get("id").asText());
+        assertEquals(3, responseJson.get("result").get("sum").asInt());
+        assertEquals(1, calls.get());
+        assertEquals(1, handler.getResultCache().stats().hits());
+
+        handler.invalidateTool("add");
+        setupExchange(request.formatted("3", "{\"a\": 1, \"b\": 2}"));
+        handler.handle(exchange);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testCallToolFailures() throws IOException {
+        handler.registerTool(new MessageHandler.Tool("broken", "Always fails", objectMapper.createObjectNode()),
+                arguments -> {
+                    throw new IllegalStateException("backend unavailable");
+                });
+
+        String request = """
+            {
+                "jsonrpc": "2.0",
+                "id": "1",
+                "method": "tools/call",
+                "sessionId": "test-session",
+                "params": {"name": "%s"}
+            }
+            """;
+
+        setupExchange(request.formatted("broken"));
+        handler.handle(exchange);
+        JsonNode responseJson = objectMapper.readTree(getResponse());
+        assertTrue(responseJson.get("result").get("isError").asBoolean());
+        assertEquals("backend unavailable", responseJson.get("result").get("content").get(0).get("text").asText());
+
+        setupExchange(request.formatted("missing"));
+        handler.handle(exchange);
+        responseJson = objectMapper.readTree(getResponse());
+        assertEquals(ErrorCode.INVALID_PARAMS, responseJson.get("error").get("code").asInt());
+    }
+
+    @Test
+    void testReadFileResource(@TempDir Path dir) throws IOException {
+        Path text = Files.writeString(dir.resolve("notes.txt"), "line one\n\"quoted\" line two\n");
+        Path blob = Files.write(dir.resolve("data.bin"), new byte[]{0, 1, 2, 3, 4, (byte) 0xff});
+        handler.registerResource(new MessageHandler.Resource("file:///notes.txt", "Notes", "text/plain", null),
+                new FileResourceProvider(text));
+        handler.registerResource(new MessageHandler.Resource("file:///data.bin", "Data", "application/octet-stream", null),
+                new FileResourceProvider(blob));
+
+        String request = """
+            {
+                "jsonrpc": "2.0",
+                "id": "1",
+                "method": "resources/read",
+                "sessionId": "test-session",
+                "params": %s
+            }
+            """;
+
+        setupExchange(request.formatted("{\"uri\": \"file:///notes.txt\"}"));
+        handler.handle(exchange);
+        JsonNode responseJson = objectMapper.readTree(getResponse());
+        assertEquals(Files.readString(text), responseJson.get("result").get("contents").get(0).get("text").asText());
+
+        setupExchange(request.formatted("{\"uri\": \"file:///data.bin\", \"offset\": 2, \"length\": 3}"));
+        handler.handle(exchange);
+        responseJson = objectMapper.readTree(getResponse());
+        JsonNode result = responseJson.get("result");
+        assertArrayEquals(new byte[]{2, 3, 4}, result.get("contents").get(0).get("blob").binaryValue());
+        assertEquals(6, result.get("_meta").get("totalLength").asInt());
+
+        setupExchange(request.formatted("{\"uri\": \"file:///data.bin\", \"offset\": -1}"));
+        handler.handle(exchange);
+        responseJson = objectMapper.readTree(getResponse());
+        assertEquals(ErrorCode.INVALID_PARAMS, responseJson.get("error").get("code").asInt());
+        assertEquals("offset must not be negative", responseJson.get("error").get("message").asText());
+
+        setupExchange(request.formatted("{\"uri\": \"file:///data.bin\", \"length\": -3}"));
+        handler.handle(exchange);
+        responseJson = objectMapper.readTree(getResponse());
+        assertEquals("length must not be negative", responseJson.get("error").get("message").asText());
+
+        setupExchange(request.formatted("{\"uri\": \"file:///missing.txt\"}"));
+        handler.handle(exchange);
+        responseJson = objectMapper.readTree(getResponse());
+        assertEquals(ErrorCode.RESOURCE_NOT_FOUND, responseJson.get("error").get("code").asInt());
+    }
+
     @Test
     void testInvalidMethod() throws IOException {
         String request = """
@@ -153,6 +464,48 @@ class MessageHandlerTest {
         assertEquals(ErrorCode.METHOD_NOT_FOUND, responseJson.get("error").get("code").asInt());
     }
     
+    @Test
+    void testBatchRequest() throws IOException {
+        handler.registerTool(new MessageHandler.Tool("test_tool", "A test tool", objectMapper.createObjectNode()));
+
+        String request = """
+            [
+                {"jsonrpc": "2.0", "id": "1", "method": "tools/list", "sessionId": "test-session"},
+                {"jsonrpc": "2.0", "method": "notifications/initialized", "sessionId": "test-session"},
+                {"jsonrpc": "2.0", "id": "2", "method": "invalid/method", "sessionId": "test-session"},
+                {"jsonrpc": "2.0", "id": "3", "method": "resources/list", "sessionId": "test-session"}
+            ]
+            """;
+
+        setupExchange(request);
+        handler.handle(exchange);
+
+        JsonNode responseJson = objectMapper.readTree(getResponse());
+        assertTrue(responseJson.isArray());
+        assertEquals(3, responseJson.size());
+        assertEquals("1", responseJson.get(0).get("id").asText());
+        assertEquals(1, responseJson.get(0).get("result").get("tools").size());
+        assertEquals(ErrorCode.METHOD_NOT_FOUND, responseJson.get(1).get("error").get("code").asInt());
+        assertEquals("3", responseJson.get(2).get("id").asText());
+    }
+
+    @Test
+    void testBatchTooLarge() throws IOException {
+        handler = new MessageHandler(sessionManager, objectMapper,
+                new McpServerConfig().maxBatchSize(1), Executors.newVirtualThreadPerTaskExecutor());
+
+        setupExchange("""
+            [
+                {"jsonrpc": "2.0", "id": "1", "method": "tools/list", "sessionId": "test-session"},
+                {"jsonrpc": "2.0", "id": "2", "method": "tools/list", "sessionId": "test-session"}
+            ]
+            """);
+        handler.handle(exchange);
+
+        JsonNode responseJson = objectMapper.readTree(getResponse());
+        assertEquals(ErrorCode.INVALID_REQUEST, responseJson.get("error").get("code").asInt());
+    }
+
     private void setupExchange(String request) throws IOException {
         ByteArrayInputStream requestBody = new ByteArrayInputStream(
             request.getBytes(StandardCharsets.UTF_8)
@@ -0,0 +1,206 @@
+package com.sampullara.mcp.server;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class NioHttpTransportTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private McpServer server;
+    private String base;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new McpServer(0, new McpServer.McpCapabilities(true, false, true, false),
+                new McpServerConfig().transport(McpServerConfig.Transport.NIO));
+        server.getMessageHandler().registerTool(new MessageHandler.Tool("echo", "Echo", objectMapper.createObjectNode()));
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void testSseSessionAndMessageRoundTrip() throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpResponse<Stream<String>> sse = client.send(HttpRequest.newBuilder(URI.create(base + "/sse")).build(),
+                HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, sse.statusCode());
+        assertEquals("text/event-stream", sse.headers().firstValue("Content-Type").orElse(null));
+
+        Iterator<String> lines = sse.body().iterator();
+        assertEquals("event: connected", lines.next());
+        String sessionId = objectMapper.readTree(lines.next().substring("data: ".length())).get("sessionId").asText();
+        assertEquals(1, server.getSessionManager().getSessionCount());
+
+        String request = "{\"jsonrpc\":\"2.0\",\"id\":\"7\",\"method\":\"tools/list\",\"sessionId\":\"" + sessionId + "\"}";
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(base + "/message"))
+                .POST(HttpRequest.BodyPublishers.ofString(request)).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        JsonNode json = objectMapper.readTree(response.body());
+        assertEquals("7", json.get("id").asText());
+        assertEquals("echo", json.get("result").get("tools").get(0).get("name").asText());
+    }
+
+    @Test
+    void testPipelinedRequestsAreAnsweredInOrder() throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            StringBuilder requests = new StringBuilder();
+            for (int id = 1; id <= 3; id++) {
+                String body = "{\"jsonrpc\":\"2.0\",\"id\":\"" + id + "\",\"method\":\"tools/list\",\"sessionId\":\"none\"}";
+                requests.append("POST /message HTTP/1.1\r\nHost: localhost\r\nContent-Length: ")
+                        .append(body.length()).append("\r\n\r\n").append(body);
+            }
+            OutputStream out = socket.getOutputStream();
+            out.write(requests.toString().getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            StringBuilder received = new StringBuilder();
+            byte[] buffer = new byte[4096];
+            while (!received.toString().contains("\"id\":\"3\"")) {
+                int n = in.read(buffer);
+                assertTrue(n > 0, "connection closed early: " + received);
+                received.append(new String(buffer, 0, n, StandardCharsets.US_ASCII));
+            }
+            String responses = received.toString();
+            int first = responses.indexOf("\"id\":\"1\"");
+            int second = responses.indexOf("\"id\":\"2\"");
+            int third = responses.indexOf("\"id\":\"3\"");
+            assertTrue(first >= 0 && first < second && second < third, responses);
+            assertEquals(3, responses.split("HTTP/1.1 200 OK", -1).length - 1);
+        }
+    }
+
+    private static String readUntil(InputStream in, String marker) throws Exception {
+        StringBuilder received = new StringBuilder();
+        byte[] buffer = new byte[4096];
+        while (!received.toString().contains(marker)) {
+            int n = in.read(buffer);
+            assertTrue(n > 0, "connection closed early: " + received);
+            received.append(new String(buffer, 0, n, StandardCharsets.US_ASCII));
+        }
+        return received.toString();
+    }
+
+    @Test
+    void testExpectContinueIsAnsweredBeforeTheBody() throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            String body = "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"tools/list\",\"sessionId\":\"none\"}";
+            OutputStream out = socket.getOutputStream();
+            out.write(("POST /message HTTP/1.1\r\nHost: localhost\r\nExpect: 100-continue\r\nContent-Length: "
+                    + body.length() + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            assertEquals("HTTP/1.1 100 Continue\r\n\r\n", readUntil(in, "\r\n\r\n"));
+            out.write(body.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            String response = readUntil(in, "\"id\":\"1\"");
+            assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"), response);
+        }
+    }
+
+    @Test
+    void testStreamsToHttp10ClientsAreDelimitedByClose() throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write("GET /sse HTTP/1.0\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            String received = readUntil(socket.getInputStream(), "sessionId");
+            int headerEnd = received.indexOf("\r\n\r\n");
+            String head = received.substring(0, headerEnd);
+            assertFalse(head.contains("Transfer-Encoding"), head);
+            assertTrue(head.contains("Connection: close"), head);
+            // No chunk size line: the events start right after the headers
+            assertTrue(received.startsWith("event: connected\n", headerEnd + 4), received);
+        }
+    }
+
+    @Test
+    void testChunkedRequestBodiesAreDecoded() throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            String body = "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"tools/list\",\"sessionId\":\"none\"}";
+            String first = body.substring(0, 20);
+            String rest = body.substring(20);
+            OutputStream out = socket.getOutputStream();
+            out.write(("POST /message HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n"
+                    + Integer.toHexString(first.length()) + ";note=first\r\n" + first + "\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            out.write((Integer.toHexString(rest.length()) + "\r\n" + rest + "\r\n0\r\nX-Trailer: yes\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            String response = readUntil(socket.getInputStream(), "\"id\":\"1\"");
+            assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"), response);
+        }
+    }
+
+    @Test
+    void testMalformedChunksAreRejected() throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write("POST /message HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            String response = readUntil(socket.getInputStream(), "\r\n\r\n");
+            assertTrue(response.startsWith("HTTP/1.1 400 Bad Request\r\n"), response);
+        }
+    }
+
+    @Test
+    void testHandlersSeeTheContextTheyWereRegisteredUnder() throws Exception {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        NioHttpTransport transport = new NioHttpTransport(new InetSocketAddress("127.0.0.1", 0),
+                new McpServerConfig(), executor);
+        transport.createContext("/context", exchange -> {
+            byte[] path = exchange.getHttpContext().getPath().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, path.length);
+            exchange.getResponseBody().write(path);
+            exchange.close();
+        });
+        transport.start();
+        try {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                    URI.create("http://127.0.0.1:" + transport.getAddress().getPort() + "/context/nested")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertEquals("/context", response.body());
+        } finally {
+            transport.stop();
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.sampullara.mcp.server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class ResourceSubscriptionsTest {
+    private final ResourceSubscriptions subscriptions = new ResourceSubscriptions(new ObjectMapper());
+
+    private static SseEmitter emitter(ByteArrayOutputStream out) {
+        SseEmitter emitter = new SseEmitter();
+        emitter.setOutputStream(out);
+        return emitter;
+    }
+
+    private static String awaitOutput(ByteArrayOutputStream out, int frames) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        String written;
+        while ((written = out.toString(StandardCharsets.UTF_8)).split("\n\n", -1).length - 1 < frames) {
+            assertTrue(System.nanoTime() < deadline, "timed out waiting for frames: " + written);
+            Thread.sleep(5);
+        }
+        return written;
+    }
+
+    @Test
+    void testPublishFansOutToSubscribersOnly() throws Exception {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        ByteArrayOutputStream other = new ByteArrayOutputStream();
+        subscriptions.subscribe("s1", emitter(first), "file:///a");
+        subscriptions.subscribe("s2", emitter(second), "file:///a");
+        subscriptions.subscribe("s3", emitter(other), "file:///b");
+
+        assertEquals(2, subscriptions.publish("file:///a"));
+        String expected = "event: message\ndata: {\"jsonrpc\":\"2.0\",\"method\":\"notifications/resources/updated\","
+                + "\"params\":{\"uri\":\"file:///a\"}}\n\n";
+        assertEquals(expected, awaitOutput(first, 1));
+        assertEquals(expected, awaitOutput(second, 1));
+        assertEquals(0, other.size());
+
+        subscriptions.unsubscribe("s1", "file:///a");
+        subscriptions.removeSession("s2");
+        assertEquals(0, subscriptions.subscriberCount("file:///a"));
+        assertEquals(0, subscriptions.publish("file:///a"));
+        assertEquals(1, subscriptions.subscriberCount("file:///b"));
+    }
+
+    @Test
+    void testBurstIsCoalescedForSlowSubscriber() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ByteArrayOutputStream slow = new ByteArrayOutputStream() {
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.write(b, off, len);
+            }
+        };
+        subscriptions.subscribe("slow", emitter(slow), "file:///a");
+
+        assertEquals(1, subscriptions.publish("file:///a"));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        // The first notification is on its way, so the client may read too early to see this update
+        assertEquals(1, subscriptions.publish("file:///a"));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, subscriptions.publish("file:///a"));
+        }
+        release.countDown();
+        awaitOutput(slow, 2);
+
+        // Once delivered, the next update goes out again
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (subscriptions.publish("file:///a") == 0) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+        assertEquals(3, awaitOutput(slow, 3).split("\n\n", -1).length - 1);
+    }
+}
@@ -0,0 +1,75 @@
+package com.sampullara.mcp.server;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class ResultCacheTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toNanos(1);
+
+    @Test
+    void testCanonicalKeys() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        String key = ResultCache.key("tool:t", objectMapper.readTree("{\"a\": 1, \"b\": {\"x\": [1, 2], \"y\": null}}"));
+        assertEquals(key, ResultCache.key("tool:t", objectMapper.readTree("{\"b\": {\"y\": null, \"x\": [1, 2]}, \"a\": 1}")));
+        assertNotEquals(key, ResultCache.key("tool:t", objectMapper.readTree("{\"a\": 1, \"b\": {\"x\": [2, 1], \"y\": null}}")));
+        assertNotEquals(key, ResultCache.key("tool:u", objectMapper.readTree("{\"a\": 1, \"b\": {\"x\": [1, 2], \"y\": null}}")));
+    }
+
+    @Test
+    void testExpiryAndInvalidation() {
+        ResultCache cache = new ResultCache(1024 * 1024);
+        cache.put("tool:a", "a#1", new byte[]{1}, HOUR);
+        cache.put("tool:a", "a#2", new byte[]{2}, 0);
+        cache.put("tool:b", "b#1", new byte[]{3}, HOUR);
+
+        assertArrayEquals(new byte[]{1}, cache.get("a#1"));
+        assertNull(cache.get("a#2"), "Expired entries are not returned");
+
+        cache.invalidate("tool:a");
+        assertNull(cache.get("a#1"));
+        assertNotNull(cache.get("b#1"));
+
+        ResultCache.Stats stats = cache.stats();
+        assertEquals(2, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(1, stats.entries());
+    }
+
+    @Test
+    void testFrequentEntriesSurviveScan() {
+        ResultCache cache = new ResultCache(100 * 100);
+        for (int i = 0; i < 50; i++) {
+            cache.put("tool:hot", "hot#" + i, new byte[100], HOUR);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get("hot#" + i);
+            }
+        }
+
+        // A one-off scan of many distinct keys should not flush the popular entries
+        for (int i = 0; i < 1000; i++) {
+            cache.get("cold#" + i);
+            cache.put("tool:cold", "cold#" + i, new byte[100], HOUR);
+        }
+
+        int survivors = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("hot#" + i) != null) {
+                survivors++;
+            }
+        }
+        assertTrue(survivors >= 45, "Only " + survivors + " hot entries survived");
+        assertTrue(cache.stats().bytes() <= 100 * 100);
+    }
+}
@@ -0,0 +1,101 @@
+package com.sampullara.mcp.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class SchemaValidatorTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private SchemaValidator compile(String schema) throws Exception {
+        return SchemaValidator.compile(objectMapper.readTree(schema));
+    }
+
+    private String violation(SchemaValidator validator, String value) throws Exception {
+        SchemaValidator.Violation violation = validator.validate(objectMapper.readTree(value));
+        return violation == null ? null : violation.toString();
+    }
+
+    @Test
+    void testObjectKeywords() throws Exception {
+        SchemaValidator validator = compile("""
+            {"type": "object", "required": ["name"], "additionalProperties": false,
+             "properties": {
+                "name": {"type": "string", "minLength": 1, "maxLength": 8, "pattern": "^[a-z]+$"},
+                "mode": {"enum": ["fast", "slow"]},
+                "count": {"type": "integer", "minimum": 1, "exclusiveMaximum": 10},
+                "tags": {"type": "array", "items": {"type": "string"}, "maxItems": 3, "uniqueItems": true}
+             },
+             "patternProperties": {"^x-": {"type": "boolean"}}}
+            """);
+
+        assertNull(violation(validator, "{\"name\": \"abc\", \"mode\": \"fast\", \"count\": 9.0, \"tags\": [\"a\"], \"x-debug\": true}"));
+        assertEquals("must be object", violation(validator, "[]"));
+        assertEquals("missing required property \"name\"", violation(validator, "{}"));
+        assertEquals("/name: must be at least 1 characters long", violation(validator, "{\"name\": \"\"}"));
+        assertEquals("/name: must match ^[a-z]+$", violation(validator, "{\"name\": \"ABC\"}"));
+        assertEquals("/mode: must be one of [\"fast\",\"slow\"]", violation(validator, "{\"name\": \"a\", \"mode\": \"medium\"}"));
+        assertEquals("/count: must be integer", violation(validator, "{\"name\": \"a\", \"count\": 1.5}"));
+        assertEquals("/count: must be less than 10", violation(validator, "{\"name\": \"a\", \"count\": 10}"));
+        assertEquals("/tags/1: must be string", violation(validator, "{\"name\": \"a\", \"tags\": [\"a\", 2]}"));
+        assertEquals("/tags/1: duplicates an earlier item", violation(validator, "{\"name\": \"a\", \"tags\": [\"a\", \"a\"]}"));
+        assertEquals("/x-debug: must be boolean", violation(validator, "{\"name\": \"a\", \"x-debug\": 1}"));
+        assertEquals("unexpected property \"other\"", violation(validator, "{\"name\": \"a\", \"other\": 1}"));
+    }
+
+    @Test
+    void testCharacterClassPatternsMatchLikeTheRegex() throws Exception {
+        SchemaValidator label = compile("{\"pattern\": \"^[a-z0-9_.-]*$\"}");
+        assertNull(violation(label, "\"\""));
+        assertNull(violation(label, "\"needs-triage_2.0\""));
+        assertEquals("must match ^[a-z0-9_.-]*$", violation(label, "\"Bug\""));
+        assertEquals("must match ^[a-z0-9_.-]*$", violation(label, "\"caf\u00e9\""));
+        assertEquals("must match ^[a-z0-9_.-]*$", violation(label, "\"a b\""));
+
+        // Anything beyond a single class goes to the regex engine
+        SchemaValidator repository = compile("{\"pattern\": \"^[a-z]+/[a-z]+$\"}");
+        assertNull(violation(repository, "\"example/server\""));
+        assertEquals("must match ^[a-z]+/[a-z]+$", violation(repository, "\"example\""));
+        assertNull(violation(compile("{\"pattern\": \"^[^/]+$\"}"), "\"anything\""));
+
+        // Both paths follow ECMA-262, where $ does not match before a trailing newline
+        assertEquals("must match ^[a-z]+$", violation(compile("{\"pattern\": \"^[a-z]+$\"}"), "\"abc\\n\""));
+        assertEquals("must match ^(abc)$", violation(compile("{\"pattern\": \"^(abc)$\"}"), "\"abc\\n\""));
+        assertNull(violation(compile("{\"pattern\": \"^[$]+\\\\$$\"}"), "\"$$$\""));
+    }
+
+    @Test
+    void testCompositionAndRecursiveRefs() throws Exception {
+        SchemaValidator validator = compile("""
+            {"$ref": "#/$defs/tree",
+             "$defs": {"tree": {"type": "object", "required": ["value"],
+                "properties": {"value": {"oneOf": [{"type": "integer"}, {"type": "string"}]},
+                               "children": {"type": "array", "items": {"$ref": "#/$defs/tree"}}}}}}
+            """);
+
+        assertNull(violation(validator, "{\"value\": 1, \"children\": [{\"value\": \"a\", \"children\": [{\"value\": 2}]}]}"));
+        assertEquals("/children/0/children/0/value: matches none of the allowed schemas",
+                violation(validator, "{\"value\": 1, \"children\": [{\"value\": \"a\", \"children\": [{\"value\": true}]}]}"));
+
+        SchemaValidator either = compile("""
+            {"anyOf": [{"type": "null"}, {"type": "number", "multipleOf": 0.5}], "not": {"const": 2}}
+            """);
+        assertNull(violation(either, "null"));
+        assertNull(violation(either, "1.5"));
+        assertEquals("matches none of the allowed schemas (must be null)", violation(either, "1.3"));
+        assertEquals("matches a schema it must not", violation(either, "2"));
+    }
+
+    @Test
+    void testEmptySchemaAcceptsAnythingAndBadSchemasAreRejected() throws Exception {
+        assertNull(violation(compile("{}"), "[1, \"two\", null]"));
+        assertEquals("no value is allowed here", violation(compile("{\"properties\": {\"a\": false}}"), "{\"a\": 1}")
+                .substring("/a: ".length()));
+        assertThrows(IllegalArgumentException.class, () -> compile("{\"pattern\": \"[\"}"));
+        assertThrows(IllegalArgumentException.class, () -> compile("{\"$ref\": \"#/missing\"}"));
+        assertThrows(IllegalArgumentException.class, () -> compile("{\"type\": \"text\"}"));
+    }
+}
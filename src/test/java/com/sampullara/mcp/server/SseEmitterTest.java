@@ -0,0 +1,356 @@
+package com.sampullara.mcp.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class SseEmitterTest {
+
+    @Test
+    void testConcurrentProducersWriteWholeFrames() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        SseEmitter emitter = new SseEmitter();
+        emitter.setOutputStream(out);
+
+        int producers = 8;
+        int eventsPerProducer = 500;
+        List<CompletableFuture<Void>> written = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            List<CompletableFuture<Void>> local = new ArrayList<>();
+            threads.add(Thread.ofVirtual().start(() -> {
+                for (int i = 0; i < eventsPerProducer; i++) {
+                    try {
+                        local.add(emitter.emit("message", "{\"p\":" + producer + ",\"i\":" + i + "}"));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                synchronized (written) {
+                    written.addAll(local);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        CompletableFuture.allOf(written.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        String[] frames = out.toString(StandardCharsets.UTF_8).split("\n\n");
+        assertEquals(producers * eventsPerProducer, frames.length);
+        for (String frame : frames) {
+            assertTrue(frame.matches("event: message\ndata: \\{\"p\":\\d+,\"i\":\\d+}"), frame);
+        }
+        assertTrue(out.flushes <= frames.length, "writes should be coalesced");
+    }
+
+    @Test
+    void testFailedWriteClosesEmitter() throws IOException {
+        SseEmitter emitter = new SseEmitter();
+        emitter.setOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("broken pipe");
+            }
+        });
+
+        CompletableFuture<Void> written = emitter.emit("ping", "{}");
+        assertThrows(ExecutionException.class, () -> written.get(10, TimeUnit.SECONDS));
+        assertTrue(emitter.isClosed());
+        assertThrows(IOException.class, () -> emitter.emit("ping", "{}"));
+    }
+
+    @Test
+    void testReattachReplaysEventsMissedWhileDetached() throws Exception {
+        SseReplayBuffer.Budget budget = new SseReplayBuffer.Budget(1 << 20);
+        SseEmitter emitter = new SseEmitter(new McpMetrics(), new SseReplayBuffer("s1", 1 << 16, budget),
+                SseEmitter.Limits.UNBOUNDED);
+        BreakableOutputStream first = new BreakableOutputStream();
+        CompletableFuture<Void> firstConnection = emitter.attach(first, 0);
+        emitter.emit("message", "a").get(10, TimeUnit.SECONDS);
+        emitter.emit("message", "b").get(10, TimeUnit.SECONDS);
+        assertEquals("event: message\ndata: a\nid: s1:1\n\nevent: message\ndata: b\nid: s1:2\n\n",
+                first.written());
+
+        // The connection drops: events are still numbered and kept, and the emitter stays open
+        first.broken = true;
+        emitter.emit("message", "c").get(10, TimeUnit.SECONDS);
+        firstConnection.get(10, TimeUnit.SECONDS);
+        emitter.emit("message", "d").get(10, TimeUnit.SECONDS);
+        emitter.emitTransient("ping", "{}");
+        assertTrue(!emitter.isClosed() && emitter.canResumeAfter(2));
+
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        emitter.attach(second, 2);
+        emitter.emit("message", "e").get(10, TimeUnit.SECONDS);
+        assertEquals("event: message\ndata: c\nid: s1:3\n\nevent: message\ndata: d\nid: s1:4\n\n"
+                + "event: message\ndata: e\nid: s1:5\n\n", second.toString(StandardCharsets.UTF_8));
+
+        // The writer may still be finishing up, in which case it releases the buffer on its way out
+        emitter.complete();
+        emitter.await();
+        assertEquals(0, budget.used());
+    }
+
+    @Test
+    void testEvictedEventsCannotBeResumed() throws Exception {
+        SseReplayBuffer.Budget budget = new SseReplayBuffer.Budget(1 << 20);
+        SseEmitter emitter = new SseEmitter(new McpMetrics(), new SseReplayBuffer("s1", 1, budget),
+                SseEmitter.Limits.UNBOUNDED);
+        emitter.attach(new ByteArrayOutputStream(), 0);
+        for (int i = 0; i < 3; i++) {
+            emitter.emit("message", "x").get(10, TimeUnit.SECONDS);
+        }
+        // Only the newest event is kept
+        assertTrue(emitter.canResumeAfter(2));
+        assertTrue(!emitter.canResumeAfter(1));
+
+        CompletableFuture<Void> connection = emitter.attach(new ByteArrayOutputStream(), 1);
+        connection.get(10, TimeUnit.SECONDS);
+        assertTrue(emitter.isClosed());
+        assertEquals(0, budget.used());
+    }
+
+    @Test
+    void testCompletingDuringAWriteReleasesTheReplayBufferOnceTheWriterStops() throws Exception {
+        SseReplayBuffer.Budget budget = new SseReplayBuffer.Budget(1 << 20);
+        SseEmitter emitter = new SseEmitter(new McpMetrics(), new SseReplayBuffer("s1", 1 << 16, budget),
+                SseEmitter.Limits.UNBOUNDED);
+        StallingOutputStream out = new StallingOutputStream();
+        out.ignoreInterrupts = true;
+        emitter.attach(out, 0);
+        emitter.emit("message", "a");
+        assertTrue(out.entered.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Void> queued = emitter.emit("message", "b");
+
+        // Completed from another thread while the writer is still busy with "a"
+        emitter.complete();
+        out.release.countDown();
+        emitter.await();
+        assertThrows(ExecutionException.class, () -> queued.get(10, TimeUnit.SECONDS));
+        assertEquals(0, budget.used());
+    }
+
+    @Test
+    void testDropOldestKeepsSlowClientQueueBounded() throws Exception {
+        McpMetrics metrics = new McpMetrics();
+        SseEmitter emitter = new SseEmitter(metrics, null,
+                new SseEmitter.Limits(4, Long.MAX_VALUE, McpServerConfig.SseOverflowPolicy.DROP_OLDEST));
+        StallingOutputStream out = new StallingOutputStream();
+        emitter.setOutputStream(out);
+        CompletableFuture<Void> response = emitter.emit("message", "response");
+        assertTrue(out.entered.await(10, TimeUnit.SECONDS));
+
+        List<CompletableFuture<Void>> notifications = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            notifications.add(emitter.emitFrame(SseEmitter.frame("message", "n" + i), "n" + i));
+        }
+        // The oldest six were dropped without waiting for the client
+        for (int i = 0; i < 6; i++) {
+            assertTrue(notifications.get(i).isDone());
+        }
+        out.release.countDown();
+        CompletableFuture.allOf(notifications.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        response.get(10, TimeUnit.SECONDS);
+        assertEquals("event: message\ndata: response\n\nevent: message\ndata: n6\n\nevent: message\ndata: n7\n\n"
+                + "event: message\ndata: n8\n\nevent: message\ndata: n9\n\n", out.written());
+        assertTrue(prometheus(metrics).contains("mcp_sse_dropped_total 6\n"));
+    }
+
+    @Test
+    void testCoalesceReplacesQueuedNotificationWithSameKey() throws Exception {
+        McpMetrics metrics = new McpMetrics();
+        SseEmitter emitter = new SseEmitter(metrics, null,
+                new SseEmitter.Limits(2, Long.MAX_VALUE, McpServerConfig.SseOverflowPolicy.COALESCE));
+        StallingOutputStream out = new StallingOutputStream();
+        emitter.setOutputStream(out);
+        emitter.emit("message", "response");
+        assertTrue(out.entered.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < 10; i++) {
+            last = emitter.emitFrame(SseEmitter.frame("progress", "p" + i), "progress");
+        }
+        out.release.countDown();
+        last.get(10, TimeUnit.SECONDS);
+        assertEquals("event: message\ndata: response\n\nevent: progress\ndata: p0\n\n"
+                + "event: progress\ndata: p9\n\n", out.written());
+        assertTrue(prometheus(metrics).contains("mcp_sse_coalesced_total 8\n"));
+        assertTrue(!emitter.isClosed());
+    }
+
+    @Test
+    void testOverflowWithoutDroppableFramesDisconnects() throws Exception {
+        McpMetrics metrics = new McpMetrics();
+        SseEmitter emitter = new SseEmitter(metrics, null,
+                new SseEmitter.Limits(2, Long.MAX_VALUE, McpServerConfig.SseOverflowPolicy.DROP_OLDEST));
+        StallingOutputStream out = new StallingOutputStream();
+        emitter.setOutputStream(out);
+        CompletableFuture<Void> stalled = emitter.emit("message", "r0");
+        assertTrue(out.entered.await(10, TimeUnit.SECONDS));
+
+        for (int i = 1; i <= 3; i++) {
+            emitter.emit("message", "r" + i);
+        }
+        // The blocked write is aborted rather than waited for
+        emitter.await();
+        assertTrue(emitter.isClosed());
+        assertThrows(ExecutionException.class, () -> stalled.get(10, TimeUnit.SECONDS));
+        assertThrows(IOException.class, () -> emitter.emit("message", "r4"));
+        assertTrue(prometheus(metrics).contains("mcp_sse_overflow_disconnects_total 1\n"));
+    }
+
+    @Test
+    void testOverflowSendsErrorEventToClientThatCatchesUp() throws Exception {
+        SseEmitter emitter = new SseEmitter(new McpMetrics(), null,
+                new SseEmitter.Limits(2, Long.MAX_VALUE, McpServerConfig.SseOverflowPolicy.DISCONNECT));
+        StallingOutputStream out = new StallingOutputStream();
+        out.ignoreInterrupts = true;
+        emitter.setOutputStream(out);
+        emitter.emit("message", "r0");
+        assertTrue(out.entered.await(10, TimeUnit.SECONDS));
+        for (int i = 1; i <= 3; i++) {
+            emitter.emitFrame(SseEmitter.frame("message", "n" + i), "n" + i);
+        }
+        assertThrows(IOException.class, () -> emitter.emit("message", "r4"));
+
+        // The write outlives the abort, so what was queued and the error still go out
+        out.release.countDown();
+        emitter.await();
+        assertTrue(out.written().endsWith("data: n3\n\nevent: error\n"
+                + "data: {\"message\": \"Client is not keeping up with the event stream\"}\n\n"));
+    }
+
+    @Test
+    void testStalledWriteIsAbortedAfterTimeout() throws Exception {
+        McpMetrics metrics = new McpMetrics();
+        SseEmitter emitter = new SseEmitter(metrics);
+        StallingOutputStream out = new StallingOutputStream();
+        emitter.setOutputStream(out);
+        CompletableFuture<Void> written = emitter.emit("message", "data");
+        assertTrue(out.entered.await(10, TimeUnit.SECONDS));
+
+        assertTrue(!emitter.abortIfStalled(System.nanoTime(), TimeUnit.MINUTES.toNanos(1)));
+        assertTrue(emitter.abortIfStalled(System.nanoTime() + TimeUnit.MINUTES.toNanos(2), TimeUnit.MINUTES.toNanos(1)));
+        assertThrows(ExecutionException.class, () -> written.get(10, TimeUnit.SECONDS));
+        assertTrue(emitter.isClosed());
+        assertTrue(prometheus(metrics).contains("mcp_sse_write_timeouts_total 1\n"));
+    }
+
+    @Test
+    void testAbortAfterTheWriteEndedDoesNotFailTheNextOne() throws Exception {
+        SseEmitter emitter = new SseEmitter();
+        CountingOutputStream out = new CountingOutputStream();
+        emitter.setOutputStream(out);
+        emitter.emit("message", "first").get(10, TimeUnit.SECONDS);
+
+        assertTrue(!emitter.abortIfStalled(System.nanoTime() + TimeUnit.MINUTES.toNanos(2), TimeUnit.MINUTES.toNanos(1)));
+        emitter.emit("message", "second").get(10, TimeUnit.SECONDS);
+        assertTrue(!emitter.isClosed());
+        assertTrue(out.toString(StandardCharsets.UTF_8).endsWith("data: second\n\n"));
+    }
+
+    @Test
+    void testKeepAliveNoticesAClientThatHasGoneAway() throws Exception {
+        HashedTimerWheel timerWheel = new HashedTimerWheel(10, TimeUnit.MILLISECONDS, 64);
+        try {
+            SseEmitter emitter = new SseEmitter();
+            BreakableOutputStream out = new BreakableOutputStream();
+            emitter.setOutputStream(out);
+            emitter.keepAlive(timerWheel, ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8),
+                    TimeUnit.MILLISECONDS.toNanos(50));
+
+            // Nothing else is sent, yet the stream fails on the next keep-alive once the client is gone
+            out.broken = true;
+            CompletableFuture<Void> ended = new CompletableFuture<>();
+            emitter.onComplete(() -> ended.complete(null));
+            ended.get(10, TimeUnit.SECONDS);
+            assertTrue(emitter.isClosed());
+        } finally {
+            timerWheel.close();
+        }
+    }
+
+    private static String prometheus(McpMetrics metrics) {
+        StringBuilder out = new StringBuilder();
+        metrics.writePrometheus(out);
+        return out.toString();
+    }
+
+    private static class StallingOutputStream extends OutputStream {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        private volatile boolean ignoreInterrupts;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            entered.countDown();
+            while (true) {
+                try {
+                    release.await();
+                    break;
+                } catch (InterruptedException e) {
+                    if (!ignoreInterrupts) {
+                        throw new InterruptedIOException("write aborted");
+                    }
+                }
+            }
+            written.write(b, off, len);
+        }
+
+        synchronized String written() {
+            return written.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class BreakableOutputStream extends OutputStream {
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        private volatile boolean broken;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (broken) {
+                throw new IOException("broken pipe");
+            }
+            written.write(b, off, len);
+        }
+
+        String written() {
+            return written.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class CountingOutputStream extends ByteArrayOutputStream {
+        private volatile int flushes;
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.sampullara.mcp.server;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class SseFrameEncoderTest {
+    private static final SseFrameEncoder.JsonWriter PROGRESS = generator -> {
+        generator.writeStartObject();
+        generator.writeStringField("method", "notifications/progress");
+        generator.writeNumberField("progress", 42);
+        generator.writeEndObject();
+    };
+
+    private static String text(byte[] frame) {
+        return new String(frame, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testEveryLineGetsDataPrefix() {
+        assertEquals("event: message\ndata: a\ndata: b\n\n", text(SseFrameEncoder.frame("message", "a\nb\n")));
+        assertEquals("data: café ✓\n\n", text(SseFrameEncoder.frame(null, "café ✓")));
+        assertEquals("event: message\ndata: {\"a\":\ndata: 1}\n\n",
+                text(SseFrameEncoder.frame("message", "{\"a\":\n1}".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void testJsonIsGeneratedIntoTheFrame() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        assertEquals("event: message\ndata: {\"method\":\"notifications/progress\",\"progress\":42}\n\n",
+                text(SseFrameEncoder.frame("message", PROGRESS)));
+        // Pooled encoders start each frame afresh, with no separator between values
+        assertEquals("event: connected\ndata: {\"sessionId\":\"s\\nx\"}\n\n",
+                text(SseFrameEncoder.frame("connected",
+                        generator -> generator.writeTree(objectMapper.createObjectNode().put("sessionId", "s\nx")))));
+        assertEquals("event: message\ndata: {\"jsonrpc\":\"2.0\",\"id\":\"7\",\"result\":{}}\n\n",
+                text(SseFrameEncoder.frame("message", JsonRpcResponse.ofResult("7", new byte[]{'{', '}'}))));
+    }
+
+    @Test
+    void testSteadyStateAllocatesOnlyTheFrame() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int frameLength = SseFrameEncoder.frame("message", PROGRESS).length;
+        for (int i = 0; i < 10_000; i++) {
+            SseFrameEncoder.frame("message", PROGRESS);
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        int frames = 10_000;
+        for (int i = 0; i < frames; i++) {
+            SseFrameEncoder.frame("message", PROGRESS);
+        }
+        long perFrame = (threads.getCurrentThreadAllocatedBytes() - before) / frames;
+        // The frame's own array, rounded up and with its header
+        assertTrue(perFrame <= frameLength + 32, "allocated " + perFrame + " bytes per " + frameLength + "-byte frame");
+    }
+}
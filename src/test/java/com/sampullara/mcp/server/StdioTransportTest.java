@@ -0,0 +1,95 @@
+package com.sampullara.mcp.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sampullara.mcp.server.MessageHandler.ErrorCode;
+
+class StdioTransportTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testNewlineDelimitedRequestsAnsweredAsTheyFinish() throws Exception {
+        McpServerConfig config = new McpServerConfig();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            MessageHandler handler = new MessageHandler(new McpSessionManager(), objectMapper, config, executor);
+            ObjectNode result = objectMapper.createObjectNode().put("ok", true);
+            handler.registerTool(new MessageHandler.Tool("slow", "Slow", objectMapper.createObjectNode()), _ -> {
+                Thread.sleep(200);
+                return result;
+            });
+
+            String input = """
+                    {"jsonrpc":"2.0","id":"1","method":"tools/call","params":{"name":"slow"}}
+                    {"jsonrpc":"2.0","id":"2","method":"tools/list"}\r
+
+                    {"jsonrpc":"2.0","method":"notifications/cancelled","params":{"requestId":"9"}}
+                    not json
+                    [{"jsonrpc":"2.0","id":"3","method":"tools/list"},{"jsonrpc":"2.0","id":"4","method":"nope"}]""";
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new StdioTransport(handler, objectMapper, config, executor).run(
+                    Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))), out);
+
+            String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+            assertEquals(4, lines.length);
+            Map<String, JsonNode> byId = new HashMap<>();
+            JsonNode batch = null;
+            for (String line : lines) {
+                JsonNode json = objectMapper.readTree(line);
+                if (json.isArray()) {
+                    batch = json;
+                } else {
+                    byId.put(json.get("id").asText(), json);
+                }
+            }
+            // The slow call was submitted first but finishes last
+            assertEquals("1", objectMapper.readTree(lines[lines.length - 1]).path("id").asText());
+            assertTrue(byId.get("1").path("result").path("ok").asBoolean());
+            assertEquals("slow", byId.get("2").path("result").path("tools").get(0).path("name").asText());
+            assertEquals(ErrorCode.PARSE_ERROR, byId.get("null").path("error").path("code").asInt());
+            assertEquals(2, batch.size());
+            assertEquals(ErrorCode.METHOD_NOT_FOUND, batch.get(1).path("error").path("code").asInt());
+        }
+    }
+
+    @Test
+    void testBatchCallsRunConcurrently() throws Exception {
+        McpServerConfig config = new McpServerConfig();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            MessageHandler handler = new MessageHandler(new McpSessionManager(), objectMapper, config, executor);
+            CountDownLatch arrived = new CountDownLatch(2);
+            // Each call waits for the other, so the batch only succeeds if they run side by side
+            handler.registerTool(new MessageHandler.Tool("meet", "Meet", objectMapper.createObjectNode()), _ -> {
+                arrived.countDown();
+                return objectMapper.createObjectNode().put("met", arrived.await(5, TimeUnit.SECONDS));
+            });
+
+            String input = "[{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"tools/call\",\"params\":{\"name\":\"meet\"}},"
+                    + "{\"jsonrpc\":\"2.0\",\"id\":\"2\",\"method\":\"tools/call\",\"params\":{\"name\":\"meet\"}}]\n";
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new StdioTransport(handler, objectMapper, config, executor).run(
+                    Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))), out);
+
+            JsonNode batch = objectMapper.readTree(out.toString(StandardCharsets.UTF_8));
+            assertEquals(2, batch.size());
+            assertEquals("1", batch.get(0).path("id").asText());
+            assertTrue(batch.get(0).path("result").path("met").asBoolean());
+            assertTrue(batch.get(1).path("result").path("met").asBoolean());
+        }
+    }
+}
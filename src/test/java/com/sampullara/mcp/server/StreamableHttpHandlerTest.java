@@ -0,0 +1,165 @@
+package com.sampullara.mcp.server;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class StreamableHttpHandlerTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private McpServer server;
+    private URI endpoint;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new McpServer(0, new McpServer.McpCapabilities(true, false, true, false));
+        MessageHandler handler = server.getMessageHandler();
+        handler.registerTool(new MessageHandler.Tool("quick", "Quick", objectMapper.createObjectNode()),
+                _ -> objectMapper.createObjectNode().put("done", true));
+        handler.registerTool(new MessageHandler.Tool("long", "Long", objectMapper.createObjectNode()),
+                ToolHandler.withProgress((_, progress) -> {
+                    progress.report(1, 2.0, "halfway");
+                    Thread.sleep(100);
+                    progress.report(2, 2.0, null);
+                    return objectMapper.createObjectNode().put("done", true);
+                }));
+        server.start();
+        endpoint = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/mcp");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private HttpResponse<String> post(String body, String sessionId) throws Exception {
+        return post(endpoint, body, sessionId);
+    }
+
+    private HttpResponse<String> post(URI endpoint, String body, String sessionId) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(endpoint)
+                .header("Accept", "application/json, text/event-stream")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (sessionId != null) {
+            request.header(StreamableHttpHandler.SESSION_HEADER, sessionId);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void testQuickCallIsAnsweredInline() throws Exception {
+        HttpResponse<String> response = post(
+                "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"tools/call\",\"params\":{\"name\":\"quick\"}}", null);
+        assertEquals(200, response.statusCode());
+        assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(null));
+        String sessionId = response.headers().firstValue(StreamableHttpHandler.SESSION_HEADER).orElseThrow();
+        JsonNode json = objectMapper.readTree(response.body());
+        assertEquals("1", json.get("id").asText());
+        assertTrue(json.path("result").path("done").asBoolean());
+
+        // The assigned id is echoed back, and notifications are only acknowledged
+        HttpResponse<String> notification = post(
+                "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/initialized\"}", sessionId);
+        assertEquals(202, notification.statusCode());
+        assertEquals(sessionId, notification.headers().firstValue(StreamableHttpHandler.SESSION_HEADER).orElse(null));
+
+        HttpResponse<String> batch = post("[{\"jsonrpc\":\"2.0\",\"id\":\"2\",\"method\":\"tools/list\"},"
+                + "{\"jsonrpc\":\"2.0\",\"id\":\"3\",\"method\":\"nope\"}]", sessionId);
+        JsonNode responses = objectMapper.readTree(batch.body());
+        assertEquals(2, responses.size());
+        assertEquals("2", responses.get(0).get("id").asText());
+        assertEquals(MessageHandler.ErrorCode.METHOD_NOT_FOUND, responses.get(1).path("error").path("code").asInt());
+        assertEquals(0, server.getSessionManager().getSessionCount());
+    }
+
+    @Test
+    void testSessionIdsTheServerDidNotIssueAreReplaced() throws Exception {
+        String call = "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"tools/list\"}";
+        String issued = post(call, null).headers().firstValue(StreamableHttpHandler.SESSION_HEADER).orElseThrow();
+        assertEquals(issued, post(call, issued).headers().firstValue(StreamableHttpHandler.SESSION_HEADER).orElse(null));
+
+        // Another signature, or another spelling of the same bytes, is not the issued id
+        for (int position : new int[]{issued.length() / 2, issued.length() - 1}) {
+            char replacement = issued.charAt(position) == 'A' ? 'B' : 'A';
+            String forged = issued.substring(0, position) + replacement + issued.substring(position + 1);
+            String replaced = post(call, forged).headers().firstValue(StreamableHttpHandler.SESSION_HEADER)
+                    .orElseThrow();
+            assertNotEquals(forged, replaced);
+            assertNotEquals(issued, replaced);
+        }
+    }
+
+    @Test
+    void testProgressUpgradesResponseToEventStream() throws Exception {
+        HttpResponse<String> response = post("{\"jsonrpc\":\"2.0\",\"id\":\"9\",\"method\":\"tools/call\","
+                + "\"params\":{\"name\":\"long\",\"_meta\":{\"progressToken\":\"p1\"}}}", "client-1");
+        assertEquals(200, response.statusCode());
+        assertEquals("text/event-stream", response.headers().firstValue("Content-Type").orElse(null));
+
+        List<JsonNode> messages = response.body().lines()
+                .filter(line -> line.startsWith("data: "))
+                .map(line -> {
+                    try {
+                        return objectMapper.readTree(line.substring("data: ".length()));
+                    } catch (Exception e) {
+                        throw new AssertionError(line, e);
+                    }
+                })
+                .toList();
+        assertEquals(3, messages.size());
+        assertEquals("notifications/progress", messages.get(0).get("method").asText());
+        assertEquals("p1", messages.get(0).path("params").path("progressToken").asText());
+        assertEquals("halfway", messages.get(0).path("params").path("message").asText());
+        assertEquals(2.0, messages.get(1).path("params").path("progress").asDouble());
+        assertEquals("9", messages.get(2).get("id").asText());
+        assertTrue(messages.get(2).path("result").path("done").asBoolean());
+    }
+
+    @Test
+    void testRateLimitsApplyPerSessionHeader() throws Exception {
+        McpServer limited = new McpServer(0, new McpServer.McpCapabilities(true, false, true, false),
+                new McpServerConfig().sessionRateLimit(0.001, 2));
+        limited.start();
+        try {
+            URI limitedEndpoint = URI.create("http://127.0.0.1:" + limited.getAddress().getPort() + "/mcp");
+            String list = "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"tools/list\"}";
+            // Without a header every request gets a new id, so the limit follows the address instead
+            HttpResponse<String> first = post(limitedEndpoint, list, null);
+            HttpResponse<String> second = post(limitedEndpoint, list, null);
+            assertTrue(objectMapper.readTree(second.body()).has("result"));
+            JsonNode error = objectMapper.readTree(post(limitedEndpoint, list, null).body()).path("error");
+            assertEquals(MessageHandler.ErrorCode.RATE_LIMITED, error.path("code").asInt());
+            // So does a made up id, which is not one the server issued
+            error = objectMapper.readTree(post(limitedEndpoint, list, "a").body()).path("error");
+            assertEquals(MessageHandler.ErrorCode.RATE_LIMITED, error.path("code").asInt());
+
+            String a = first.headers().firstValue(StreamableHttpHandler.SESSION_HEADER).orElseThrow();
+            String b = second.headers().firstValue(StreamableHttpHandler.SESSION_HEADER).orElseThrow();
+            for (int i = 0; i < 2; i++) {
+                assertTrue(objectMapper.readTree(post(limitedEndpoint, list, a).body()).has("result"));
+            }
+            error = objectMapper.readTree(post(limitedEndpoint, list, a).body()).path("error");
+            assertEquals(MessageHandler.ErrorCode.RATE_LIMITED, error.path("code").asInt());
+            assertTrue(error.path("data").path("retryAfterMs").asLong() > 0);
+
+            // Batches draw from the same buckets, and other sessions have their own
+            JsonNode batch = objectMapper.readTree(post(limitedEndpoint, "[" + list + "," + list + "]", a).body());
+            assertEquals(MessageHandler.ErrorCode.RATE_LIMITED, batch.get(1).path("error").path("code").asInt());
+            assertTrue(objectMapper.readTree(post(limitedEndpoint, list, b).body()).has("result"));
+        } finally {
+            limited.stop();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.sampullara.mcp.server;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+class ToolExecutorTest {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testTimeoutInterruptsTool() throws InterruptedException {
+        ToolExecutor toolExecutor = new ToolExecutor(
+                new McpServerConfig().toolCallTimeout(Duration.ofMillis(50)), executor);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        assertThrows(TimeoutException.class, () -> toolExecutor.execute("s", "1", "slow", arguments -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return null;
+        }, JsonNodeFactory.instance.objectNode()));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testConcurrencyLimitAndCancellation() throws Exception {
+        ToolExecutor toolExecutor = new ToolExecutor(
+                new McpServerConfig().maxConcurrentCallsPerTool(1), executor);
+        CountDownLatch started = new CountDownLatch(1);
+        ToolHandler blocking = arguments -> {
+            started.countDown();
+            Thread.sleep(10_000);
+            return TextNode.valueOf("done");
+        };
+
+        Future<?> first = executor.submit(() ->
+                toolExecutor.execute("s", "1", "blocking", blocking, JsonNodeFactory.instance.objectNode()));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // A second call to the same tool is rejected instead of queued
+        assertThrows(RejectedExecutionException.class, () ->
+                toolExecutor.execute("s", "2", "blocking", blocking, JsonNodeFactory.instance.objectNode()));
+        // Reusing the id of a call in flight is refused, and costs the other tool nothing
+        ToolHandler ok = arguments -> TextNode.valueOf("ok");
+        assertThrows(ToolExecutor.DuplicateRequestException.class, () ->
+                toolExecutor.execute("s", "1", "other", ok, JsonNodeFactory.instance.objectNode()));
+        assertEquals("ok", toolExecutor.execute("s", "4", "other", ok, JsonNodeFactory.instance.objectNode()).asText());
+
+        toolExecutor.cancelSession("s");
+        var failure = assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertTrue(failure.getCause() instanceof CancellationException, failure.toString());
+
+        // The permit is returned once the cancelled body exits
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            try {
+                assertEquals("ok", toolExecutor.execute("s", "3", "blocking", ok,
+                        JsonNodeFactory.instance.objectNode()).asText());
+                break;
+            } catch (RejectedExecutionException e) {
+                assertTrue(System.nanoTime() < deadline, "permit was never returned");
+                Thread.sleep(1);
+            }
+        }
+    }
+}